@@ -0,0 +1,54 @@
+package org.choubi.activityservice.config;
+
+import org.bson.Document;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.choubi.activityservice.model.ActivityMetrics.*;
+
+/**
+ * Stores {@link ActivityMetrics} as a flat sub-document holding only the values that are present,
+ * typed as double/int32. Reading also accepts documents written before the typed schema.
+ */
+public final class ActivityMetricsConverters {
+
+    private ActivityMetricsConverters() {
+    }
+
+    public static List<Converter<?, ?>> all() {
+        return List.of(new MetricsWriter(), new MetricsReader());
+    }
+
+    @WritingConverter
+    public static class MetricsWriter implements Converter<ActivityMetrics, Document> {
+        @Override
+        public Document convert(ActivityMetrics metrics) {
+            Document document = new Document();
+            if (isPresent(metrics.getDistance())) document.put(DISTANCE, metrics.getDistance());
+            if (isPresent(metrics.getPace())) document.put(PACE, metrics.getPace());
+            if (isPresent(metrics.getElevationGain())) document.put(ELEVATION_GAIN, metrics.getElevationGain());
+            if (isPresent(metrics.getAvgHeartRate())) document.put(AVG_HEART_RATE, metrics.getAvgHeartRate());
+            if (isPresent(metrics.getMaxHeartRate())) document.put(MAX_HEART_RATE, metrics.getMaxHeartRate());
+            if (isPresent(metrics.getCadence())) document.put(CADENCE, metrics.getCadence());
+            if (metrics.getExtra() != null) document.putAll(metrics.getExtra());
+            return document;
+        }
+    }
+
+    @ReadingConverter
+    public static class MetricsReader implements Converter<Document, ActivityMetrics> {
+        @Override
+        public ActivityMetrics convert(Document document) {
+            ActivityMetrics metrics = new ActivityMetrics();
+            for (Map.Entry<String, Object> entry : document.entrySet()) {
+                metrics.put(entry.getKey(), entry.getValue());
+            }
+            return metrics;
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package org.choubi.activityservice.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitTemplateCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.amqp.core.Queue;
+import org.springframework.util.MimeTypeUtils;
 
 
 @Configuration
@@ -19,6 +25,16 @@ public class RabbitMqConfig {
     private String routingKey;
     @Value("${rabbitmq.queue.name}")
     private String queueName;
+    @Value("${rabbitmq.queue.backfill:activity.backfill.queue}")
+    private String backfillQueueName;
+    @Value("${rabbitmq.routing.backfillKey:activity.backfill}")
+    private String backfillRoutingKey;
+    @Value("${rabbitmq.exchanges.users:user.events}")
+    private String userEventsExchangeName;
+    // What activity events are sent as: application/json, or ActivityEventMessageConverter.CONTENT_TYPE
+    // once every consumer reads it
+    @Value("${activity.events.contentType:application/json}")
+    private String eventContentType;
 
 
     @Bean
@@ -36,8 +52,53 @@ public class RabbitMqConfig {
                 .to(activityExchange())
                 .with(routingKey);
     }
+    // Imports and re-analysis go here so they never queue up in front of fresh activities
+    @Bean
+    public Queue activityBackfillQueue() {
+        return new Queue(backfillQueueName, true);
+    }
+    @Bean
+    public Binding activityBackfillBinding() {
+        return BindingBuilder
+                .bind(activityBackfillQueue())
+                .to(activityExchange())
+                .with(backfillRoutingKey);
+    }
+    // Every instance keeps its own user cache, so each one gets a private queue on the fanout exchange
+    @Bean
+    public AnonymousQueue userEventsQueue() {
+        return new AnonymousQueue();
+    }
+    @Bean
+    public FanoutExchange userEventsExchange() {
+        return new FanoutExchange(userEventsExchangeName);
+    }
+    @Bean
+    public Binding userEventsBinding() {
+        return BindingBuilder
+                .bind(userEventsQueue())
+                .to(userEventsExchange());
+    }
+    // Reads whatever content type a message declares and writes activity events in the configured one
     @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        ActivityEventMessageConverter binary = new ActivityEventMessageConverter(new ObjectMapper());
+        boolean sendBinary = ActivityEventMessageConverter.CONTENT_TYPE.equals(eventContentType);
+        if (!sendBinary && !MimeTypeUtils.APPLICATION_JSON_VALUE.equals(eventContentType)) {
+            throw new IllegalArgumentException("Unsupported activity.events.contentType: " + eventContentType);
+        }
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(sendBinary ? binary : json);
+        converter.addDelegate(MimeTypeUtils.APPLICATION_JSON_VALUE, json);
+        converter.addDelegate(ActivityEventMessageConverter.CONTENT_TYPE, binary);
+        return converter;
+    }
+    @Bean
+    public RabbitTemplateCustomizer schemaVersionHeader() {
+        return template -> template.addBeforePublishPostProcessors(message -> {
+            message.getMessageProperties().getHeaders()
+                    .putIfAbsent(ActivityEventMessageConverter.SCHEMA_VERSION_HEADER, ActivityEventMessageConverter.SCHEMA_VERSION);
+            return message;
+        });
     }
 }
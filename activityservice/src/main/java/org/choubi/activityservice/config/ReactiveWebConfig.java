@@ -0,0 +1,68 @@
+package org.choubi.activityservice.config;
+
+import org.choubi.activityservice.microRequestInterface.ReactiveUserServiceInterface;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+
+import java.util.stream.Collectors;
+
+/**
+ * Wiring for the "reactive" profile, which runs the service on WebFlux (see application-reactive.yml).
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveWebConfig implements WebFluxConfigurer {
+
+    private final AsyncTaskExecutor applicationTaskExecutor;
+
+    public ReactiveWebConfig(@Qualifier("applicationTaskExecutor") AsyncTaskExecutor applicationTaskExecutor) {
+        this.applicationTaskExecutor = applicationTaskExecutor;
+    }
+
+    // Controllers that still return plain values (batch, sample streams) must not run on the event loop
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        configurer.setExecutor(applicationTaskExecutor);
+    }
+
+    // Boot would pick Tomcat because it is on the classpath for the servlet mode
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    @LoadBalanced
+    public WebClient.Builder loadBalancedWebClientBuilder() {
+        return WebClient.builder();
+    }
+
+    @Bean
+    public ReactiveUserServiceInterface reactiveUserServiceInterface(@LoadBalanced WebClient.Builder webClientBuilder) {
+        WebClient webClient = webClientBuilder.baseUrl("http://user-service").build();
+        return HttpServiceProxyFactory.builderFor(WebClientAdapter.create(webClient))
+                .build()
+                .createClient(ReactiveUserServiceInterface.class);
+    }
+
+    // Boot only provides this for servlet apps, but the Feign clients still decode with it
+    @Bean
+    @ConditionalOnMissingBean
+    public HttpMessageConverters httpMessageConverters(ObjectProvider<HttpMessageConverter<?>> converters) {
+        return new HttpMessageConverters(converters.orderedStream().collect(Collectors.toList()));
+    }
+}
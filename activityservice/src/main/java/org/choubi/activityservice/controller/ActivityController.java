@@ -1,37 +1,125 @@
 package org.choubi.activityservice.controller;
 
+import org.choubi.activityservice.dto.ActivityBatchResponse;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityPage;
 import org.choubi.activityservice.dto.ActivityRequest;
 import org.choubi.activityservice.dto.ActivityResponse;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.model.RollupGranularity;
 import org.choubi.activityservice.service.ActivityService;
+import org.choubi.activityservice.service.IdempotencyKeyConflictException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/activities")
+@Profile("!reactive")
 public class ActivityController {
 
     @Autowired
     private ActivityService activityService;
 
     @PostMapping
-    public ResponseEntity<ActivityResponse> trackActivity(@RequestBody ActivityRequest activityRequest,@RequestHeader ("X-USER-ID") String userId) {
+    public ResponseEntity<ActivityResponse> trackActivity(@RequestBody ActivityRequest activityRequest,@RequestHeader ("X-USER-ID") String userId,
+                                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         System.out.println("Received activity tracking request: " + activityRequest);
         if (userId != null)
             activityRequest.setUserId(userId);
 
-        return ResponseEntity.ok(activityService.trackActivity(activityRequest));
+        if (idempotencyKey == null)
+            return ResponseEntity.ok(activityService.trackActivity(activityRequest));
+        try {
+            return ResponseEntity.ok(activityService.trackActivity(activityRequest, idempotencyKey));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IdempotencyKeyConflictException e) {
+            return ResponseEntity.status(e.isInProgress() ? HttpStatus.CONFLICT : HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<ActivityBatchResponse> trackActivities(@RequestBody List<ActivityRequest> activityRequests,@RequestHeader ("X-USER-ID") String userId) {
+        if (userId != null)
+            activityRequests.stream()
+                    .filter(Objects::nonNull)
+                    .forEach(activityRequest -> activityRequest.setUserId(userId));
+        try {
+            return ResponseEntity.ok(activityService.trackActivities(activityRequests));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping
-    public ResponseEntity<List<ActivityResponse>> getUserActivities(@RequestHeader("X-USER-ID") String userId) {
-        List<ActivityResponse> activityResponse = activityService.getUserActivities(userId);
-        if(activityResponse==null){
+    public ResponseEntity<ActivityPage> getUserActivities(@RequestHeader("X-USER-ID") String userId,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) Integer limit,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                          @RequestParam(required = false) ActivityType type,
+                                                          @RequestParam(required = false) String fields) {
+        ActivityPage activityPage;
+        try {
+            ActivityFilter filter = new ActivityFilter(from, to, type, ActivityFilter.parseFields(fields));
+            activityPage = activityService.getUserActivities(userId, filter, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if(activityPage==null){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(activityPage);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUserActivities(@RequestHeader("X-USER-ID") String userId,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                      @RequestParam(required = false) ActivityType type,
+                                                                      @RequestParam(required = false) String fields) {
+        ActivityFilter filter;
+        try {
+            filter = new ActivityFilter(from, to, type, ActivityFilter.parseFields(fields));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if(!activityService.isValidUser(userId)){
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> activityService.writeUserActivities(userId, filter, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<List<ActivityRollup>> getUserStats(@RequestHeader("X-USER-ID") String userId,
+                                                             @RequestParam(defaultValue = "DAY") RollupGranularity granularity,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(30);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<ActivityRollup> stats = activityService.getUserStats(userId, granularity, start, end);
+        if(stats==null){
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(activityResponse);
+        return ResponseEntity.ok(stats);
     }
 
     @GetMapping("/{activityId}")
@@ -0,0 +1,131 @@
+package org.choubi.activityservice.controller;
+
+import org.choubi.activityservice.dto.ActivityBatchResponse;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityPage;
+import org.choubi.activityservice.dto.ActivityRequest;
+import org.choubi.activityservice.dto.ActivityResponse;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.model.RollupGranularity;
+import org.choubi.activityservice.service.ActivityService;
+import org.choubi.activityservice.service.IdempotencyKeyConflictException;
+import org.choubi.activityservice.service.ReactiveActivityService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Same API as {@link ActivityController}, served by WebFlux when the "reactive" profile is active.
+ */
+@RestController
+@RequestMapping("/activities")
+@Profile("reactive")
+public class ReactiveActivityController {
+
+    @Autowired
+    private ReactiveActivityService reactiveActivityService;
+    @Autowired
+    private ActivityService activityService;
+
+    @PostMapping
+    public Mono<ResponseEntity<ActivityResponse>> trackActivity(@RequestBody ActivityRequest activityRequest,@RequestHeader ("X-USER-ID") String userId,
+                                                                @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (userId != null)
+            activityRequest.setUserId(userId);
+
+        if (idempotencyKey == null)
+            return reactiveActivityService.trackActivity(activityRequest).map(ResponseEntity::ok);
+        // Keyed requests are retries from flaky clients; the blocking claim path keeps one implementation of the rules
+        return Mono.fromCallable(() -> ResponseEntity.ok(activityService.trackActivity(activityRequest, idempotencyKey)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()))
+                .onErrorResume(IdempotencyKeyConflictException.class, e -> Mono.just(ResponseEntity
+                        .status(e.isInProgress() ? HttpStatus.CONFLICT : HttpStatus.UNPROCESSABLE_ENTITY).build()));
+    }
+
+    // Bulk writes stay on the blocking service; they are rare and already one round trip per collection
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<ActivityBatchResponse>> trackActivities(@RequestBody List<ActivityRequest> activityRequests,@RequestHeader ("X-USER-ID") String userId) {
+        if (userId != null)
+            activityRequests.stream()
+                    .filter(Objects::nonNull)
+                    .forEach(activityRequest -> activityRequest.setUserId(userId));
+        return Mono.fromCallable(() -> ResponseEntity.ok(activityService.trackActivities(activityRequests)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<ActivityPage>> getUserActivities(@RequestHeader("X-USER-ID") String userId,
+                                                                @RequestParam(required = false) String cursor,
+                                                                @RequestParam(required = false) Integer limit,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                @RequestParam(required = false) ActivityType type,
+                                                                @RequestParam(required = false) String fields) {
+        Mono<ActivityPage> activityPage;
+        try {
+            ActivityFilter filter = new ActivityFilter(from, to, type, ActivityFilter.parseFields(fields));
+            activityPage = reactiveActivityService.getUserActivities(userId, filter, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return activityPage.map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<ActivityResponse>>> streamUserActivities(@RequestHeader("X-USER-ID") String userId,
+                                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                             @RequestParam(required = false) ActivityType type,
+                                                                             @RequestParam(required = false) String fields) {
+        ActivityFilter filter;
+        try {
+            filter = new ActivityFilter(from, to, type, ActivityFilter.parseFields(fields));
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return reactiveActivityService.isValidUser(userId)
+                .map(valid -> valid
+                        ? ResponseEntity.ok()
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .body(reactiveActivityService.streamUserActivities(userId, filter))
+                        : ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/stats")
+    public Mono<ResponseEntity<List<ActivityRollup>>> getUserStats(@RequestHeader("X-USER-ID") String userId,
+                                                                   @RequestParam(defaultValue = "DAY") RollupGranularity granularity,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(30);
+        if (start.isAfter(end)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return reactiveActivityService.getUserStats(userId, granularity, start, end)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{activityId}")
+    public Mono<ResponseEntity<ActivityResponse>> getActivityById(@PathVariable String activityId) {
+        return reactiveActivityService.getActivityById(activityId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,66 @@
+package org.choubi.activityservice.controller;
+
+import org.choubi.activityservice.dto.SampleStream;
+import org.choubi.activityservice.dto.SampleStreamSummary;
+import org.choubi.activityservice.model.SampleStreamType;
+import org.choubi.activityservice.service.SampleStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/activities/{activityId}/streams")
+public class SampleStreamController {
+
+    @Autowired
+    private SampleStreamService sampleStreamService;
+
+    @GetMapping
+    public ResponseEntity<List<SampleStreamSummary>> listStreams(@PathVariable String activityId,
+                                                                 @RequestHeader("X-USER-ID") String userId) {
+        List<SampleStreamSummary> streams = sampleStreamService.list(userId, activityId);
+        if(streams==null){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(streams);
+    }
+
+    @PutMapping("/{type}")
+    public ResponseEntity<SampleStreamSummary> storeStream(@PathVariable String activityId,
+                                                           @PathVariable SampleStreamType type,
+                                                           @RequestBody SampleStream stream,
+                                                           @RequestHeader("X-USER-ID") String userId) {
+        stream.setType(type);
+        SampleStreamSummary summary;
+        try {
+            summary = sampleStreamService.store(userId, activityId, stream);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if(summary==null){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(summary);
+    }
+
+    @GetMapping("/{type}")
+    public ResponseEntity<SampleStream> getStream(@PathVariable String activityId,
+                                                  @PathVariable SampleStreamType type,
+                                                  @RequestHeader("X-USER-ID") String userId,
+                                                  @RequestParam(required = false) Long from,
+                                                  @RequestParam(required = false) Long to,
+                                                  @RequestParam(required = false) Integer maxPoints) {
+        SampleStream stream;
+        try {
+            stream = sampleStreamService.read(userId, activityId, type, from, to, maxPoints);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if(stream==null){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(stream);
+    }
+}
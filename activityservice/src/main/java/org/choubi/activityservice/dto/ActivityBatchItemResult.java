@@ -0,0 +1,21 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ActivityBatchItemResult {
+    private int index; // position of the item in the submitted batch
+    private boolean success;
+    private ActivityResponse activity;
+    private String error;
+
+    public static ActivityBatchItemResult created(int index, ActivityResponse activity) {
+        return new ActivityBatchItemResult(index, true, activity, null);
+    }
+
+    public static ActivityBatchItemResult failed(int index, String error) {
+        return new ActivityBatchItemResult(index, false, null, error);
+    }
+}
@@ -0,0 +1,14 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ActivityBatchResponse {
+    private int accepted;
+    private int rejected;
+    private List<ActivityBatchItemResult> results;
+}
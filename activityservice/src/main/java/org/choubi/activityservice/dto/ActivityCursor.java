@@ -0,0 +1,49 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.choubi.activityservice.model.Activity;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position inside a user's activity history, ordered by (startTime desc, id desc).
+ * Clients only ever see the encoded form, which is opaque to them.
+ */
+@Data
+@AllArgsConstructor
+public class ActivityCursor {
+    private static final String SEPARATOR = "|";
+
+    private LocalDateTime startTime; // null for activities recorded without a start time
+    private String id;
+
+    public static ActivityCursor of(Activity activity) {
+        return new ActivityCursor(activity.getStartTime(), activity.getId());
+    }
+
+    public String encode() {
+        String raw = (startTime != null ? startTime.toString() : "") + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ActivityCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int split = raw.lastIndexOf(SEPARATOR);
+            if (split < 0 || split == raw.length() - 1) {
+                throw new IllegalArgumentException("Malformed cursor: " + token);
+            }
+            String time = raw.substring(0, split);
+            return new ActivityCursor(time.isEmpty() ? null : LocalDateTime.parse(time), raw.substring(split + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.choubi.activityservice.model.ActivityType;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Optional restrictions on an activity listing. {@code fields} holds the {@link ActivityResponse}
+ * properties to load; when empty the whole document is read.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityFilter {
+    private static final Set<String> SELECTABLE_FIELDS = Set.of(
+            "id", "userId", "type", "duration", "caloriesBurned", "startTime", "additionalMetrics", "createdAt", "updatedAt");
+
+    private LocalDateTime from; // inclusive, on startTime
+    private LocalDateTime to; // exclusive, on startTime
+    private ActivityType type;
+    private Set<String> fields = Set.of();
+
+    public static Set<String> parseFields(String fields) {
+        Set<String> parsed = new LinkedHashSet<>();
+        if (fields == null || fields.isBlank()) {
+            return parsed;
+        }
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!SELECTABLE_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name);
+            }
+            parsed.add(name);
+        }
+        // The continuation token is built from these two
+        if (!parsed.isEmpty()) {
+            parsed.add("id");
+            parsed.add("startTime");
+        }
+        return parsed;
+    }
+}
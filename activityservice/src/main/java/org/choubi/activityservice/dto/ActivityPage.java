@@ -0,0 +1,13 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ActivityPage {
+    private List<ActivityResponse> content;
+    private String nextCursor; // null when this is the last page
+}
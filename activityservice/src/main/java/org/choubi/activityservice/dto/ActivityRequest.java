@@ -1,10 +1,10 @@
 package org.choubi.activityservice.dto;
 
 import lombok.Data;
+import org.choubi.activityservice.model.ActivityMetrics;
 import org.choubi.activityservice.model.ActivityType;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Data
 public class ActivityRequest {
@@ -13,7 +13,7 @@ public class ActivityRequest {
     private Integer duration; // in minutes
     private Integer caloriesBurned;
     private LocalDateTime startTime; // ISO 8601 format
-    private Map<String,Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
 
 
 }
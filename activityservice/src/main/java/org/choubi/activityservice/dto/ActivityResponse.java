@@ -1,16 +1,18 @@
 package org.choubi.activityservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityMetrics;
 import org.choubi.activityservice.model.ActivityType;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL) // fields left out by a projection are omitted, not sent as null
 public class ActivityResponse {
     private String id;
     private String userId;
@@ -18,7 +20,7 @@ public class ActivityResponse {
     private Integer duration;
     private Integer caloriesBurned;
     private LocalDateTime startTime;
-    private Map<String,Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -0,0 +1,19 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.choubi.activityservice.model.SampleStreamType;
+
+/**
+ * Samples of one stream in columnar form: {@code offsets[i]} is the time of {@code values[i]} in
+ * seconds since the start of the activity.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SampleStream {
+    private SampleStreamType type;
+    private long[] offsets;
+    private double[] values;
+}
@@ -0,0 +1,16 @@
+package org.choubi.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.choubi.activityservice.model.SampleStreamType;
+
+@Data
+@AllArgsConstructor
+public class SampleStreamSummary {
+    private SampleStreamType type;
+    private long samples;
+    private long startOffset;
+    private long endOffset;
+    private int chunks;
+    private long storedBytes;
+}
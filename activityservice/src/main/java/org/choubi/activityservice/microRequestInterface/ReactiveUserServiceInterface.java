@@ -0,0 +1,11 @@
+package org.choubi.activityservice.microRequestInterface;
+
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.service.annotation.GetExchange;
+import reactor.core.publisher.Mono;
+
+// Non-blocking counterpart of UserServiceInterface, backed by a load-balanced WebClient (see ReactiveWebConfig)
+public interface ReactiveUserServiceInterface {
+    @GetExchange("/users/validate/{id}")
+    Mono<Boolean> validate(@PathVariable String id);
+}
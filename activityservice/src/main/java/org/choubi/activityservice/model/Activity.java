@@ -7,13 +7,15 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Document(collection = "activities")
+// Serves findByUserId and the newest-first keyset pages and streams
+@CompoundIndex(name = "user_start_idx", def = "{'userId': 1, 'startTime': -1, '_id': -1}")
 @Data
 @Builder
 @AllArgsConstructor
@@ -29,7 +31,7 @@ public class Activity {
     private LocalDateTime startTime;
 
     @Field("metrics")
-    private Map<String,Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
     @CreatedDate
     private LocalDateTime createdAt;
     @LastModifiedDate
@@ -0,0 +1,41 @@
+package org.choubi.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Totals of one user's activities over one day, week or month. Documents are only ever changed
+ * with {@code $inc} upserts, so concurrent writers never lose updates.
+ */
+@Document(collection = "activity_rollups")
+@CompoundIndex(name = "user_granularity_period_idx", def = "{'userId': 1, 'granularity': 1, 'periodStart': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRollup {
+
+    @Id
+    private String id; // userId:granularity:periodStart
+    private String userId;
+    private RollupGranularity granularity;
+    private LocalDate periodStart;
+    private long sessions;
+    private long durationMinutes;
+    private long caloriesBurned;
+    private Map<ActivityType, RollupTotals> byType;
+    private LocalDateTime updatedAt;
+
+    public static String idOf(String userId, RollupGranularity granularity, LocalDate periodStart) {
+        return userId + ":" + granularity + ":" + periodStart;
+    }
+}
@@ -0,0 +1,13 @@
+package org.choubi.activityservice.model;
+
+// Which queue an activity event goes to: fresh activities jump ahead of imports and re-analysis
+public enum EventLane {
+    LIVE,
+    BACKFILL;
+
+    public static final String HEADER = "x-activity-lane";
+
+    public String headerValue() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,35 @@
+package org.choubi.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Claim of an Idempotency-Key sent with {@code POST /activities}. It points at the activity the
+ * first request created (or is creating); the stored activity is the response that gets replayed.
+ */
+@Document(collection = "activity_idempotency_keys")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    private String id; // userId:key
+    private String requestHash; // SHA-256 of the request body, to reject a key reused for another request
+    private String activityId;
+    // Clients retry within minutes; a day covers a phone that was offline overnight
+    @Indexed(name = "created_ttl_idx", expireAfter = "24h")
+    private LocalDateTime createdAt;
+
+    public static String idOf(String userId, String key) {
+        return userId + ":" + key;
+    }
+}
@@ -0,0 +1,36 @@
+package org.choubi.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pending "activity tracked" event. It is written before the activity itself and carries only the
+ * activity id; the relay reads the activity at publish time, so an entry whose activity write
+ * never happened is simply dropped instead of publishing a phantom.
+ */
+@Document(collection = "activity_outbox")
+@CompoundIndex(name = "pending_idx", def = "{'publishedAt': 1, '_id': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+
+    @Id
+    private String id;
+    private String activityId;
+    private LocalDateTime createdAt;
+    // Set for bulk imports; otherwise the publisher picks the lane from the activity's start time
+    private EventLane lane;
+    // Published entries are kept for a while for troubleshooting, then expire
+    @Indexed(name = "published_ttl_idx", expireAfter = "7d")
+    private LocalDateTime publishedAt;
+}
@@ -0,0 +1,28 @@
+package org.choubi.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lease and progress counters of the outbox relay. Only the lease holder publishes; every run
+ * starts from the oldest unpublished entry, the counters are only there to check progress from
+ * the database.
+ */
+@Document(collection = "activity_outbox_state")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxRelayState {
+
+    @Id
+    private String id;
+    private String owner;
+    private LocalDateTime leaseUntil;
+    private LocalDateTime lastPublishedAt;
+    private long publishedCount;
+}
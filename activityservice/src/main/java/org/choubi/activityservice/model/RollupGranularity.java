@@ -0,0 +1,20 @@
+package org.choubi.activityservice.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+public enum RollupGranularity {
+    DAY,
+    WEEK,
+    MONTH;
+
+    /** First day of the period containing {@code date}; weeks start on Monday. */
+    public LocalDate periodStart(LocalDate date) {
+        return switch (this) {
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+    }
+}
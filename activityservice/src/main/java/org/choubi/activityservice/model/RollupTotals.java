@@ -0,0 +1,14 @@
+package org.choubi.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RollupTotals {
+    private long sessions;
+    private long durationMinutes;
+    private long caloriesBurned;
+}
@@ -0,0 +1,38 @@
+package org.choubi.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A run of consecutive samples of one stream of an activity. Offsets are seconds since the start
+ * of the activity; {@code data} holds the delta encoded offsets and values (see {@code SampleChunkCodec}).
+ */
+@Document(collection = "activity_sample_chunks")
+@CompoundIndex(name = "activity_type_offset_idx", def = "{'activityId': 1, 'type': 1, 'startOffset': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SampleChunk {
+
+    @Id
+    private String id; // activityId:type:seq
+    private String activityId;
+    private SampleStreamType type;
+    private int seq;
+    private long startOffset;
+    private long endOffset;
+    private int count;
+    private SampleEncoding encoding;
+    private int size; // bytes in data, readable without loading it
+    private byte[] data;
+
+    public static String idOf(String activityId, SampleStreamType type, int seq) {
+        return activityId + ":" + type + ":" + seq;
+    }
+}
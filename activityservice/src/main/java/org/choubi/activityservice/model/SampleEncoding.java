@@ -0,0 +1,6 @@
+package org.choubi.activityservice.model;
+
+public enum SampleEncoding {
+    DELTA_VARINT,
+    DELTA_VARINT_DEFLATE
+}
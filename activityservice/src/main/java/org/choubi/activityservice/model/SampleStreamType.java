@@ -0,0 +1,29 @@
+package org.choubi.activityservice.model;
+
+/**
+ * Kind of per-sample sensor stream. Samples are stored as integers in units of {@code 1/scale},
+ * which is enough precision for each sensor and keeps the deltas between samples small.
+ */
+public enum SampleStreamType {
+    HEART_RATE(1), // bpm
+    CADENCE(1), // steps or strokes per minute
+    POWER(1), // W
+    SPEED(100), // m/s
+    ALTITUDE(10), // m
+    LATITUDE(1_000_000), // degrees, ~0.1 m
+    LONGITUDE(1_000_000); // degrees
+
+    private final int scale;
+
+    SampleStreamType(int scale) {
+        this.scale = scale;
+    }
+
+    public long toFixed(double value) {
+        return Math.round(value * scale);
+    }
+
+    public double fromFixed(long value) {
+        return (double) value / scale;
+    }
+}
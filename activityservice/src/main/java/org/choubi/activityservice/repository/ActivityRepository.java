@@ -5,8 +5,14 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface ActivityRepository extends MongoRepository<Activity,String> {
+public interface ActivityRepository extends MongoRepository<Activity,String>, ActivityRepositoryCustom {
     List<Activity> findByUserId(String userId);
+
+    boolean existsByIdAndUserId(String id, String userId);
+
+    // Backed by a live Mongo cursor; callers must close the stream
+    Stream<Activity> streamByUserIdOrderByStartTimeDescIdDesc(String userId);
 }
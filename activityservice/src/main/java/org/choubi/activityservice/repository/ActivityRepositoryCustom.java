@@ -0,0 +1,28 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.model.Activity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public interface ActivityRepositoryCustom {
+
+    /**
+     * Returns at most {@code limit} activities of the user matching {@code filter}, newest first,
+     * strictly after {@code cursor} (or from the beginning when the cursor is null).
+     */
+    List<Activity> findPageByUserId(String userId, ActivityFilter filter, ActivityCursor cursor, int limit);
+
+    /** Same order and filtering as {@link #findPageByUserId}, backed by a live cursor that callers must close. */
+    Stream<Activity> streamByUserId(String userId, ActivityFilter filter);
+
+    /**
+     * Inserts all activities with a single unordered bulk write. Ids must be assigned by the caller.
+     *
+     * @return error message per index of {@code activities} that could not be written; empty when all succeeded
+     */
+    Map<Integer, String> bulkInsert(List<Activity> activities);
+}
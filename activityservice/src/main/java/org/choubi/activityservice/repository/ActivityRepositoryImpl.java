@@ -0,0 +1,102 @@
+package org.choubi.activityservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.model.Activity;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class ActivityRepositoryImpl implements ActivityRepositoryCustom {
+
+    static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "startTime", "id");
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Activity> findPageByUserId(String userId, ActivityFilter filter, ActivityCursor cursor, int limit) {
+        return mongoTemplate.find(pageQuery(userId, filter, cursor, limit), Activity.class);
+    }
+
+    @Override
+    public Stream<Activity> streamByUserId(String userId, ActivityFilter filter) {
+        return mongoTemplate.stream(historyQuery(userId, filter), Activity.class);
+    }
+
+    @Override
+    public Map<Integer, String> bulkInsert(List<Activity> activities) {
+        Map<Integer, String> errors = new HashMap<>();
+        if (activities.isEmpty()) {
+            return errors;
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)
+                    .insert(activities)
+                    .execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+        }
+        return errors;
+    }
+
+    // Shared with ReactiveActivityRepositoryImpl so both modes run the same, index-backed queries
+    static Query pageQuery(String userId, ActivityFilter filter, ActivityCursor cursor, int limit) {
+        Criteria criteria = matching(userId, filter);
+        if (cursor != null) {
+            criteria = criteria.andOperator(after(cursor));
+        }
+        return withProjection(Query.query(criteria), filter).with(NEWEST_FIRST).limit(limit);
+    }
+
+    static Query historyQuery(String userId, ActivityFilter filter) {
+        return withProjection(Query.query(matching(userId, filter)), filter).with(NEWEST_FIRST);
+    }
+
+    private static Criteria matching(String userId, ActivityFilter filter) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (filter.getType() != null) {
+            criteria.and("type").is(filter.getType());
+        }
+        if (filter.getFrom() != null || filter.getTo() != null) {
+            Criteria startTime = criteria.and("startTime");
+            if (filter.getFrom() != null) {
+                startTime.gte(filter.getFrom());
+            }
+            if (filter.getTo() != null) {
+                startTime.lt(filter.getTo());
+            }
+        }
+        return criteria;
+    }
+
+    // Unrequested fields, typically the metrics map, are neither sent by the server nor mapped
+    private static Query withProjection(Query query, ActivityFilter filter) {
+        filter.getFields().forEach(field -> query.fields().include(field));
+        return query;
+    }
+
+    // Activities without a startTime sort after every dated one in descending order
+    private static Criteria after(ActivityCursor cursor) {
+        if (cursor.getStartTime() == null) {
+            return new Criteria().andOperator(
+                    Criteria.where("startTime").is(null),
+                    Criteria.where("id").lt(cursor.getId()));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("startTime").lt(cursor.getStartTime()),
+                new Criteria().andOperator(
+                        Criteria.where("startTime").is(cursor.getStartTime()),
+                        Criteria.where("id").lt(cursor.getId())),
+                Criteria.where("startTime").is(null));
+    }
+}
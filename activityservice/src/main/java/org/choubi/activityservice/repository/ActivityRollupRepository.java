@@ -0,0 +1,20 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.RollupGranularity;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ActivityRollupRepository extends MongoRepository<ActivityRollup,String> {
+
+    @Query(value = "{ 'userId': ?0, 'granularity': ?1, 'periodStart': { $gte: ?2, $lte: ?3 } }",
+            sort = "{ 'periodStart': 1 }")
+    List<ActivityRollup> findPeriods(String userId, RollupGranularity granularity, LocalDate from, LocalDate to);
+
+    void deleteByUserId(String userId);
+}
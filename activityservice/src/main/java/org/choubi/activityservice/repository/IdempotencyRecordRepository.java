@@ -0,0 +1,10 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.model.IdempotencyRecord;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IdempotencyRecordRepository extends MongoRepository<IdempotencyRecord,String> {
+    long deleteByIdAndActivityId(String id, String activityId);
+}
@@ -0,0 +1,14 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.model.OutboxEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends MongoRepository<OutboxEvent,String> {
+    // Ids are ObjectIds, so "id < x" selects the entries created before the time encoded in x
+    List<OutboxEvent> findByPublishedAtIsNullAndIdLessThanOrderByIdAsc(String id, Limit limit);
+}
@@ -0,0 +1,11 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.model.Activity;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@Profile("reactive")
+public interface ReactiveActivityRepository extends ReactiveMongoRepository<Activity,String>, ReactiveActivityRepositoryCustom {
+}
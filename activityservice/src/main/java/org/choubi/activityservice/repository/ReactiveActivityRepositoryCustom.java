@@ -0,0 +1,13 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.model.Activity;
+import reactor.core.publisher.Flux;
+
+public interface ReactiveActivityRepositoryCustom {
+
+    Flux<Activity> findPageByUserId(String userId, ActivityFilter filter, ActivityCursor cursor, int limit);
+
+    Flux<Activity> streamByUserId(String userId, ActivityFilter filter);
+}
@@ -0,0 +1,24 @@
+package org.choubi.activityservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.model.Activity;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+
+@RequiredArgsConstructor
+public class ReactiveActivityRepositoryImpl implements ReactiveActivityRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Flux<Activity> findPageByUserId(String userId, ActivityFilter filter, ActivityCursor cursor, int limit) {
+        return reactiveMongoTemplate.find(ActivityRepositoryImpl.pageQuery(userId, filter, cursor, limit), Activity.class);
+    }
+
+    @Override
+    public Flux<Activity> streamByUserId(String userId, ActivityFilter filter) {
+        return reactiveMongoTemplate.find(ActivityRepositoryImpl.historyQuery(userId, filter), Activity.class);
+    }
+}
@@ -0,0 +1,24 @@
+package org.choubi.activityservice.repository;
+
+import org.choubi.activityservice.model.SampleChunk;
+import org.choubi.activityservice.model.SampleStreamType;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SampleChunkRepository extends MongoRepository<SampleChunk,String> {
+
+    // Chunks overlapping [from, to]; a chunk starting after 'to' cannot contain samples in range
+    @Query(value = "{ 'activityId': ?0, 'type': ?1, 'startOffset': { $lte: ?3 }, 'endOffset': { $gte: ?2 } }",
+            sort = "{ 'startOffset': 1 }")
+    List<SampleChunk> findRange(String activityId, SampleStreamType type, long from, long to);
+
+    @Query(value = "{ 'activityId': ?0 }", fields = "{ 'data': 0 }", sort = "{ 'type': 1, 'startOffset': 1 }")
+    List<SampleChunk> findHeadersByActivityId(String activityId);
+
+    @Query(value = "{ 'activityId': ?0, 'type': ?1, 'seq': { $gte: ?2 } }", delete = true)
+    void deleteFromSeq(String activityId, SampleStreamType type, int seq);
+}
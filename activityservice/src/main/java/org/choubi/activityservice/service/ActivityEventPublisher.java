@@ -0,0 +1,282 @@
+package org.choubi.activityservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.EventLane;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes activity events without waiting for the broker. Events are buffered and sent in
+ * small batches, when {@code batchSize} are waiting or every {@code flushIntervalMs}, each with
+ * its own correlated publisher confirm. Acked events get their outbox entry marked published;
+ * nacked or unconfirmed ones are sent again up to {@code maxAttempts} times and are otherwise
+ * left to {@link OutboxRelay}. All sending and Mongo writes happen on one flusher thread, the
+ * confirm callbacks only hand results back to it.
+ * <p>
+ * Each event goes to a lane: bulk imports and activities that started more than
+ * {@code backfillAfterHours} ago are sent with the backfill routing key, so the AI service can
+ * answer fresh workouts first. The lane is also sent as the {@value EventLane#HEADER} header.
+ */
+@Slf4j
+@Service
+public class ActivityEventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "activity-event-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // Every event not yet confirmed and recorded, by outbox id; a second publish of one joins the first
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Pending> buffer;
+    private final Queue<Pending> acked = new ConcurrentLinkedQueue<>();
+    private final Queue<Pending> failed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter confirmedCounter;
+    private final Counter nackedCounter;
+    private final Counter timedOutCounter;
+    private final Counter droppedCounter;
+
+    @Value("${rabbitmq.exchanges.name}")
+    private String exchangeName;
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+    @Value("${rabbitmq.routing.backfillKey:activity.backfill}")
+    private String backfillRoutingKey;
+    @Value("${activity.events.backfillAfterHours:24}")
+    private long backfillAfterHours;
+    @Value("${activity.events.batchSize:50}")
+    private int batchSize;
+    @Value("${activity.events.flushIntervalMs:20}")
+    private long flushIntervalMs;
+    @Value("${activity.events.confirmTimeoutMs:5000}")
+    private long confirmTimeoutMs;
+    @Value("${activity.events.maxAttempts:3}")
+    private int maxAttempts;
+
+    public ActivityEventPublisher(RabbitTemplate rabbitTemplate,
+                                  MongoTemplate mongoTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${activity.events.bufferCapacity:10000}") int bufferCapacity) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.mongoTemplate = mongoTemplate;
+        this.buffer = new LinkedBlockingQueue<>(bufferCapacity);
+        Gauge.builder("activity.events.inflight", inFlight, AtomicInteger::get)
+                .description("Events sent and waiting for a broker confirm")
+                .register(meterRegistry);
+        Gauge.builder("activity.events.buffered", buffer, Queue::size)
+                .description("Events waiting to be sent")
+                .register(meterRegistry);
+        this.confirmedCounter = meterRegistry.counter("activity.events.confirmed");
+        this.nackedCounter = meterRegistry.counter("activity.events.nacked");
+        this.timedOutCounter = meterRegistry.counter("activity.events.unconfirmed");
+        this.droppedCounter = meterRegistry.counter("activity.events.dropped");
+    }
+
+    @PostConstruct
+    void start() {
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flusher.shutdown();
+        // Unconfirmed events stay unpublished in the outbox; the relay of the next instance sends them
+        flusher.awaitTermination(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the event and returns at once. The future completes when the broker confirmed it and
+     * the outbox entry was marked published, and fails when the event was given up on, which
+     * leaves the entry for {@link OutboxRelay}.
+     */
+    public CompletableFuture<Void> publish(OutboxEvent event, Activity activity) {
+        Pending candidate = new Pending(event, activity);
+        Pending existing = pending.putIfAbsent(event.getId(), candidate);
+        if (existing != null) {
+            return existing.done;
+        }
+        if (!buffer.offer(candidate)) {
+            droppedCounter.increment();
+            return giveUp(candidate, "publish buffer is full");
+        }
+        if (buffer.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushSafely);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: the outbox entry is still unpublished, so the relay sends it later
+            }
+        }
+        return candidate.done;
+    }
+
+    public void publishAll(List<OutboxEvent> events, List<Activity> activities) {
+        for (int i = 0; i < events.size(); i++) {
+            publish(events.get(i), activities.get(i));
+        }
+    }
+
+    private void flushSafely() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Activity event flush failed: {}", e.getMessage());
+        }
+    }
+
+    private void flush() {
+        recordAcked();
+        retryFailedAndExpired();
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            batch.forEach(this::send);
+            batch.clear();
+        }
+    }
+
+    private void send(Pending event) {
+        CorrelationData correlation = new CorrelationData(event.event.getId());
+        event.sentAt = System.nanoTime();
+        event.correlation.set(correlation);
+        event.attempts++;
+        inFlight.incrementAndGet();
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            if (!event.correlation.compareAndSet(correlation, null)) {
+                return; // confirm of an attempt that already timed out and was sent again
+            }
+            inFlight.decrementAndGet();
+            if (error == null && confirm.isAck()) {
+                confirmedCounter.increment();
+                acked.add(event);
+            } else {
+                nackedCounter.increment();
+                event.lastError = error != null ? error.getMessage() : confirm.getReason();
+                failed.add(event);
+            }
+        });
+        try {
+            EventLane lane = laneOf(event);
+            rabbitTemplate.convertAndSend(exchangeName, lane == EventLane.BACKFILL ? backfillRoutingKey : routingKey, event.activity,
+                    message -> {
+                        message.getMessageProperties().setHeader(EventLane.HEADER, lane.headerValue());
+                        return message;
+                    }, correlation);
+        } catch (Exception e) {
+            correlation.getFuture().completeExceptionally(e);
+        }
+    }
+
+    private EventLane laneOf(Pending event) {
+        if (event.event.getLane() != null) {
+            return event.event.getLane();
+        }
+        LocalDateTime startTime = event.activity.getStartTime();
+        return startTime != null && startTime.isBefore(LocalDateTime.now().minusHours(backfillAfterHours))
+                ? EventLane.BACKFILL
+                : EventLane.LIVE;
+    }
+
+    // One write for every confirm that arrived since the last flush
+    private void recordAcked() {
+        List<Pending> confirmed = new ArrayList<>();
+        for (Pending event; (event = acked.poll()) != null; ) {
+            confirmed.add(event);
+        }
+        if (confirmed.isEmpty()) {
+            return;
+        }
+        List<String> ids = confirmed.stream().map(event -> event.event.getId()).toList();
+        try {
+            mongoTemplate.updateMulti(Query.query(Criteria.where("id").in(ids)),
+                    Update.update("publishedAt", LocalDateTime.now()), OutboxEvent.class);
+        } catch (Exception e) {
+            // The broker has them; the relay will send them once more (at-least-once)
+            confirmed.forEach(event -> giveUp(event, "marking published failed: " + e.getMessage()));
+            return;
+        }
+        confirmed.forEach(event -> {
+            pending.remove(event.event.getId());
+            event.done.complete(null);
+        });
+    }
+
+    private void retryFailedAndExpired() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (Pending event : pending.values()) {
+            CorrelationData correlation = event.correlation.get();
+            if (correlation != null && now - event.sentAt > timeout && event.correlation.compareAndSet(correlation, null)) {
+                inFlight.decrementAndGet();
+                timedOutCounter.increment();
+                event.lastError = "no confirm within " + confirmTimeoutMs + "ms";
+                failed.add(event);
+            }
+        }
+        for (Pending event; (event = failed.poll()) != null; ) {
+            if (event.attempts < maxAttempts) {
+                send(event);
+            } else {
+                giveUp(event, event.lastError);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> giveUp(Pending event, String reason) {
+        log.warn("Leaving activity event {} to the outbox relay: {}", event.event.getId(), reason);
+        pending.remove(event.event.getId(), event);
+        event.done.completeExceptionally(new IllegalStateException(reason));
+        return event.done;
+    }
+
+    private static final class Pending {
+        private final OutboxEvent event;
+        private final Activity activity;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        // Set while waiting for the confirm of an attempt; whoever clears it, confirm or timeout, handles the outcome
+        private final AtomicReference<CorrelationData> correlation = new AtomicReference<>();
+        private volatile long sentAt;
+        private volatile String lastError;
+        private int attempts; // flusher thread only
+
+        private Pending(OutboxEvent event, Activity activity) {
+            this.event = event;
+            this.activity = activity;
+        }
+    }
+}
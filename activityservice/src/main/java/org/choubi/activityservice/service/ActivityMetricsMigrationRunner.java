@@ -0,0 +1,79 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites activity metrics stored before the typed schema: old key spellings and numbers stored
+ * as strings. Such documents are readable as they are, so this only saves space and conversion
+ * work. Enable for a single start with {@code activity.metrics.migrateOnStartup=true}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "activity.metrics.migrateOnStartup", havingValue = "true")
+public class ActivityMetricsMigrationRunner implements ApplicationRunner {
+
+    private static final List<String> LEGACY_KEYS = List.of("heartRate", "averageHeartRate", "avgHr", "maxHr", "elevation", "distanceKm");
+    private static final List<String> TYPED_KEYS = List.of(ActivityMetrics.DISTANCE, ActivityMetrics.PACE, ActivityMetrics.ELEVATION_GAIN,
+            ActivityMetrics.AVG_HEART_RATE, ActivityMetrics.MAX_HEART_RATE, ActivityMetrics.CADENCE);
+    private static final int BSON_STRING = 2;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${activity.metrics.migrationBatchSize:500}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Criteria> legacy = new ArrayList<>();
+        LEGACY_KEYS.forEach(key -> legacy.add(Criteria.where("metrics." + key).exists(true)));
+        TYPED_KEYS.forEach(key -> legacy.add(Criteria.where("metrics." + key).type(BSON_STRING)));
+        Query query = Query.query(new Criteria().orOperator(legacy));
+        query.fields().include("id", "additionalMetrics");
+
+        long migrated = 0;
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            Iterator<Activity> iterator = activities.iterator();
+            BulkOperations bulk = null;
+            int pending = 0;
+            while (iterator.hasNext()) {
+                Activity activity = iterator.next();
+                if (bulk == null) {
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class);
+                }
+                // Reading already normalized the metrics; writing them back stores the typed form
+                bulk.updateOne(Query.query(Criteria.where("id").is(activity.getId())),
+                        Update.update("additionalMetrics", activity.getAdditionalMetrics()));
+                if (++pending == batchSize) {
+                    bulk.execute();
+                    migrated += pending;
+                    bulk = null;
+                    pending = 0;
+                }
+            }
+            if (bulk != null) {
+                bulk.execute();
+                migrated += pending;
+            }
+        }
+        log.info("Migrated metrics of {} activities to the typed schema", migrated);
+    }
+}
@@ -0,0 +1,24 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills the rollups from existing activities. Enable for a single start with
+ * {@code activity.rollups.rebuildOnStartup=true}.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "activity.rollups.rebuildOnStartup", havingValue = "true")
+public class ActivityRollupRebuildRunner implements ApplicationRunner {
+
+    private final ActivityRollupService activityRollupService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        activityRollupService.rebuildAll();
+    }
+}
@@ -0,0 +1,148 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.model.RollupGranularity;
+import org.choubi.activityservice.model.RollupTotals;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.ActivityRollupRepository;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the per-user daily, weekly and monthly rollups in step with the activities collection.
+ * Activities are bucketed by their start time, or by their creation time when none was given.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ActivityRollupService {
+
+    private final ActivityRollupRepository activityRollupRepository;
+    private final ActivityRepository activityRepository;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Adds the activities to their rollups with one unordered bulk of {@code $inc} upserts.
+     * Failures are only logged: the activities are already stored, and {@link #rebuild} repairs the totals.
+     */
+    public void record(Collection<Activity> activities) {
+        try {
+            apply(accumulate(activities.stream()));
+        } catch (Exception e) {
+            log.error("Failed to update rollups for {} activities: {}", activities.size(), e.getMessage());
+        }
+    }
+
+    public List<ActivityRollup> getRollups(String userId, RollupGranularity granularity, LocalDate from, LocalDate to) {
+        return activityRollupRepository.findPeriods(userId, granularity, granularity.periodStart(from), to);
+    }
+
+    /**
+     * Recomputes every rollup of the user from the activities collection. Increments made by
+     * requests while the rebuild runs may be counted twice or lost, so run it in a quiet period.
+     */
+    public void rebuild(String userId) {
+        activityRollupRepository.deleteByUserId(userId);
+        try (Stream<Activity> activities = activityRepository.streamByUserIdOrderByStartTimeDescIdDesc(userId)) {
+            apply(accumulate(activities));
+        }
+    }
+
+    public void rebuildAll() {
+        List<String> userIds = mongoTemplate.findDistinct(new Query(), "userId", Activity.class, String.class);
+        log.info("Rebuilding activity rollups for {} users", userIds.size());
+        for (String userId : userIds) {
+            rebuild(userId);
+        }
+        log.info("Activity rollup rebuild finished");
+    }
+
+    private Map<String, Increment> accumulate(Stream<Activity> activities) {
+        Map<String, Increment> increments = new HashMap<>();
+        activities.forEach(activity -> {
+            LocalDateTime time = activity.getStartTime() != null ? activity.getStartTime() : activity.getCreatedAt();
+            if (activity.getUserId() == null || time == null) {
+                return;
+            }
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                LocalDate periodStart = granularity.periodStart(time.toLocalDate());
+                increments.computeIfAbsent(ActivityRollup.idOf(activity.getUserId(), granularity, periodStart),
+                                id -> new Increment(activity.getUserId(), granularity, periodStart))
+                        .add(activity);
+            }
+        });
+        return increments;
+    }
+
+    private void apply(Map<String, Increment> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+        LocalDateTime now = LocalDateTime.now();
+        increments.forEach((id, increment) -> {
+            Update update = new Update()
+                    .setOnInsert("userId", increment.userId)
+                    .setOnInsert("granularity", increment.granularity)
+                    .setOnInsert("periodStart", increment.periodStart)
+                    .set("updatedAt", now)
+                    .inc("sessions", increment.total.getSessions())
+                    .inc("durationMinutes", increment.total.getDurationMinutes())
+                    .inc("caloriesBurned", increment.total.getCaloriesBurned());
+            increment.byType.forEach((type, totals) -> update
+                    .inc("byType." + type + ".sessions", totals.getSessions())
+                    .inc("byType." + type + ".durationMinutes", totals.getDurationMinutes())
+                    .inc("byType." + type + ".caloriesBurned", totals.getCaloriesBurned()));
+            bulk.upsert(Query.query(Criteria.where("id").is(id)), update);
+        });
+        bulk.execute();
+    }
+
+    private static final class Increment {
+        private final String userId;
+        private final RollupGranularity granularity;
+        private final LocalDate periodStart;
+        private final RollupTotals total = new RollupTotals();
+        private final Map<ActivityType, RollupTotals> byType = new EnumMap<>(ActivityType.class);
+
+        private Increment(String userId, RollupGranularity granularity, LocalDate periodStart) {
+            this.userId = userId;
+            this.granularity = granularity;
+            this.periodStart = periodStart;
+        }
+
+        private void add(Activity activity) {
+            addTo(total, activity);
+            if (activity.getType() != null) {
+                addTo(byType.computeIfAbsent(activity.getType(), type -> new RollupTotals()), activity);
+            }
+        }
+
+        private static void addTo(RollupTotals totals, Activity activity) {
+            totals.setSessions(totals.getSessions() + 1);
+            totals.setDurationMinutes(totals.getDurationMinutes() + valueOf(activity.getDuration()));
+            totals.setCaloriesBurned(totals.getCaloriesBurned() + valueOf(activity.getCaloriesBurned()));
+        }
+
+        private static long valueOf(Integer value) {
+            return value != null ? value : 0;
+        }
+    }
+}
@@ -1,21 +1,40 @@
 package org.choubi.activityservice.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.choubi.activityservice.dto.ActivityBatchItemResult;
+import org.choubi.activityservice.dto.ActivityBatchResponse;
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityPage;
 import org.choubi.activityservice.dto.ActivityRequest;
 import org.choubi.activityservice.dto.ActivityResponse;
-import org.choubi.activityservice.microRequestInterface.UserServiceInterface;
 import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.EventLane;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.model.RollupGranularity;
 import org.choubi.activityservice.repository.ActivityRepository;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.choubi.activityservice.repository.OutboxEventRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -23,44 +42,227 @@ import java.util.stream.Collectors;
 public class ActivityService {
 
     private final ActivityRepository activityRepository;
-    private final UserServiceInterface userService;
-    private final RabbitTemplate rabbitTemplate;
+    private final UserValidationCache userValidationCache;
+    private final OutboxEventRepository outboxEventRepository;
+    private final ActivityRollupService activityRollupService;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final ActivityEventPublisher activityEventPublisher;
+    private final ObjectMapper objectMapper;
 
-    @Value("${rabbitmq.exchanges.name}")
-    private String exchangeName;
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
+    @Value("${activity.page.defaultSize:50}")
+    private int defaultPageSize;
+    @Value("${activity.page.maxSize:200}")
+    private int maxPageSize;
+    @Value("${activity.batch.maxSize:500}")
+    private int maxBatchSize;
 
 
 
+    /**
+     * Stores the activity and hands its event to {@link ActivityEventPublisher}, which sends it in
+     * the background, so the broker is never on the request path. The outbox entry is written
+     * first so that no stored activity can miss its event: {@link OutboxRelay} sends whatever the
+     * publisher could not.
+     */
     public ActivityResponse trackActivity(ActivityRequest activityRequest) {
-        Activity activity = Activity.builder()
+        return store(toActivity(activityRequest, LocalDateTime.now()));
+    }
+
+    /**
+     * Like {@link #trackActivity(ActivityRequest)}, but a retry carrying the same key gets the
+     * original activity back instead of storing, and publishing, a duplicate.
+     */
+    public ActivityResponse trackActivity(ActivityRequest activityRequest, String idempotencyKey) {
+        Activity activity = toActivity(activityRequest, LocalDateTime.now());
+        String userId = activityRequest.getUserId();
+        Optional<ActivityResponse> original = idempotencyKeyStore.claim(userId, idempotencyKey, activityRequest, activity.getId());
+        if (original.isPresent()) {
+            return original.get();
+        }
+        ActivityResponse response;
+        try {
+            response = store(activity);
+        } catch (RuntimeException e) {
+            idempotencyKeyStore.release(userId, idempotencyKey, activity.getId());
+            throw e;
+        }
+        idempotencyKeyStore.complete(userId, idempotencyKey, activityRequest, response);
+        return response;
+    }
+
+    private ActivityResponse store(Activity activity) {
+        OutboxEvent outboxEvent = outboxEventRepository.insert(toOutboxEvent(activity));
+        Activity savedActivity;
+        try {
+            savedActivity = activityRepository.insert(activity);
+        } catch (RuntimeException e) {
+            discardOutboxEvents(List.of(outboxEvent));
+            throw e;
+        }
+        activityEventPublisher.publish(outboxEvent, savedActivity);
+        activityRollupService.record(List.of(savedActivity));
+        return new ActivityResponse(savedActivity);
+    }
+
+    /**
+     * Validates every request, stores the valid ones with one unordered bulk insert and queues
+     * their events in the outbox with one more write. Each item is reported on its own.
+     */
+    public ActivityBatchResponse trackActivities(List<ActivityRequest> activityRequests) {
+        if (activityRequests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch size " + activityRequests.size() + " exceeds limit " + maxBatchSize);
+        }
+        ActivityBatchItemResult[] results = new ActivityBatchItemResult[activityRequests.size()];
+        List<Activity> toInsert = new ArrayList<>();
+        List<Integer> insertIndexes = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < activityRequests.size(); i++) {
+            String error = validate(activityRequests.get(i));
+            if (error != null) {
+                results[i] = ActivityBatchItemResult.failed(i, error);
+                continue;
+            }
+            toInsert.add(toActivity(activityRequests.get(i), now));
+            insertIndexes.add(i);
+        }
+        if (toInsert.isEmpty()) {
+            return new ActivityBatchResponse(0, results.length, Arrays.asList(results));
+        }
+
+        // Bulk requests are imports, which must not hold up activities users are waiting on
+        List<OutboxEvent> outboxEvents = outboxEventRepository.insert(toInsert.stream()
+                .map(activity -> toOutboxEvent(activity, EventLane.BACKFILL))
+                .toList());
+        Map<Integer, String> writeErrors = activityRepository.bulkInsert(toInsert);
+        List<OutboxEvent> orphaned = new ArrayList<>();
+        List<OutboxEvent> savedEvents = new ArrayList<>(toInsert.size());
+        List<Activity> saved = new ArrayList<>(toInsert.size());
+        for (int j = 0; j < toInsert.size(); j++) {
+            int index = insertIndexes.get(j);
+            String writeError = writeErrors.get(j);
+            if (writeError != null) {
+                orphaned.add(outboxEvents.get(j));
+                results[index] = ActivityBatchItemResult.failed(index, writeError);
+            } else {
+                savedEvents.add(outboxEvents.get(j));
+                saved.add(toInsert.get(j));
+                results[index] = ActivityBatchItemResult.created(index, new ActivityResponse(toInsert.get(j)));
+            }
+        }
+
+        discardOutboxEvents(orphaned);
+        activityEventPublisher.publishAll(savedEvents, saved);
+        activityRollupService.record(saved);
+        return new ActivityBatchResponse(saved.size(), results.length - saved.size(), Arrays.asList(results));
+    }
+
+    // Best effort only: the relay also drops entries whose activity never got stored
+    private void discardOutboxEvents(List<OutboxEvent> outboxEvents) {
+        if (outboxEvents.isEmpty()) {
+            return;
+        }
+        try {
+            outboxEventRepository.deleteAll(outboxEvents);
+        } catch (Exception e) {
+            log.warn("Failed to discard {} outbox entries: {}", outboxEvents.size(), e.getMessage());
+        }
+    }
+
+    static OutboxEvent toOutboxEvent(Activity activity) {
+        return toOutboxEvent(activity, null);
+    }
+
+    static OutboxEvent toOutboxEvent(Activity activity, EventLane lane) {
+        return OutboxEvent.builder()
+                .activityId(activity.getId())
+                .createdAt(activity.getCreatedAt())
+                .lane(lane)
+                .build();
+    }
+
+    private String validate(ActivityRequest activityRequest) {
+        if (activityRequest == null) {
+            return "activity is required";
+        }
+        if (activityRequest.getUserId() == null || activityRequest.getUserId().isBlank()) {
+            return "userId is required";
+        }
+        if (activityRequest.getActivityType() == null) {
+            return "activityType is required";
+        }
+        if (activityRequest.getDuration() == null || activityRequest.getDuration() <= 0) {
+            return "duration must be a positive number of minutes";
+        }
+        if (activityRequest.getCaloriesBurned() != null && activityRequest.getCaloriesBurned() < 0) {
+            return "caloriesBurned must not be negative";
+        }
+        return null;
+    }
+
+    // The id is assigned up front so the outbox entry can reference it; a pre-assigned id hides
+    // the entity from @CreatedDate auditing, so the timestamps are filled in here as well
+    static Activity toActivity(ActivityRequest activityRequest, LocalDateTime now) {
+        return Activity.builder()
+                .id(new ObjectId().toHexString())
                 .userId(activityRequest.getUserId())
                 .type(activityRequest.getActivityType())
                 .duration(activityRequest.getDuration())
                 .caloriesBurned(activityRequest.getCaloriesBurned())
                 .startTime(activityRequest.getStartTime())
                 .additionalMetrics(activityRequest.getAdditionalMetrics())
+                .createdAt(now)
+                .updatedAt(now)
                 .build();
-
-        Activity savedActivity = activityRepository.save(activity);
-        try{
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, savedActivity);
-        }catch (Exception e){
-            log.error("Failed to send message to RabbitMQ: {}", e.getMessage());
-        }
-        return new ActivityResponse(savedActivity);
     }
 
 
-    public List<ActivityResponse> getUserActivities(String userId) {
-        if(!userService.validate(userId)){
+    public boolean isValidUser(String userId) {
+        return userValidationCache.isValid(userId);
+    }
+
+    public ActivityPage getUserActivities(String userId, ActivityFilter filter, String cursor, Integer limit) {
+        if(!isValidUser(userId)){
             return null;
         }
-        List<Activity> activities = activityRepository.findByUserId(userId);
-        return activities.stream()
+        int pageSize = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+        // Fetch one extra row to learn whether another page exists without a count query
+        List<Activity> activities = activityRepository.findPageByUserId(userId, filter, ActivityCursor.decode(cursor), pageSize + 1);
+        String nextCursor = null;
+        if (activities.size() > pageSize) {
+            activities = activities.subList(0, pageSize);
+            nextCursor = ActivityCursor.of(activities.get(pageSize - 1)).encode();
+        }
+        List<ActivityResponse> content = activities.stream()
                 .map(ActivityResponse::new)
                 .collect(Collectors.toList());
+        return new ActivityPage(content, nextCursor);
+    }
+
+    /**
+     * Writes the user's whole history as newline-delimited JSON while iterating the Mongo cursor,
+     * so memory use does not depend on how many activities the user has.
+     */
+    public void writeUserActivities(String userId, ActivityFilter filter, OutputStream out) throws IOException {
+        try (Stream<Activity> activities = activityRepository.streamByUserId(userId, filter)) {
+            Iterator<Activity> iterator = activities.iterator();
+            int written = 0;
+            while (iterator.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(new ActivityResponse(iterator.next())));
+                out.write('\n');
+                if (++written % defaultPageSize == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        }
+    }
+
+    public List<ActivityRollup> getUserStats(String userId, RollupGranularity granularity, LocalDate from, LocalDate to) {
+        if(!isValidUser(userId)){
+            return null;
+        }
+        return activityRollupService.getRollups(userId, granularity, from, to);
     }
 
     public ActivityResponse getActivityById(String activityId) {
@@ -0,0 +1,19 @@
+package org.choubi.activityservice.service;
+
+/**
+ * The Idempotency-Key cannot be honoured: either the first request with it is still running, or
+ * the key was already used for a different request.
+ */
+public class IdempotencyKeyConflictException extends RuntimeException {
+
+    private final boolean inProgress;
+
+    public IdempotencyKeyConflictException(String message, boolean inProgress) {
+        super(message);
+        this.inProgress = inProgress;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+}
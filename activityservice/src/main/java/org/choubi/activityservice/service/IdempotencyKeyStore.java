@@ -0,0 +1,138 @@
+package org.choubi.activityservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.dto.ActivityRequest;
+import org.choubi.activityservice.dto.ActivityResponse;
+import org.choubi.activityservice.model.IdempotencyRecord;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.IdempotencyRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key bookkeeping for {@link ActivityService#trackActivity(ActivityRequest, String)}.
+ * Keys are claimed with an insert into a TTL collection, so concurrent retries on different
+ * instances cannot both write. Completed keys are also kept in a small in-memory LRU, which
+ * answers the common case of a retry arriving a few seconds later without a Mongo round trip.
+ */
+@Slf4j
+@Service
+public class IdempotencyKeyStore {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ActivityRepository activityRepository;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Completed> completed;
+    private final Duration staleClaim;
+
+    public IdempotencyKeyStore(IdempotencyRecordRepository idempotencyRecordRepository,
+                               ActivityRepository activityRepository,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${activity.idempotency.cacheSize:10000}") long cacheSize,
+                               @Value("${activity.idempotency.cacheTtlMinutes:60}") long cacheTtlMinutes,
+                               @Value("${activity.idempotency.staleClaimSeconds:60}") long staleClaimSeconds) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.activityRepository = activityRepository;
+        this.objectMapper = objectMapper;
+        this.staleClaim = Duration.ofSeconds(staleClaimSeconds);
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "idempotencyKeys");
+    }
+
+    /**
+     * Claims the key for a new activity with the given id. Returns the original response when the
+     * key was already used for the same request, and nothing when the caller should go ahead.
+     */
+    public Optional<ActivityResponse> claim(String userId, String key, ActivityRequest request, String activityId) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = IdempotencyRecord.idOf(userId, key);
+        String requestHash = hash(request);
+
+        Completed hit = completed.getIfPresent(id);
+        if (hit != null) {
+            checkSameRequest(hit.requestHash(), requestHash);
+            return Optional.of(hit.response());
+        }
+        try {
+            idempotencyRecordRepository.insert(new IdempotencyRecord(id, requestHash, activityId, LocalDateTime.now()));
+            return Optional.empty();
+        } catch (DuplicateKeyException e) {
+            return replay(id, requestHash, () -> claim(userId, key, request, activityId));
+        }
+    }
+
+    public void complete(String userId, String key, ActivityRequest request, ActivityResponse response) {
+        completed.put(IdempotencyRecord.idOf(userId, key), new Completed(hash(request), response));
+    }
+
+    // The activity was not stored, so a retry must be allowed to try again
+    public void release(String userId, String key, String activityId) {
+        try {
+            idempotencyRecordRepository.deleteByIdAndActivityId(IdempotencyRecord.idOf(userId, key), activityId);
+        } catch (Exception e) {
+            log.warn("Failed to release idempotency key of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private Optional<ActivityResponse> replay(String id, String requestHash, Supplier<Optional<ActivityResponse>> reclaim) {
+        IdempotencyRecord existing = idempotencyRecordRepository.findById(id).orElse(null);
+        if (existing == null) {
+            // The claim expired between the failed insert and this read
+            return reclaim.get();
+        }
+        checkSameRequest(existing.getRequestHash(), requestHash);
+        Optional<ActivityResponse> original = activityRepository.findById(existing.getActivityId()).map(ActivityResponse::new);
+        if (original.isPresent()) {
+            completed.put(id, new Completed(existing.getRequestHash(), original.get()));
+            return original;
+        }
+        // No activity yet: the first request is still running, or died before releasing its claim
+        if (existing.getCreatedAt() != null && existing.getCreatedAt().isBefore(LocalDateTime.now().minus(staleClaim))
+                && idempotencyRecordRepository.deleteByIdAndActivityId(id, existing.getActivityId()) > 0) {
+            return reclaim.get();
+        }
+        throw new IdempotencyKeyConflictException("A request with this Idempotency-Key is still being processed", true);
+    }
+
+    private static void checkSameRequest(String expected, String actual) {
+        if (!expected.equals(actual)) {
+            throw new IdempotencyKeyConflictException("Idempotency-Key was already used for a different request", false);
+        }
+    }
+
+    private String hash(ActivityRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot hash activity request", e);
+        }
+    }
+
+    private record Completed(String requestHash, ActivityResponse response) {
+    }
+}
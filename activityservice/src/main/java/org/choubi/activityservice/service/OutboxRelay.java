@@ -0,0 +1,156 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.model.OutboxRelayState;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Safety net behind {@link ActivityEventPublisher}: sends the outbox entries that are still
+ * unpublished {@code relayDelayMs} after they were written, because the publisher gave up on them
+ * or the instance holding them stopped. Entries are marked published only after the broker
+ * confirmed them, so a crash or nack means they are sent again (at-least-once delivery).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxRelay {
+
+    private static final String RELAY_ID = "activity-events";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ActivityRepository activityRepository;
+    private final ActivityEventPublisher activityEventPublisher;
+    private final MongoTemplate mongoTemplate;
+    private final String owner = UUID.randomUUID().toString();
+
+    @Value("${activity.outbox.batchSize:100}")
+    private int batchSize;
+    @Value("${activity.outbox.relayDelayMs:30000}")
+    private long relayDelayMs;
+    // Long enough for the publisher to go through all of its attempts
+    @Value("${activity.outbox.confirmTimeoutMs:20000}")
+    private long confirmTimeoutMs;
+    @Value("${activity.outbox.leaseMs:30000}")
+    private long leaseMs;
+    @Value("${activity.outbox.orphanGraceMs:60000}")
+    private long orphanGraceMs;
+
+    @Scheduled(fixedDelayString = "${activity.outbox.pollIntervalMs:1000}")
+    public void relay() {
+        try {
+            if (!acquireLease()) {
+                return;
+            }
+            // A batch with entries still waiting for their activity is not full, so the run ends
+            // there instead of reading the same entries again
+            int handled;
+            do {
+                handled = relayBatch();
+            } while (handled > 0 && handled == batchSize && acquireLease());
+        } catch (Exception e) {
+            log.error("Outbox relay run failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /** Relays the oldest due entries; returns how many were published or dropped. */
+    int relayBatch() {
+        Date cutoff = Date.from(Instant.now().minusMillis(relayDelayMs));
+        List<OutboxEvent> events = outboxEventRepository.findByPublishedAtIsNullAndIdLessThanOrderByIdAsc(
+                ObjectId.getSmallestWithDate(cutoff).toHexString(), Limit.of(batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        Map<String, Activity> activities = activityRepository
+                .findAllById(events.stream().map(OutboxEvent::getActivityId).toList())
+                .stream()
+                .collect(Collectors.toMap(Activity::getId, Function.identity()));
+
+        List<OutboxEvent> ready = new ArrayList<>(events.size());
+        List<String> orphans = new ArrayList<>();
+        LocalDateTime orphanCutoff = LocalDateTime.now().minus(Duration.ofMillis(orphanGraceMs));
+        for (OutboxEvent event : events) {
+            if (activities.containsKey(event.getActivityId())) {
+                ready.add(event);
+            } else if (event.getCreatedAt() == null || event.getCreatedAt().isBefore(orphanCutoff)) {
+                // The activity write that should have followed this entry never happened
+                orphans.add(event.getId());
+            }
+        }
+        if (!orphans.isEmpty()) {
+            log.warn("Dropping {} outbox entries without a stored activity", orphans.size());
+            outboxEventRepository.deleteAllById(orphans);
+        }
+        if (ready.isEmpty()) {
+            return orphans.size();
+        }
+
+        // The publisher marks each entry published once the broker confirmed it
+        List<CompletableFuture<Void>> confirmations = ready.stream()
+                .map(event -> activityEventPublisher.publish(event, activities.get(event.getActivityId())))
+                .toList();
+        try {
+            CompletableFuture.allOf(confirmations.toArray(CompletableFuture[]::new))
+                    .get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for broker confirms", e);
+        } catch (ExecutionException | TimeoutException e) {
+            // Stop this run; what was not confirmed is picked up again on the next one
+            throw new IllegalStateException("Not all relayed activity events were confirmed", e);
+        }
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(RELAY_ID).and("owner").is(owner)),
+                new Update()
+                        .set("lastPublishedAt", LocalDateTime.now())
+                        .inc("publishedCount", ready.size()),
+                OutboxRelayState.class);
+        log.debug("Relayed {} activity events", ready.size());
+        return ready.size() + orphans.size();
+    }
+
+    // Only one instance relays at a time; a crashed holder's lease simply runs out
+    private boolean acquireLease() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("id").is(RELAY_ID)
+                .orOperator(Criteria.where("leaseUntil").lt(now), Criteria.where("owner").is(owner)));
+        Update update = new Update()
+                .set("owner", owner)
+                .set("leaseUntil", now.plus(Duration.ofMillis(leaseMs)));
+        try {
+            return mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), OutboxRelayState.class) != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityPage;
+import org.choubi.activityservice.dto.ActivityRequest;
+import org.choubi.activityservice.dto.ActivityResponse;
+import org.choubi.activityservice.microRequestInterface.ReactiveUserServiceInterface;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.model.RollupGranularity;
+import org.choubi.activityservice.repository.ReactiveActivityRepository;
+import org.choubi.activityservice.repository.ReactiveOutboxEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link ActivityService} for the "reactive" profile. Reads and the outbox/activity writes go
+ * through reactive Mongo and user validation through {@link ReactiveUserServiceInterface}, so no
+ * request holds a thread while waiting. Events go to {@link ActivityEventPublisher}, which
+ * never blocks the caller. Rollups are updated with the blocking {@link ActivityRollupService} on the
+ * bounded elastic scheduler, after the response is no longer waiting on them.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveActivityService {
+
+    private final ReactiveActivityRepository activityRepository;
+    private final ReactiveOutboxEventRepository outboxEventRepository;
+    private final ReactiveUserServiceInterface userService;
+    private final UserValidationCache userValidationCache;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityEventPublisher activityEventPublisher;
+
+    @Value("${activity.page.defaultSize:50}")
+    private int defaultPageSize;
+    @Value("${activity.page.maxSize:200}")
+    private int maxPageSize;
+
+    public Mono<ActivityResponse> trackActivity(ActivityRequest activityRequest) {
+        Activity activity = ActivityService.toActivity(activityRequest, LocalDateTime.now());
+        return outboxEventRepository.insert(ActivityService.toOutboxEvent(activity))
+                .flatMap(outboxEvent -> activityRepository.insert(activity)
+                        .onErrorResume(e -> discardOutboxEvent(outboxEvent).then(Mono.error(e)))
+                        .doOnNext(saved -> activityEventPublisher.publish(outboxEvent, saved)))
+                .doOnNext(this::recordRollup)
+                .map(ActivityResponse::new);
+    }
+
+    public Mono<Boolean> isValidUser(String userId) {
+        return userValidationCache.isValid(userId, userService::validate);
+    }
+
+    /** Empty when the user is unknown. */
+    public Mono<ActivityPage> getUserActivities(String userId, ActivityFilter filter, String cursor, Integer limit) {
+        ActivityCursor after = ActivityCursor.decode(cursor);
+        int pageSize = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+        return isValidUser(userId)
+                .filter(Boolean::booleanValue)
+                // Fetch one extra row to learn whether another page exists without a count query
+                .flatMap(valid -> activityRepository.findPageByUserId(userId, filter, after, pageSize + 1).collectList())
+                .map(activities -> {
+                    String nextCursor = null;
+                    if (activities.size() > pageSize) {
+                        activities = activities.subList(0, pageSize);
+                        nextCursor = ActivityCursor.of(activities.get(pageSize - 1)).encode();
+                    }
+                    return new ActivityPage(activities.stream().map(ActivityResponse::new).toList(), nextCursor);
+                });
+    }
+
+    // Demand from the response drives the Mongo cursor, so a slow client slows the reads down
+    public Flux<ActivityResponse> streamUserActivities(String userId, ActivityFilter filter) {
+        return activityRepository.streamByUserId(userId, filter).map(ActivityResponse::new);
+    }
+
+    /** Empty when the user is unknown. */
+    public Mono<List<ActivityRollup>> getUserStats(String userId, RollupGranularity granularity, LocalDate from, LocalDate to) {
+        return isValidUser(userId)
+                .filter(Boolean::booleanValue)
+                .flatMap(valid -> Mono.fromCallable(() -> activityRollupService.getRollups(userId, granularity, from, to))
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    public Mono<ActivityResponse> getActivityById(String activityId) {
+        return activityRepository.findById(activityId).map(ActivityResponse::new);
+    }
+
+    private void recordRollup(Activity activity) {
+        Mono.fromRunnable(() -> activityRollupService.record(List.of(activity)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    // Best effort only: the relay also drops entries whose activity never got stored
+    private Mono<Void> discardOutboxEvent(OutboxEvent outboxEvent) {
+        return outboxEventRepository.delete(outboxEvent)
+                .onErrorResume(e -> {
+                    log.warn("Failed to discard outbox entry {}: {}", outboxEvent.getId(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+}
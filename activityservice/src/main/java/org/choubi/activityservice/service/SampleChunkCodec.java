@@ -0,0 +1,141 @@
+package org.choubi.activityservice.service;
+
+import org.choubi.activityservice.model.SampleEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary layout of a sample chunk: the sample count, then every offset as the difference to the
+ * previous one, then every value likewise, all as zigzag varints. Sensor samples change slowly,
+ * so most deltas fit in one byte, and keeping offsets and values in separate runs lets deflate
+ * collapse the constant one-second gaps of a 1 Hz stream.
+ */
+final class SampleChunkCodec {
+
+    record Samples(long[] offsets, long[] values) {
+        int size() {
+            return offsets.length;
+        }
+    }
+
+    record Encoded(SampleEncoding encoding, byte[] data) {
+    }
+
+    private SampleChunkCodec() {
+    }
+
+    /** Encodes samples {@code from} (inclusive) to {@code to} (exclusive); deflate is kept only when it pays off. */
+    static Encoded encode(long[] offsets, long[] values, int from, int to, boolean compress) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((to - from) * 2 + 8);
+        writeVarint(out, to - from);
+        writeDeltas(out, offsets, from, to);
+        writeDeltas(out, values, from, to);
+        byte[] raw = out.toByteArray();
+        if (compress) {
+            byte[] deflated = deflate(raw);
+            if (deflated.length < raw.length) {
+                return new Encoded(SampleEncoding.DELTA_VARINT_DEFLATE, deflated);
+            }
+        }
+        return new Encoded(SampleEncoding.DELTA_VARINT, raw);
+    }
+
+    static Samples decode(SampleEncoding encoding, byte[] data) {
+        byte[] raw = encoding == SampleEncoding.DELTA_VARINT_DEFLATE ? inflate(data) : data;
+        int[] position = {0};
+        int count = (int) readVarint(raw, position);
+        long[] offsets = readDeltas(raw, position, count);
+        long[] values = readDeltas(raw, position, count);
+        return new Samples(offsets, values);
+    }
+
+    private static void writeDeltas(ByteArrayOutputStream out, long[] series, int from, int to) {
+        long previous = 0;
+        for (int i = from; i < to; i++) {
+            long delta = series[i] - previous;
+            writeVarint(out, (delta << 1) ^ (delta >> 63));
+            previous = series[i];
+        }
+    }
+
+    private static long[] readDeltas(byte[] raw, int[] position, int count) {
+        long[] series = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = readVarint(raw, position);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            series[i] = previous;
+        }
+        return series;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] raw, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= raw.length) {
+                throw new IllegalStateException("Truncated sample chunk");
+            }
+            byte b = raw[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in sample chunk");
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[raw.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[Math.max(64, data.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = inflater.inflate(buffer, length, buffer.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated sample chunk");
+                }
+                length += read;
+            }
+            return Arrays.copyOf(buffer, length);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt sample chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.choubi.activityservice.dto.SampleStream;
+import org.choubi.activityservice.dto.SampleStreamSummary;
+import org.choubi.activityservice.model.SampleChunk;
+import org.choubi.activityservice.model.SampleStreamType;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.SampleChunkRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores per-second sensor samples of an activity outside the activity document, as chunks of
+ * {@code activity.samples.chunkSize} samples. Methods return null when the activity does not
+ * exist or belongs to another user.
+ */
+@Service
+@RequiredArgsConstructor
+public class SampleStreamService {
+
+    private final SampleChunkRepository sampleChunkRepository;
+    private final ActivityRepository activityRepository;
+
+    @Value("${activity.samples.chunkSize:600}")
+    private int chunkSize;
+    @Value("${activity.samples.compress:true}")
+    private boolean compress;
+    @Value("${activity.samples.maxSamples:86400}")
+    private int maxSamples;
+
+    /**
+     * Replaces the stream. Chunk ids are deterministic, so the new chunks overwrite the old ones
+     * in place and only the chunks past the new end are deleted afterwards.
+     */
+    public SampleStreamSummary store(String userId, String activityId, SampleStream stream) {
+        validate(stream);
+        if (!activityRepository.existsByIdAndUserId(activityId, userId)) {
+            return null;
+        }
+        SampleStreamType type = stream.getType();
+        long[] offsets = stream.getOffsets();
+        long[] values = new long[offsets.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = type.toFixed(stream.getValues()[i]);
+        }
+
+        List<SampleChunk> chunks = new ArrayList<>();
+        for (int from = 0, seq = 0; from < offsets.length; from += chunkSize, seq++) {
+            int to = Math.min(from + chunkSize, offsets.length);
+            SampleChunkCodec.Encoded encoded = SampleChunkCodec.encode(offsets, values, from, to, compress);
+            chunks.add(SampleChunk.builder()
+                    .id(SampleChunk.idOf(activityId, type, seq))
+                    .activityId(activityId)
+                    .type(type)
+                    .seq(seq)
+                    .startOffset(offsets[from])
+                    .endOffset(offsets[to - 1])
+                    .count(to - from)
+                    .encoding(encoded.encoding())
+                    .size(encoded.data().length)
+                    .data(encoded.data())
+                    .build());
+        }
+        sampleChunkRepository.saveAll(chunks);
+        sampleChunkRepository.deleteFromSeq(activityId, type, chunks.size());
+        return summarize(type, chunks);
+    }
+
+    /**
+     * Samples with offsets in {@code [from, to]}. With {@code maxPoints}, the range is cut into at
+     * most that many equal time buckets and each bucket is reported as the mean of its samples at
+     * the bucket start, so streams of the same activity downsampled alike stay aligned.
+     */
+    public SampleStream read(String userId, String activityId, SampleStreamType type, Long from, Long to, Integer maxPoints) {
+        long start = from != null ? from : 0;
+        long end = to != null ? to : Long.MAX_VALUE;
+        if (start < 0 || start > end || (maxPoints != null && maxPoints < 1)) {
+            throw new IllegalArgumentException("Invalid sample range");
+        }
+        if (!activityRepository.existsByIdAndUserId(activityId, userId)) {
+            return null;
+        }
+
+        List<SampleChunkCodec.Samples> decoded = new ArrayList<>();
+        int total = 0;
+        for (SampleChunk chunk : sampleChunkRepository.findRange(activityId, type, start, end)) {
+            SampleChunkCodec.Samples samples = SampleChunkCodec.decode(chunk.getEncoding(), chunk.getData());
+            decoded.add(samples);
+            total += samples.size();
+        }
+        long[] offsets = new long[total];
+        long[] values = new long[total];
+        int n = 0;
+        for (SampleChunkCodec.Samples samples : decoded) {
+            for (int i = 0; i < samples.size(); i++) {
+                if (samples.offsets()[i] >= start && samples.offsets()[i] <= end) {
+                    offsets[n] = samples.offsets()[i];
+                    values[n] = samples.values()[i];
+                    n++;
+                }
+            }
+        }
+
+        if (maxPoints != null && n > maxPoints) {
+            return downsample(type, offsets, values, n, maxPoints);
+        }
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            scaled[i] = type.fromFixed(values[i]);
+        }
+        return new SampleStream(type, Arrays.copyOf(offsets, n), scaled);
+    }
+
+    public List<SampleStreamSummary> list(String userId, String activityId) {
+        if (!activityRepository.existsByIdAndUserId(activityId, userId)) {
+            return null;
+        }
+        Map<SampleStreamType, List<SampleChunk>> byType = new LinkedHashMap<>();
+        for (SampleChunk chunk : sampleChunkRepository.findHeadersByActivityId(activityId)) {
+            byType.computeIfAbsent(chunk.getType(), t -> new ArrayList<>()).add(chunk);
+        }
+        List<SampleStreamSummary> summaries = new ArrayList<>();
+        byType.forEach((type, chunks) -> summaries.add(summarize(type, chunks)));
+        return summaries;
+    }
+
+    private void validate(SampleStream stream) {
+        if (stream == null || stream.getType() == null || stream.getOffsets() == null || stream.getValues() == null) {
+            throw new IllegalArgumentException("type, offsets and values are required");
+        }
+        long[] offsets = stream.getOffsets();
+        if (offsets.length != stream.getValues().length) {
+            throw new IllegalArgumentException("offsets and values differ in length");
+        }
+        if (offsets.length == 0 || offsets.length > maxSamples) {
+            throw new IllegalArgumentException("A stream needs between 1 and " + maxSamples + " samples");
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < 0 || (i > 0 && offsets[i] <= offsets[i - 1])) {
+                throw new IllegalArgumentException("offsets must be non-negative and strictly increasing");
+            }
+            if (!Double.isFinite(stream.getValues()[i])) {
+                throw new IllegalArgumentException("values must be finite numbers");
+            }
+        }
+    }
+
+    private static SampleStream downsample(SampleStreamType type, long[] offsets, long[] values, int n, int maxPoints) {
+        long first = offsets[0];
+        long width = Math.max(1, (offsets[n - 1] - first) / maxPoints + 1);
+        long[] bucketOffsets = new long[maxPoints];
+        double[] bucketValues = new double[maxPoints];
+        int buckets = 0;
+        for (int i = 0; i < n; ) {
+            long bucket = (offsets[i] - first) / width;
+            long sum = 0;
+            int count = 0;
+            for (; i < n && (offsets[i] - first) / width == bucket; i++) {
+                sum += values[i];
+                count++;
+            }
+            bucketOffsets[buckets] = first + bucket * width;
+            bucketValues[buckets] = type.fromFixed(Math.round((double) sum / count));
+            buckets++;
+        }
+        return new SampleStream(type, Arrays.copyOf(bucketOffsets, buckets), Arrays.copyOf(bucketValues, buckets));
+    }
+
+    private static SampleStreamSummary summarize(SampleStreamType type, List<SampleChunk> chunks) {
+        long samples = 0;
+        long storedBytes = 0;
+        for (SampleChunk chunk : chunks) {
+            samples += chunk.getCount();
+            storedBytes += chunk.getSize();
+        }
+        return new SampleStreamSummary(type, samples, chunks.get(0).getStartOffset(),
+                chunks.get(chunks.size() - 1).getEndOffset(), chunks.size(), storedBytes);
+    }
+}
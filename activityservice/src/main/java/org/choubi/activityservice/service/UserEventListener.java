@@ -0,0 +1,22 @@
+package org.choubi.activityservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.dto.UserChangedEvent;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserEventListener {
+
+    private final UserValidationCache userValidationCache;
+
+    @RabbitListener(queues = "#{userEventsQueue.name}")
+    public void handleUserChanged(UserChangedEvent event) {
+        if (event.getKeycloakId() != null) {
+            userValidationCache.invalidate(event.getKeycloakId());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.choubi.activityservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.activityservice.microRequestInterface.UserServiceInterface;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Local, bounded cache in front of {@link UserServiceInterface#validate}. Unknown users are cached
+ * too, for a shorter time, and user-service broadcasts a change event when a user registers so
+ * that such an entry does not outlive the registration. Failed lookups are never cached.
+ */
+@Slf4j
+@Service
+public class UserValidationCache {
+
+    private final UserServiceInterface userService;
+    private final Cache<String, Boolean> cache;
+
+    @Autowired
+    public UserValidationCache(UserServiceInterface userService,
+                               MeterRegistry meterRegistry,
+                               @Value("${activity.userCache.maxSize:10000}") long maxSize,
+                               @Value("${activity.userCache.ttlSeconds:300}") long ttlSeconds,
+                               @Value("${activity.userCache.negativeTtlSeconds:30}") long negativeTtlSeconds) {
+        this(userService, meterRegistry, maxSize, ttlSeconds, negativeTtlSeconds, Ticker.systemTicker());
+    }
+
+    UserValidationCache(UserServiceInterface userService, MeterRegistry meterRegistry,
+                        long maxSize, long ttlSeconds, long negativeTtlSeconds, Ticker ticker) {
+        this.userService = userService;
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        Duration negativeTtl = Duration.ofSeconds(negativeTtlSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.<String, Boolean>writing((userId, valid) -> valid ? ttl : negativeTtl))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userValidation");
+    }
+
+    public boolean isValid(String userId) {
+        if (userId == null) {
+            return false;
+        }
+        return cache.get(userId, id -> Boolean.TRUE.equals(userService.validate(id)));
+    }
+
+    /** Non-blocking variant for the reactive mode: a miss is resolved through {@code lookup} instead of Feign. */
+    public Mono<Boolean> isValid(String userId, Function<String, Mono<Boolean>> lookup) {
+        if (userId == null) {
+            return Mono.just(false);
+        }
+        Boolean cached = cache.getIfPresent(userId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return lookup.apply(userId)
+                .map(Boolean.TRUE::equals)
+                .defaultIfEmpty(false)
+                .doOnNext(valid -> cache.put(userId, valid));
+    }
+
+    public void invalidate(String userId) {
+        log.debug("Invalidating cached validation for user {}", userId);
+        cache.invalidate(userId);
+    }
+}
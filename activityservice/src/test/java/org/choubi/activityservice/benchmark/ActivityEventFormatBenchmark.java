@@ -0,0 +1,107 @@
+package org.choubi.activityservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.choubi.activityservice.config.ActivityEventMessageConverter;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.choubi.activityservice.model.ActivityType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON activity event with the binary one from {@link ActivityEventMessageConverter}:
+ * time to build the AMQP message and to read it back. Body sizes are printed during setup.
+ * <p>
+ * Run with:
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt &&
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ActivityEventFormatBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivityEventFormatBenchmark {
+
+    // wearable: device sync with every metric and an unknown one; manual: what the web form sends
+    @Param({"wearable", "manual"})
+    public String payload;
+
+    private final Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+    private final ActivityEventMessageConverter binary = new ActivityEventMessageConverter(new ObjectMapper());
+
+    private Activity activity;
+    private Message jsonMessage;
+    private Message binaryMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LocalDateTime start = LocalDateTime.of(2025, 6, 14, 7, 30, 12);
+        ActivityMetrics metrics = new ActivityMetrics();
+        if (payload.equals("wearable")) {
+            metrics.put(ActivityMetrics.DISTANCE, 10.4);
+            metrics.put(ActivityMetrics.PACE, 5.45);
+            metrics.put(ActivityMetrics.ELEVATION_GAIN, 86.0);
+            metrics.put(ActivityMetrics.AVG_HEART_RATE, 152);
+            metrics.put(ActivityMetrics.MAX_HEART_RATE, 178);
+            metrics.put(ActivityMetrics.CADENCE, 172);
+            metrics.put("device", "watch");
+        } else {
+            metrics.put(ActivityMetrics.DISTANCE, 5.2);
+        }
+        activity = Activity.builder()
+                .id("6650a1f2c3d4e5f601234567")
+                .userId("3f1c9a52-7b1e-4c8d-9a0e-2d5b6f7a8c91")
+                .type(ActivityType.RUNNING)
+                .duration(57)
+                .caloriesBurned(640)
+                .startTime(start)
+                .additionalMetrics(metrics)
+                .createdAt(start.plusMinutes(58).plusNanos(123_456_789))
+                .updatedAt(start.plusMinutes(58).plusNanos(123_456_789))
+                .build();
+        jsonMessage = json.toMessage(activity, new MessageProperties());
+        binaryMessage = binary.toMessage(activity, new MessageProperties());
+        if (!activity.equals(json.fromMessage(jsonMessage)) || !activity.equals(binary.fromMessage(binaryMessage))) {
+            throw new IllegalStateException("Round trip changed the activity");
+        }
+        System.out.printf("%n[%s] body bytes: json=%d binary=%d%n", payload, jsonMessage.getBody().length, binaryMessage.getBody().length);
+    }
+
+    @Benchmark
+    public Message jsonWrite() {
+        return json.toMessage(activity, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object jsonRead() {
+        return json.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public Message binaryWrite() {
+        return binary.toMessage(activity, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object binaryRead() {
+        return binary.fromMessage(binaryMessage);
+    }
+}
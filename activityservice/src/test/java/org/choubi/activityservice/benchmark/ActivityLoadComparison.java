@@ -0,0 +1,124 @@
+package org.choubi.activityservice.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load generator used to compare the servlet and the "reactive" mode of a running
+ * activity-service. Each worker sends one request after the other: 20% {@code POST /activities},
+ * 80% first pages of {@code GET /activities}. Throughput and latency percentiles are printed at
+ * the end. Start the service once per mode with the same CPU and memory limits, then run:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:$(cat target/cp.txt) org.choubi.activityservice.benchmark.ActivityLoadComparison \
+ *     http://localhost:8082 &lt;existing-user-id&gt; 200 60
+ * </pre>
+ * Arguments: base URL, user id, concurrent workers, seconds to run (after a 10 second warmup).
+ */
+public class ActivityLoadComparison {
+
+    private static final Duration WARMUP = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8082";
+        String userId = args.length > 1 ? args[1] : "load-test-user";
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Duration duration = Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 60);
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors())))
+                .build();
+        System.out.printf("Warming up for %ds%n", WARMUP.toSeconds());
+        run(client, baseUrl, userId, concurrency, WARMUP);
+        System.out.printf("Measuring %d workers for %ds%n", concurrency, duration.toSeconds());
+        Result result = run(client, baseUrl, userId, concurrency, duration);
+
+        long[] latencies = result.latencies;
+        Arrays.sort(latencies);
+        System.out.printf("requests=%d errors=%d throughput=%.1f req/s%n",
+                latencies.length, result.errors, latencies.length / (double) duration.toSeconds());
+        System.out.printf("p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                latencies.length > 0 ? latencies[latencies.length - 1] / 1e6 : 0);
+        System.exit(0);
+    }
+
+    private static Result run(HttpClient client, String baseUrl, String userId, int concurrency, Duration duration) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(workers.submit(() -> worker(client, baseUrl, userId, deadline)));
+        }
+        long[] latencies = new long[0];
+        long errors = 0;
+        for (Future<Result> future : futures) {
+            Result result = future.get();
+            long[] merged = Arrays.copyOf(latencies, latencies.length + result.latencies.length);
+            System.arraycopy(result.latencies, 0, merged, latencies.length, result.latencies.length);
+            latencies = merged;
+            errors += result.errors;
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        return new Result(latencies, errors);
+    }
+
+    private static Result worker(HttpClient client, String baseUrl, String userId, long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        long errors = 0;
+        while (System.nanoTime() < deadline) {
+            HttpRequest request = ThreadLocalRandom.current().nextInt(10) < 2
+                    ? HttpRequest.newBuilder(URI.create(baseUrl + "/activities"))
+                            .header("Content-Type", "application/json")
+                            .header("X-USER-ID", userId)
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"activityType\":\"RUNNING\",\"duration\":30,\"caloriesBurned\":300,"
+                                            + "\"additionalMetrics\":{\"distance\":5.2,\"avgHeartRate\":148}}"))
+                            .build()
+                    : HttpRequest.newBuilder(URI.create(baseUrl + "/activities?limit=20"))
+                            .header("X-USER-ID", userId)
+                            .GET()
+                            .build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 400) {
+                    errors++;
+                    continue;
+                }
+            } catch (Exception e) {
+                errors++;
+                continue;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return new Result(Arrays.copyOf(latencies, count), errors);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+}
@@ -0,0 +1,126 @@
+package org.choubi.activityservice.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.choubi.activityservice.config.ActivityMetricsConverters;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old {@code Map<String,Object>} metrics with {@link ActivityMetrics} on the JSON
+ * (request/response) and BSON (Mongo) paths. BSON sizes are printed during setup.
+ * <p>
+ * Run with:
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt &&
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ActivityMetricsBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivityMetricsBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {
+    };
+
+    // wearable: numeric payload from a device sync; form: what the web form sends (numbers as strings)
+    @Param({"wearable", "form"})
+    public String payload;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DocumentCodec codec = new DocumentCodec();
+    private final ActivityMetricsConverters.MetricsWriter bsonWriter = new ActivityMetricsConverters.MetricsWriter();
+    private final ActivityMetricsConverters.MetricsReader bsonReader = new ActivityMetricsConverters.MetricsReader();
+
+    private String json;
+    private Map<String, Object> legacy;
+    private ActivityMetrics typed;
+    private byte[] legacyBson;
+    private byte[] typedBson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json = payload.equals("wearable")
+                ? "{\"distance\":10.4,\"avgHeartRate\":152,\"maxHeartRate\":178,\"pace\":5.45,\"elevationGain\":86.0,\"cadence\":172,\"device\":\"watch\"}"
+                : "{\"heartRate\":\"148\",\"distance\":\"5.2\",\"elevationGain\":\"40\"}";
+        legacy = mapper.readValue(json, MAP);
+        typed = mapper.readValue(json, ActivityMetrics.class);
+        legacyBson = encode(new Document(legacy));
+        typedBson = encode(bsonWriter.convert(typed));
+        System.out.printf("%n[%s] BSON bytes: legacy=%d typed=%d%n", payload, legacyBson.length, typedBson.length);
+    }
+
+    @Benchmark
+    public Map<String, Object> jsonReadLegacy() throws Exception {
+        return mapper.readValue(json, MAP);
+    }
+
+    @Benchmark
+    public ActivityMetrics jsonReadTyped() throws Exception {
+        return mapper.readValue(json, ActivityMetrics.class);
+    }
+
+    @Benchmark
+    public byte[] jsonWriteLegacy() throws Exception {
+        return mapper.writeValueAsBytes(legacy);
+    }
+
+    @Benchmark
+    public byte[] jsonWriteTyped() throws Exception {
+        return mapper.writeValueAsBytes(typed);
+    }
+
+    @Benchmark
+    public byte[] bsonWriteLegacy() {
+        return encode(new Document(legacy));
+    }
+
+    @Benchmark
+    public byte[] bsonWriteTyped() {
+        return encode(bsonWriter.convert(typed));
+    }
+
+    @Benchmark
+    public Map<String, Object> bsonReadLegacy() {
+        return decode(legacyBson);
+    }
+
+    @Benchmark
+    public ActivityMetrics bsonReadTyped() {
+        return bsonReader.convert(decode(typedBson));
+    }
+
+    private byte[] encode(Document document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private Document decode(byte[] bson) {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bson)), DecoderContext.builder().build());
+    }
+}
@@ -0,0 +1,98 @@
+package org.choubi.activityservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.choubi.activityservice.model.ActivityType;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ActivityEventMessageConverterTests {
+
+    private final ActivityEventMessageConverter converter = new ActivityEventMessageConverter(new ObjectMapper());
+
+    @Test
+    void roundTripsEveryField() {
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.put(ActivityMetrics.DISTANCE, 10.4);
+        metrics.put(ActivityMetrics.PACE, 5.45);
+        metrics.put(ActivityMetrics.AVG_HEART_RATE, 152);
+        metrics.put("shoe", "Pegasus");
+        metrics.put("laps", 12L);
+        metrics.put("indoor", false);
+        metrics.put("splits", List.of(5.1, 5.3));
+        metrics.put("weather", Map.of("tempC", 18));
+        LocalDateTime created = LocalDateTime.of(2025, 6, 14, 8, 28, 1, 123_456_789);
+        Activity activity = Activity.builder()
+                .id("6650a1f2c3d4e5f601234567")
+                .userId("user-ü")
+                .type(ActivityType.RUNNING)
+                .duration(57)
+                .caloriesBurned(-1)
+                .startTime(LocalDateTime.of(1969, 12, 31, 23, 59, 59))
+                .additionalMetrics(metrics)
+                .createdAt(created)
+                .updatedAt(created)
+                .build();
+
+        Message message = converter.toMessage(activity, new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(ActivityEventMessageConverter.CONTENT_TYPE);
+        assertThat((Integer) message.getMessageProperties().getHeader(ActivityEventMessageConverter.SCHEMA_VERSION_HEADER))
+                .isEqualTo(ActivityEventMessageConverter.SCHEMA_VERSION);
+        assertThat(converter.fromMessage(message)).isEqualTo(activity);
+    }
+
+    @Test
+    void leavesAbsentFieldsNull() {
+        Activity activity = Activity.builder().id("a1").build();
+
+        Activity read = converter.read(converter.write(activity));
+
+        assertThat(read).isEqualTo(activity);
+    }
+
+    @Test
+    void rejectsNewerSchemaVersions() {
+        byte[] body = converter.write(Activity.builder().id("a1").build());
+        body[0] = ActivityEventMessageConverter.SCHEMA_VERSION + 1;
+
+        assertThatThrownBy(() -> converter.read(body)).isInstanceOf(MessageConversionException.class);
+    }
+
+    @Test
+    void rejectsTruncatedEvents() {
+        byte[] body = converter.write(Activity.builder().id("6650a1f2c3d4e5f601234567").build());
+
+        assertThatThrownBy(() -> converter.read(Arrays.copyOf(body, body.length - 3)))
+                .isInstanceOf(MessageConversionException.class);
+    }
+
+    @Test
+    void configuredConverterReadsBothFormats() {
+        RabbitMqConfig config = new RabbitMqConfig();
+        ReflectionTestUtils.setField(config, "eventContentType", ActivityEventMessageConverter.CONTENT_TYPE);
+        MessageConverter delegating = config.messageConverter();
+        Activity activity = Activity.builder().id("a1").userId("user-1").type(ActivityType.YOGA).build();
+
+        Message binary = delegating.toMessage(activity, new MessageProperties());
+        Message json = new Jackson2JsonMessageConverter().toMessage(activity, new MessageProperties());
+
+        assertThat(binary.getMessageProperties().getContentType()).isEqualTo(ActivityEventMessageConverter.CONTENT_TYPE);
+        assertThat(delegating.fromMessage(binary)).isEqualTo(activity);
+        assertThat(delegating.fromMessage(json)).isEqualTo(activity);
+    }
+}
@@ -0,0 +1,119 @@
+package org.choubi.activityservice.config;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.choubi.activityservice.model.ActivityType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Activities written and read through the same mapping converter the application uses, with the
+ * documents passed through the driver's BSON codec in between, as a Mongo round trip would.
+ */
+class ActivityMetricsConvertersTests {
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    private final MappingMongoConverter converter = converter();
+
+    @Test
+    void storesOnlyPresentValuesWithNumericTypes() {
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.put(ActivityMetrics.DISTANCE, 10.4);
+        metrics.put(ActivityMetrics.AVG_HEART_RATE, 152);
+        metrics.put("shoe", "Pegasus");
+
+        BsonDocument stored = toBson(write(metrics)).getDocument("metrics");
+
+        assertThat(stored.keySet()).containsExactly(ActivityMetrics.DISTANCE, ActivityMetrics.AVG_HEART_RATE, "shoe");
+        assertThat(stored.get(ActivityMetrics.DISTANCE).getBsonType()).isEqualTo(BsonType.DOUBLE);
+        assertThat(stored.get(ActivityMetrics.AVG_HEART_RATE).getBsonType()).isEqualTo(BsonType.INT32);
+    }
+
+    @Test
+    void roundTripsThroughBson() {
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.put(ActivityMetrics.DISTANCE, 10.4);
+        metrics.put(ActivityMetrics.PACE, 5.45);
+        metrics.put(ActivityMetrics.ELEVATION_GAIN, 120.5);
+        metrics.put(ActivityMetrics.AVG_HEART_RATE, 152);
+        metrics.put(ActivityMetrics.MAX_HEART_RATE, 181);
+        metrics.put(ActivityMetrics.CADENCE, 172);
+        metrics.put("splits", List.of(5.1, 5.3));
+
+        Activity read = read(fromBson(toBson(write(metrics))));
+
+        assertThat(read.getAdditionalMetrics()).isEqualTo(metrics);
+    }
+
+    @Test
+    void readsLegacyDocuments() {
+        Map<String, Object> legacy = new LinkedHashMap<>();
+        legacy.put("heartRate", "148");
+        legacy.put("maxHr", 175L);
+        legacy.put("elevation", 80);
+        legacy.put("distanceKm", "5.2");
+        legacy.put("pace", "");
+        legacy.put("notes", "hilly");
+        Document document = new Document("_id", "a1").append("type", "RUNNING").append("metrics", new Document(legacy));
+
+        ActivityMetrics metrics = read(fromBson(toBson(document))).getAdditionalMetrics();
+
+        assertThat(metrics.getAvgHeartRate()).isEqualTo(148);
+        assertThat(metrics.getMaxHeartRate()).isEqualTo(175);
+        assertThat(metrics.getElevationGain()).isEqualTo(80);
+        assertThat(metrics.getDistance()).isEqualTo(5.2);
+        assertThat(ActivityMetrics.isPresent(metrics.getPace())).isFalse();
+        assertThat(metrics.getExtra()).isEqualTo(Map.of("notes", "hilly"));
+        // Written back, as the migration runner does, it takes the typed form
+        assertThat(toBson(write(metrics)).getDocument("metrics").keySet())
+                .containsExactly(ActivityMetrics.DISTANCE, ActivityMetrics.ELEVATION_GAIN, ActivityMetrics.AVG_HEART_RATE,
+                        ActivityMetrics.MAX_HEART_RATE, "notes");
+    }
+
+    private Document write(ActivityMetrics metrics) {
+        Document document = new Document();
+        converter.write(Activity.builder().id("a1").type(ActivityType.RUNNING).additionalMetrics(metrics).build(), document);
+        return document;
+    }
+
+    private Activity read(Document document) {
+        return converter.read(Activity.class, document);
+    }
+
+    private static RawBsonDocument toBson(Document document) {
+        return new RawBsonDocument(document, DOCUMENT_CODEC);
+    }
+
+    private static Document fromBson(RawBsonDocument bson) {
+        return bson.decode(DOCUMENT_CODEC);
+    }
+
+    private static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = MongoConfig.mongoCustomConversions();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Activity.class));
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
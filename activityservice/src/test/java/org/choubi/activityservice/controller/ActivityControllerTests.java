@@ -0,0 +1,57 @@
+package org.choubi.activityservice.controller;
+
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityRequest;
+import org.choubi.activityservice.service.ActivityService;
+import org.choubi.activityservice.service.IdempotencyKeyConflictException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ActivityControllerTests {
+
+    private final ActivityService activityService = mock(ActivityService.class);
+    private final ActivityController controller = new ActivityController();
+
+    ActivityControllerTests() {
+        ReflectionTestUtils.setField(controller, "activityService", activityService);
+    }
+
+    @Test
+    void requestStillInProgressIsAConflict() {
+        when(activityService.trackActivity(any(ActivityRequest.class), eq("k1")))
+                .thenThrow(new IdempotencyKeyConflictException("in progress", true));
+
+        assertThat(controller.trackActivity(new ActivityRequest(), "u1", "k1").getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void keyReusedForAnotherRequestIsUnprocessable() {
+        when(activityService.trackActivity(any(ActivityRequest.class), eq("k1")))
+                .thenThrow(new IdempotencyKeyConflictException("different request", false));
+
+        assertThat(controller.trackActivity(new ActivityRequest(), "u1", "k1").getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    void invalidKeyIsABadRequest() {
+        when(activityService.trackActivity(any(ActivityRequest.class), eq(" ")))
+                .thenThrow(new IllegalArgumentException("Idempotency-Key must be 1 to 255 characters"));
+
+        assertThat(controller.trackActivity(new ActivityRequest(), "u1", " ").getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void malformedCursorIsABadRequest() {
+        when(activityService.getUserActivities(eq("u1"), any(ActivityFilter.class), eq("garbage"), any()))
+                .thenThrow(new IllegalArgumentException("Malformed cursor: garbage"));
+
+        assertThat(controller.getUserActivities("u1", "garbage", null, null, null, null, null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+}
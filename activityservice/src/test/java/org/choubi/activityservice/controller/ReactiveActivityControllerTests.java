@@ -0,0 +1,162 @@
+package org.choubi.activityservice.controller;
+
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityRequest;
+import org.choubi.activityservice.microRequestInterface.ReactiveUserServiceInterface;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.repository.ReactiveActivityRepository;
+import org.choubi.activityservice.repository.ReactiveOutboxEventRepository;
+import org.choubi.activityservice.service.ActivityEventPublisher;
+import org.choubi.activityservice.service.ActivityRollupService;
+import org.choubi.activityservice.service.ActivityService;
+import org.choubi.activityservice.service.ReactiveActivityService;
+import org.choubi.activityservice.service.UserValidationCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the WebFlux controller and the real {@link ReactiveActivityService} with the reactive
+ * repositories and user-service client mocked.
+ */
+@WebFluxTest(ReactiveActivityController.class)
+@Import(ReactiveActivityService.class)
+@ImportAutoConfiguration(TaskExecutionAutoConfiguration.class) // ReactiveWebConfig runs blocking handlers on its executor
+@ActiveProfiles("reactive")
+class ReactiveActivityControllerTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private ReactiveActivityRepository activityRepository;
+    @MockitoBean
+    private ReactiveOutboxEventRepository outboxEventRepository;
+    @MockitoBean
+    private ReactiveUserServiceInterface userService;
+    @MockitoBean
+    private UserValidationCache userValidationCache;
+    @MockitoBean
+    private ActivityRollupService activityRollupService;
+    @MockitoBean
+    private ActivityEventPublisher activityEventPublisher;
+    @MockitoBean
+    private ActivityService activityService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Resolve every lookup through the mocked client, as on a cache miss
+        when(userValidationCache.isValid(any(), any())).thenAnswer(invocation ->
+                invocation.<Function<String, Mono<Boolean>>>getArgument(1).apply(invocation.getArgument(0)));
+        when(userService.validate("u1")).thenReturn(Mono.just(true));
+        when(userService.validate("ghost")).thenReturn(Mono.just(false));
+    }
+
+    @Test
+    void postStoresTheActivityForTheHeaderUser() {
+        when(outboxEventRepository.insert(any(OutboxEvent.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(activityRepository.insert(any(Activity.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        ActivityRequest request = new ActivityRequest();
+        request.setActivityType(ActivityType.RUNNING);
+        request.setDuration(30);
+        request.setCaloriesBurned(300);
+
+        webTestClient.post().uri("/activities")
+                .header("X-USER-ID", "u1")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isNotEmpty()
+                .jsonPath("$.userId").isEqualTo("u1")
+                .jsonPath("$.type").isEqualTo("RUNNING")
+                .jsonPath("$.duration").isEqualTo(30);
+        verify(activityEventPublisher).publish(any(OutboxEvent.class), any(Activity.class));
+    }
+
+    @Test
+    void getReturnsAPageAndTheCursorOfItsLastRow() {
+        Activity newest = activity("66aa00000000000000000003", LocalDateTime.of(2024, 3, 2, 7, 0));
+        Activity middle = activity("66aa00000000000000000002", LocalDateTime.of(2024, 3, 1, 7, 0));
+        Activity oldest = activity("66aa00000000000000000001", null);
+        when(activityRepository.findPageByUserId(eq("u1"), any(ActivityFilter.class), isNull(), eq(3)))
+                .thenReturn(Flux.just(newest, middle, oldest));
+
+        webTestClient.get().uri("/activities?limit=2")
+                .header("X-USER-ID", "u1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(2)
+                .jsonPath("$.content[0].id").isEqualTo(newest.getId())
+                .jsonPath("$.content[1].id").isEqualTo(middle.getId())
+                .jsonPath("$.nextCursor").isEqualTo(ActivityCursor.of(middle).encode());
+    }
+
+    @Test
+    void getOfTheLastPageHasNoCursor() {
+        Activity oldest = activity("66aa00000000000000000001", null);
+        ActivityCursor after = new ActivityCursor(LocalDateTime.of(2024, 3, 1, 7, 0), "66aa00000000000000000002");
+        when(activityRepository.findPageByUserId(eq("u1"), any(ActivityFilter.class), eq(after), eq(3)))
+                .thenReturn(Flux.just(oldest));
+
+        webTestClient.get().uri("/activities?limit=2&cursor=" + after.encode())
+                .header("X-USER-ID", "u1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(1)
+                .jsonPath("$.nextCursor").doesNotExist();
+    }
+
+    @Test
+    void getForAnUnknownUserIsNotFound() {
+        webTestClient.get().uri("/activities")
+                .header("X-USER-ID", "ghost")
+                .exchange()
+                .expectStatus().isNotFound();
+        verify(activityRepository, never()).findPageByUserId(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getWithAMalformedCursorIsABadRequest() {
+        webTestClient.get().uri("/activities?cursor=garbage")
+                .header("X-USER-ID", "u1")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private static Activity activity(String id, LocalDateTime startTime) {
+        return Activity.builder()
+                .id(id)
+                .userId("u1")
+                .type(ActivityType.RUNNING)
+                .duration(30)
+                .startTime(startTime)
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package org.choubi.activityservice.dto;
+
+import org.choubi.activityservice.model.Activity;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ActivityCursorTests {
+
+    @Test
+    void datedCursorSurvivesEncoding() {
+        ActivityCursor cursor = new ActivityCursor(LocalDateTime.of(2024, 3, 1, 7, 30, 15, 123_000_000), "65f1c0ffee");
+
+        assertThat(ActivityCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void undatedCursorSurvivesEncoding() {
+        ActivityCursor cursor = ActivityCursor.of(Activity.builder().id("65f1c0ffee").build());
+
+        ActivityCursor decoded = ActivityCursor.decode(cursor.encode());
+
+        assertThat(decoded.getStartTime()).isNull();
+        assertThat(decoded.getId()).isEqualTo("65f1c0ffee");
+    }
+
+    @Test
+    void encodedFormIsUrlSafe() {
+        String token = new ActivityCursor(LocalDateTime.of(2024, 3, 1, 7, 30), "a?b/c+d").encode();
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void missingTokenMeansFirstPage() {
+        assertThat(ActivityCursor.decode(null)).isNull();
+        assertThat(ActivityCursor.decode(" ")).isNull();
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        assertThatThrownBy(() -> ActivityCursor.decode("not base64!")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ActivityCursor.decode(raw("no-separator"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ActivityCursor.decode(raw("2024-03-01T07:30|"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ActivityCursor.decode(raw("yesterday|65f1c0ffee"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,35 @@
+package org.choubi.activityservice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollupGranularityTests {
+
+    @Test
+    void dayIsTheDateItself() {
+        assertThat(RollupGranularity.DAY.periodStart(LocalDate.of(2024, 2, 29))).isEqualTo(LocalDate.of(2024, 2, 29));
+    }
+
+    @Test
+    void weeksStartOnMonday() {
+        assertThat(RollupGranularity.WEEK.periodStart(LocalDate.of(2024, 3, 4))).isEqualTo(LocalDate.of(2024, 3, 4));
+        assertThat(RollupGranularity.WEEK.periodStart(LocalDate.of(2024, 3, 10))).isEqualTo(LocalDate.of(2024, 3, 4));
+        assertThat(RollupGranularity.WEEK.periodStart(LocalDate.of(2024, 3, 11))).isEqualTo(LocalDate.of(2024, 3, 11));
+    }
+
+    @Test
+    void weekCanStartInThePreviousMonthOrYear() {
+        assertThat(RollupGranularity.WEEK.periodStart(LocalDate.of(2024, 3, 1))).isEqualTo(LocalDate.of(2024, 2, 26));
+        assertThat(RollupGranularity.WEEK.periodStart(LocalDate.of(2025, 1, 1))).isEqualTo(LocalDate.of(2024, 12, 30));
+    }
+
+    @Test
+    void monthsStartOnTheFirst() {
+        assertThat(RollupGranularity.MONTH.periodStart(LocalDate.of(2024, 2, 29))).isEqualTo(LocalDate.of(2024, 2, 1));
+        assertThat(RollupGranularity.MONTH.periodStart(LocalDate.of(2024, 12, 31))).isEqualTo(LocalDate.of(2024, 12, 1));
+        assertThat(RollupGranularity.MONTH.periodStart(LocalDate.of(2025, 1, 1))).isEqualTo(LocalDate.of(2025, 1, 1));
+    }
+}
@@ -0,0 +1,118 @@
+package org.choubi.activityservice.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.types.ObjectId;
+import org.choubi.activityservice.config.MongoConfig;
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Walks a history where several activities share a startTime and others have none, following the
+ * encoded continuation tokens the way a client would, and checks every activity comes back once
+ * in (startTime desc, id desc) order with the undated ones last.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ActivityPagingTests {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7");
+
+    private static MongoClient client;
+    private static ActivityRepository activityRepository;
+    private static final List<String> expected = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(mongo.getReplicaSetUrl("paging"));
+
+        MongoCustomConversions conversions = MongoConfig.mongoCustomConversions();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Activity.class));
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        MongoTemplate mongoTemplate = new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, "paging"), converter);
+        MongoConfig.createIndexes(mongoTemplate);
+        activityRepository = new MongoRepositoryFactory(mongoTemplate)
+                .getRepository(ActivityRepository.class, new ActivityRepositoryImpl(mongoTemplate));
+
+        LocalDateTime morning = LocalDateTime.of(2024, 3, 1, 7, 0);
+        LocalDateTime evening = LocalDateTime.of(2024, 3, 1, 19, 0);
+        List<Activity> activities = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            activities.add(activity("walker", morning));
+            activities.add(activity("walker", evening));
+            activities.add(activity("walker", null));
+            activities.add(activity("other", evening));
+        }
+        activities.add(activity("walker", evening.plusDays(1)));
+        activities.add(activity("walker", null));
+        activityRepository.bulkInsert(activities);
+
+        activities.stream()
+                .filter(activity -> activity.getUserId().equals("walker"))
+                .sorted(Comparator.comparing(Activity::getStartTime, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                        .thenComparing(Activity::getId)
+                        .reversed())
+                .forEach(activity -> expected.add(activity.getId()));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5, 13, 14})
+    void everyActivityIsReturnedOnceAcrossPages(int pageSize) {
+        List<String> seen = new ArrayList<>();
+        String token = null;
+        do {
+            List<Activity> page = activityRepository.findPageByUserId("walker", new ActivityFilter(), ActivityCursor.decode(token), pageSize);
+            page.forEach(activity -> seen.add(activity.getId()));
+            token = page.size() < pageSize ? null : ActivityCursor.of(page.get(page.size() - 1)).encode();
+        } while (token != null);
+
+        assertThat(seen).containsExactlyElementsOf(expected);
+    }
+
+    private static Activity activity(String userId, LocalDateTime startTime) {
+        return Activity.builder()
+                .id(new ObjectId().toHexString())
+                .userId(userId)
+                .type(ActivityType.RUNNING)
+                .duration(30)
+                .caloriesBurned(300)
+                .startTime(startTime)
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+package org.choubi.activityservice.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.types.ObjectId;
+import org.choubi.activityservice.config.MongoConfig;
+import org.choubi.activityservice.dto.ActivityCursor;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.model.RollupGranularity;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Runs the repository queries against a real MongoDB with the indexes created the same way as at
+ * startup, and fails when the winning plan of any issued query is a collection scan (see
+ * {@link QueryPlans}).
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ActivityQueryPlanTests {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7");
+
+    private static final QueryPlans queryPlans = new QueryPlans();
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static ActivityRepository activityRepository;
+    private static OutboxEventRepository outboxEventRepository;
+    private static ActivityRollupRepository activityRollupRepository;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongo.getReplicaSetUrl("plans")))
+                .addCommandListener(queryPlans)
+                .build());
+
+        MongoCustomConversions conversions = MongoConfig.mongoCustomConversions();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Activity.class, OutboxEvent.class, ActivityRollup.class));
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, "plans"), converter);
+        MongoConfig.createIndexes(mongoTemplate);
+
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(mongoTemplate);
+        activityRepository = factory.getRepository(ActivityRepository.class, new ActivityRepositoryImpl(mongoTemplate));
+        outboxEventRepository = factory.getRepository(OutboxEventRepository.class);
+        activityRollupRepository = factory.getRepository(ActivityRollupRepository.class);
+
+        List<Activity> activities = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            activities.add(Activity.builder()
+                    .id(new ObjectId().toHexString())
+                    .userId("user-" + (i % 10))
+                    .type(ActivityType.RUNNING)
+                    .duration(30)
+                    .caloriesBurned(300)
+                    .startTime(LocalDateTime.now().minusDays(i))
+                    .build());
+        }
+        activityRepository.bulkInsert(activities);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @BeforeEach
+    void clearIssued() {
+        queryPlans.clear();
+    }
+
+    @Test
+    void findByUserIdUsesIndex() {
+        activityRepository.findByUserId("user-1");
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void keysetPagesUseIndex() {
+        activityRepository.findPageByUserId("user-1", new ActivityFilter(), null, 20);
+        activityRepository.findPageByUserId("user-1", new ActivityFilter(), new ActivityCursor(LocalDateTime.now().minusDays(50), new ObjectId().toHexString()), 20);
+        activityRepository.findPageByUserId("user-1", new ActivityFilter(), new ActivityCursor(null, new ObjectId().toHexString()), 20);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void filteredProjectedPagesUseIndex() {
+        ActivityFilter filter = new ActivityFilter(LocalDateTime.now().minusDays(60), LocalDateTime.now(),
+                ActivityType.RUNNING, ActivityFilter.parseFields("type,duration"));
+        activityRepository.findPageByUserId("user-1", filter, null, 20);
+        try (Stream<Activity> activities = activityRepository.streamByUserId("user-1", filter)) {
+            activities.count();
+        }
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void historyStreamUsesIndex() {
+        try (Stream<Activity> activities = activityRepository.streamByUserIdOrderByStartTimeDescIdDesc("user-1")) {
+            activities.count();
+        }
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void pendingOutboxScanUsesIndex() {
+        outboxEventRepository.findByPublishedAtIsNullAndIdLessThanOrderByIdAsc(new ObjectId().toHexString(), Limit.of(100));
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void rollupRangeUsesIndex() {
+        activityRollupRepository.findPeriods("user-1", RollupGranularity.DAY, LocalDate.now().minusDays(30), LocalDate.now());
+        assertNoCollectionScan();
+    }
+
+    private void assertNoCollectionScan() {
+        queryPlans.assertNoCollectionScan(mongoTemplate.getDb());
+    }
+}
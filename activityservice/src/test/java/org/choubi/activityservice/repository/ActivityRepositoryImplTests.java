@@ -0,0 +1,49 @@
+package org.choubi.activityservice.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDocument;
+import org.choubi.activityservice.model.Activity;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ActivityRepositoryImplTests {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulkOperations = mock(BulkOperations.class);
+    private final ActivityRepositoryImpl repository = new ActivityRepositoryImpl(mongoTemplate);
+
+    @Test
+    void bulkWriteErrorsAreKeyedByPositionInTheInsertedList() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1),
+                        new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 3)),
+                null, new ServerAddress(), Set.of())));
+
+        assertThat(repository.bulkInsert(List.of(new Activity(), new Activity(), new Activity(), new Activity())))
+                .containsOnlyKeys(1, 3)
+                .containsEntry(1, "E11000 duplicate key error");
+    }
+
+    @Test
+    void emptyBatchIsNotSent() {
+        assertThat(repository.bulkInsert(List.of())).isEmpty();
+        verifyNoInteractions(mongoTemplate);
+    }
+}
@@ -0,0 +1,80 @@
+package org.choubi.activityservice.repository;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Records the queries sent through the client it is registered on, and fails when the winning
+ * plan of one of them is a collection scan. activityservice and aiservice share no module, so
+ * each has this class; the two copies must stay identical.
+ */
+final class QueryPlans implements CommandListener {
+
+    private static final Set<String> QUERY_COMMANDS = Set.of("find", "aggregate", "count", "distinct");
+
+    private final List<BsonDocument> issued = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (QUERY_COMMANDS.contains(event.getCommandName())) {
+            issued.add(event.getCommand().clone());
+        }
+    }
+
+    void clear() {
+        issued.clear();
+    }
+
+    void assertNoCollectionScan(MongoDatabase database) {
+        assertFalse(issued.isEmpty(), "no query reached the database");
+        for (BsonDocument command : issued) {
+            BsonDocument explainable = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!key.startsWith("$") && !key.equals("lsid")) {
+                    explainable.put(key, value);
+                }
+            });
+            Document explain = database.runCommand(
+                    new BsonDocument("explain", explainable).append("verbosity", new BsonString("queryPlanner")));
+            if (containsCollectionScan(explain, false)) {
+                fail("Query falls back to COLLSCAN: " + explainable.toJson() + "\nplan: " + explain.toJson());
+            }
+        }
+    }
+
+    private static boolean containsCollectionScan(Object node, boolean inWinningPlan) {
+        if (node instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                if (key.equals("rejectedPlans")) {
+                    continue;
+                }
+                if (inWinningPlan && key.equals("stage") && "COLLSCAN".equals(entry.getValue())) {
+                    return true;
+                }
+                if (containsCollectionScan(entry.getValue(), inWinningPlan || key.equals("winningPlan"))) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object item : list) {
+                if (containsCollectionScan(item, inWinningPlan)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,160 @@
+package org.choubi.activityservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.EventLane;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ActivityEventPublisherTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<CorrelationData> sent = new CopyOnWriteArrayList<>();
+    private final List<String> routingKeys = new CopyOnWriteArrayList<>();
+    private final List<Object> lanes = new CopyOnWriteArrayList<>();
+    private ActivityEventPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        publisher = new ActivityEventPublisher(rabbitTemplate, mongoTemplate, meterRegistry, 100);
+        ReflectionTestUtils.setField(publisher, "exchangeName", "fitness.exchange");
+        ReflectionTestUtils.setField(publisher, "routingKey", "activity.tracking");
+        ReflectionTestUtils.setField(publisher, "backfillRoutingKey", "activity.backfill");
+        ReflectionTestUtils.setField(publisher, "backfillAfterHours", 24L);
+        ReflectionTestUtils.setField(publisher, "batchSize", 10);
+        ReflectionTestUtils.setField(publisher, "flushIntervalMs", 5L);
+        ReflectionTestUtils.setField(publisher, "confirmTimeoutMs", 200L);
+        ReflectionTestUtils.setField(publisher, "maxAttempts", 3);
+        publisher.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        publisher.stop();
+    }
+
+    @Test
+    void ackedEventIsMarkedPublished() throws Exception {
+        confirmWith((attempt, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(true, null)));
+
+        publisher.publish(event("e1"), activity()).get(2, TimeUnit.SECONDS);
+
+        verify(mongoTemplate).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(OutboxEvent.class));
+        assertThat(meterRegistry.counter("activity.events.confirmed").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("activity.events.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void nackedEventIsSentAgain() throws Exception {
+        confirmWith((attempt, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(attempt > 1, "nack")));
+
+        publisher.publish(event("e1"), activity()).get(2, TimeUnit.SECONDS);
+
+        assertThat(sent).hasSize(2);
+        assertThat(meterRegistry.counter("activity.events.nacked").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("activity.events.confirmed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void unconfirmedEventIsSentAgainAfterTimeout() throws Exception {
+        confirmWith((attempt, correlation) -> {
+            if (attempt > 1) {
+                correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+            }
+        });
+
+        publisher.publish(event("e1"), activity()).get(2, TimeUnit.SECONDS);
+
+        assertThat(sent).hasSize(2);
+        assertThat(meterRegistry.counter("activity.events.unconfirmed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void eventIsLeftToTheRelayAfterMaxAttempts() {
+        confirmWith((attempt, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(false, "nack")));
+
+        CompletableFuture<Void> done = publisher.publish(event("e1"), activity());
+
+        assertThatThrownBy(() -> done.get(2, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(sent).hasSize(3);
+        verify(mongoTemplate, times(0)).updateMulti(any(Query.class), any(UpdateDefinition.class), eq(OutboxEvent.class));
+    }
+
+    @Test
+    void publishingTheSameEventTwiceSendsItOnce() throws Exception {
+        confirmWith((attempt, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(true, null)));
+
+        CompletableFuture<Void> first = publisher.publish(event("e1"), activity());
+        CompletableFuture<Void> second = publisher.publish(event("e1"), activity());
+        CompletableFuture.allOf(first, second).get(2, TimeUnit.SECONDS);
+
+        assertThat(second).isSameAs(first);
+        assertThat(sent).hasSize(1);
+    }
+
+    @Test
+    void sendsImportsAndOldActivitiesToTheBackfillLane() throws Exception {
+        confirmWith((attempt, correlation) -> correlation.getFuture().complete(new CorrelationData.Confirm(true, null)));
+
+        publisher.publish(event("e1"), activity()).get(2, TimeUnit.SECONDS);
+        publisher.publish(OutboxEvent.builder().id("e2").activityId("a-e2").lane(EventLane.BACKFILL).build(), activity())
+                .get(2, TimeUnit.SECONDS);
+        publisher.publish(event("e3"), Activity.builder().id("a").startTime(LocalDateTime.now().minusDays(3)).build())
+                .get(2, TimeUnit.SECONDS);
+
+        assertThat(routingKeys).containsExactly("activity.tracking", "activity.backfill", "activity.backfill");
+        assertThat(lanes).containsExactly("live", "backfill", "backfill");
+    }
+
+    private void confirmWith(BiConsumer<Integer, CorrelationData> broker) {
+        doAnswer(invocation -> {
+            routingKeys.add(invocation.getArgument(1));
+            MessagePostProcessor postProcessor = invocation.getArgument(3);
+            lanes.add(postProcessor.postProcessMessage(new Message(new byte[0], new MessageProperties()))
+                    .getMessageProperties().getHeader(EventLane.HEADER));
+            CorrelationData correlation = invocation.getArgument(4);
+            sent.add(correlation);
+            broker.accept(sent.size(), correlation);
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(Object.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+    }
+
+    private static OutboxEvent event(String id) {
+        return OutboxEvent.builder().id(id).activityId("a-" + id).build();
+    }
+
+    private static Activity activity() {
+        return Activity.builder().id("a").userId("user-1").startTime(LocalDateTime.now()).build();
+    }
+}
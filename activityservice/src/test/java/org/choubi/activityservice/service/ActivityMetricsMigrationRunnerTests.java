@@ -0,0 +1,65 @@
+package org.choubi.activityservice.service;
+
+import org.bson.Document;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityMetrics;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActivityMetricsMigrationRunnerTests {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulk = mock(BulkOperations.class);
+    private final ActivityMetricsMigrationRunner runner = new ActivityMetricsMigrationRunner(mongoTemplate);
+
+    @Test
+    void writesBackTheMetricsAsReadInBatches() {
+        ReflectionTestUtils.setField(runner, "batchSize", 2);
+        when(mongoTemplate.stream(any(Query.class), eq(Activity.class)))
+                .thenReturn(IntStream.range(0, 3).mapToObj(i -> legacyActivity("a" + i)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)).thenReturn(bulk);
+
+        runner.run(null);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(Activity.class));
+        assertThat(query.getValue().getQueryObject().toJson()).contains("metrics.heartRate", "metrics.avgHeartRate");
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(3)).updateOne(any(Query.class), updates.capture());
+        assertThat(updates.getAllValues().get(0).getUpdateObject().get("$set", Document.class).get("additionalMetrics"))
+                .isInstanceOfSatisfying(ActivityMetrics.class, metrics -> assertThat(metrics.getAvgHeartRate()).isEqualTo(148));
+        verify(bulk, times(2)).execute();
+    }
+
+    @Test
+    void nothingToMigrate() {
+        when(mongoTemplate.stream(any(Query.class), eq(Activity.class))).thenReturn(Stream.empty());
+
+        runner.run(null);
+
+        verify(mongoTemplate, times(0)).bulkOps(any(BulkOperations.BulkMode.class), eq(Activity.class));
+    }
+
+    // Reading through the converter already mapped "heartRate": "148" onto the typed field
+    private static Activity legacyActivity(String id) {
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.put("heartRate", "148");
+        return Activity.builder().id(id).additionalMetrics(metrics).build();
+    }
+}
@@ -0,0 +1,138 @@
+package org.choubi.activityservice.service;
+
+import org.bson.Document;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityRollup;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.ActivityRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActivityRollupServiceTests {
+
+    private final ActivityRollupRepository activityRollupRepository = mock(ActivityRollupRepository.class);
+    private final ActivityRepository activityRepository = mock(ActivityRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulk = mock(BulkOperations.class);
+    private final ActivityRollupService rollupService = new ActivityRollupService(activityRollupRepository, activityRepository, mongoTemplate);
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class)).thenReturn(bulk);
+    }
+
+    @Test
+    void activitiesAreAddedToTheirDayWeekAndMonth() {
+        rollupService.record(List.of(
+                activity(ActivityType.RUNNING, 30, 300, LocalDateTime.of(2024, 3, 1, 7, 0)),
+                activity(ActivityType.CYCLING, 60, 500, LocalDateTime.of(2024, 3, 1, 19, 0))));
+
+        Map<String, Document> updates = upserts();
+        assertThat(updates).containsOnlyKeys("u1:DAY:2024-03-01", "u1:WEEK:2024-02-26", "u1:MONTH:2024-03-01");
+        Document week = updates.get("u1:WEEK:2024-02-26");
+        assertThat(week.get("$setOnInsert", Document.class))
+                .containsEntry("userId", "u1")
+                .containsEntry("periodStart", LocalDate.of(2024, 2, 26));
+        assertThat(week.get("$inc", Document.class))
+                .containsEntry("sessions", 2L)
+                .containsEntry("durationMinutes", 90L)
+                .containsEntry("caloriesBurned", 800L)
+                .containsEntry("byType.RUNNING.sessions", 1L)
+                .containsEntry("byType.RUNNING.durationMinutes", 30L)
+                .containsEntry("byType.CYCLING.caloriesBurned", 500L);
+        assertThat(week.get("$set", Document.class)).containsKey("updatedAt");
+    }
+
+    @Test
+    void activitiesWithoutStartTimeAreBucketedByCreationTime() {
+        Activity undated = activity(ActivityType.RUNNING, 30, null, null);
+        undated.setCreatedAt(LocalDateTime.of(2024, 12, 31, 23, 0));
+
+        rollupService.record(List.of(undated));
+
+        Map<String, Document> updates = upserts();
+        assertThat(updates).containsOnlyKeys("u1:DAY:2024-12-31", "u1:WEEK:2024-12-30", "u1:MONTH:2024-12-01");
+        assertThat(updates.get("u1:DAY:2024-12-31").get("$inc", Document.class))
+                .containsEntry("sessions", 1L)
+                .containsEntry("caloriesBurned", 0L);
+    }
+
+    @Test
+    void activitiesWithoutAnyTimeOrUserAreSkipped() {
+        Activity noTime = activity(ActivityType.RUNNING, 30, 300, null);
+        Activity noUser = activity(ActivityType.RUNNING, 30, 300, LocalDateTime.of(2024, 3, 1, 7, 0));
+        noUser.setUserId(null);
+
+        rollupService.record(List.of(noTime, noUser));
+
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), any(Class.class));
+    }
+
+    @Test
+    void rebuildClearsTheUserThenReplaysTheirHistory() {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(activityRepository.streamByUserIdOrderByStartTimeDescIdDesc("u1")).thenReturn(Stream.of(
+                activity(ActivityType.RUNNING, 30, 300, LocalDateTime.of(2024, 3, 1, 7, 0)),
+                activity(ActivityType.RUNNING, 45, 400, LocalDateTime.of(2024, 2, 29, 7, 0))).onClose(() -> closed.set(true)));
+
+        rollupService.rebuild("u1");
+
+        InOrder order = inOrder(activityRollupRepository, bulk);
+        order.verify(activityRollupRepository).deleteByUserId("u1");
+        order.verify(bulk).execute();
+        Map<String, Document> updates = upserts();
+        assertThat(updates).containsOnlyKeys("u1:DAY:2024-03-01", "u1:DAY:2024-02-29", "u1:WEEK:2024-02-26",
+                "u1:MONTH:2024-03-01", "u1:MONTH:2024-02-01");
+        assertThat(updates.get("u1:WEEK:2024-02-26").get("$inc", Document.class))
+                .containsEntry("sessions", 2L)
+                .containsEntry("byType.RUNNING.durationMinutes", 75L);
+        assertThat(closed).isTrue();
+    }
+
+    // Update document of every upsert in the single bulk, keyed by rollup id
+    private Map<String, Document> upserts() {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulk).execute();
+        verify(bulk, atLeastOnce()).upsert(queries.capture(), updates.capture());
+        Map<String, Document> byId = new HashMap<>();
+        for (int i = 0; i < queries.getAllValues().size(); i++) {
+            byId.put(queries.getAllValues().get(i).getQueryObject().getString("id"), updates.getAllValues().get(i).getUpdateObject());
+        }
+        return byId;
+    }
+
+    private static Activity activity(ActivityType type, Integer duration, Integer calories, LocalDateTime startTime) {
+        return Activity.builder()
+                .userId("u1")
+                .type(type)
+                .duration(duration)
+                .caloriesBurned(calories)
+                .startTime(startTime)
+                .build();
+    }
+}
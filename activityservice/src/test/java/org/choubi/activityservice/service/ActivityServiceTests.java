@@ -0,0 +1,126 @@
+package org.choubi.activityservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.activityservice.dto.ActivityBatchItemResult;
+import org.choubi.activityservice.dto.ActivityBatchResponse;
+import org.choubi.activityservice.dto.ActivityFilter;
+import org.choubi.activityservice.dto.ActivityResponse;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.IdempotencyRecord;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.IdempotencyRecordRepository;
+import org.choubi.activityservice.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.choubi.activityservice.service.IdempotencyKeyStoreTests.request;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+class ActivityServiceTests {
+
+    private final ActivityRepository activityRepository = mock(ActivityRepository.class);
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final IdempotencyRecordRepository idempotencyRecordRepository = mock(IdempotencyRecordRepository.class);
+    private final ActivityEventPublisher activityEventPublisher = mock(ActivityEventPublisher.class);
+    private final UserValidationCache userValidationCache = mock(UserValidationCache.class);
+    private final ActivityRollupService activityRollupService = mock(ActivityRollupService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final ActivityService activityService = new ActivityService(activityRepository, userValidationCache,
+            outboxEventRepository, activityRollupService,
+            new IdempotencyKeyStore(idempotencyRecordRepository, activityRepository, objectMapper, new SimpleMeterRegistry(), 100, 60, 60),
+            activityEventPublisher, objectMapper);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(activityService, "maxBatchSize", 500);
+        when(outboxEventRepository.insert(any(OutboxEvent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(activityRepository.insert(any(Activity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void retryWithTheSameKeyGetsTheOriginalWithoutStoringOrPublishingAgain() {
+        ActivityResponse first = activityService.trackActivity(request(30), "k1");
+        ActivityResponse retry = activityService.trackActivity(request(30), "k1");
+
+        assertThat(retry.getId()).isEqualTo(first.getId());
+        verify(activityRepository, times(1)).insert(any(Activity.class));
+        verify(outboxEventRepository, times(1)).insert(any(OutboxEvent.class));
+        verify(activityEventPublisher, times(1)).publish(any(), any());
+        verify(idempotencyRecordRepository, times(1)).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void claimIsReleasedWhenTheActivityCannotBeStored() {
+        when(activityRepository.insert(any(Activity.class))).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertThatThrownBy(() -> activityService.trackActivity(request(30), "k1"))
+                .isInstanceOf(DataAccessResourceFailureException.class);
+        verify(idempotencyRecordRepository).deleteByIdAndActivityId(eq("u1:k1"), any());
+    }
+
+    @Test
+    void malformedCursorIsRejectedBeforeQuerying() {
+        when(userValidationCache.isValid("u1")).thenReturn(true);
+
+        assertThatThrownBy(() -> activityService.getUserActivities("u1", new ActivityFilter(), "bm8tc2VwYXJhdG9y", 20))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(activityRepository, never()).findPageByUserId(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void batchReportsEachItemAtItsSubmittedPosition() {
+        when(outboxEventRepository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        // Position 1 of the three inserted activities, i.e. submitted item 3
+        when(activityRepository.bulkInsert(anyList())).thenReturn(Map.of(1, "E11000 duplicate key error collection: activities"));
+
+        ActivityBatchResponse response = activityService.trackActivities(Arrays.asList(
+                request(30), request(0), null, request(45), request(60)));
+
+        assertThat(response.getAccepted()).isEqualTo(2);
+        assertThat(response.getRejected()).isEqualTo(3);
+        assertThat(response.getResults()).extracting(ActivityBatchItemResult::getIndex).containsExactly(0, 1, 2, 3, 4);
+        assertThat(response.getResults()).extracting(ActivityBatchItemResult::isSuccess).containsExactly(true, false, false, false, true);
+        assertThat(response.getResults()).extracting(ActivityBatchItemResult::getError).containsExactly(
+                null, "duration must be a positive number of minutes", "activity is required",
+                "E11000 duplicate key error collection: activities", null);
+        assertThat(response.getResults().get(0).getActivity().getDuration()).isEqualTo(30);
+        assertThat(response.getResults().get(4).getActivity().getDuration()).isEqualTo(60);
+
+        ArgumentCaptor<List<Activity>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(activityRepository).bulkInsert(inserted.capture());
+        assertThat(inserted.getValue()).extracting(Activity::getDuration).containsExactly(30, 45, 60);
+        String duplicateId = inserted.getValue().get(1).getId();
+
+        ArgumentCaptor<List<OutboxEvent>> discarded = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository).deleteAll(discarded.capture());
+        assertThat(discarded.getValue()).extracting(OutboxEvent::getActivityId).containsExactly(duplicateId);
+
+        ArgumentCaptor<List<OutboxEvent>> published = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<Activity>> publishedActivities = ArgumentCaptor.forClass(List.class);
+        verify(activityEventPublisher).publishAll(published.capture(), publishedActivities.capture());
+        assertThat(published.getValue()).extracting(OutboxEvent::getActivityId).containsExactly(
+                response.getResults().get(0).getActivity().getId(), response.getResults().get(4).getActivity().getId());
+        assertThat(publishedActivities.getValue()).extracting(Activity::getDuration).containsExactly(30, 60);
+        verify(activityRollupService).record(publishedActivities.getValue());
+    }
+}
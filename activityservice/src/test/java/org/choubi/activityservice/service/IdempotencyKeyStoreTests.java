@@ -0,0 +1,130 @@
+package org.choubi.activityservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.activityservice.dto.ActivityRequest;
+import org.choubi.activityservice.dto.ActivityResponse;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.ActivityType;
+import org.choubi.activityservice.model.IdempotencyRecord;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class IdempotencyKeyStoreTests {
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository = mock(IdempotencyRecordRepository.class);
+    private final ActivityRepository activityRepository = mock(ActivityRepository.class);
+    private final IdempotencyKeyStore store = store();
+
+    @Test
+    void firstRequestClaimsTheKey() {
+        assertThat(store.claim("u1", "k1", request(30), "a1")).isEmpty();
+
+        IdempotencyRecord claim = claimed();
+        assertThat(claim.getId()).isEqualTo("u1:k1");
+        assertThat(claim.getActivityId()).isEqualTo("a1");
+    }
+
+    @Test
+    void completedKeyIsAnsweredFromMemory() {
+        ActivityResponse response = new ActivityResponse(activity("a1"));
+        store.complete("u1", "k1", request(30), response);
+
+        assertThat(store.claim("u1", "k1", request(30), "a2")).containsSame(response);
+        verifyNoInteractions(idempotencyRecordRepository, activityRepository);
+    }
+
+    @Test
+    void sameRequestOnAnotherInstanceReplaysTheStoredActivity() {
+        IdempotencyRecord existing = existingClaim(LocalDateTime.now());
+        when(activityRepository.findById("a1")).thenReturn(Optional.of(activity("a1")));
+
+        assertThat(store().claim("u1", "k1", request(30), "a2"))
+                .hasValueSatisfying(response -> assertThat(response.getId()).isEqualTo(existing.getActivityId()));
+    }
+
+    @Test
+    void keyReusedForAnotherRequestIsRejected() {
+        existingClaim(LocalDateTime.now());
+
+        assertThatThrownBy(() -> store().claim("u1", "k1", request(45), "a2"))
+                .isInstanceOfSatisfying(IdempotencyKeyConflictException.class, e -> assertThat(e.isInProgress()).isFalse());
+    }
+
+    @Test
+    void liveClaimWithoutStoredActivityIsStillInProgress() {
+        existingClaim(LocalDateTime.now());
+        when(activityRepository.findById("a1")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> store().claim("u1", "k1", request(30), "a2"))
+                .isInstanceOfSatisfying(IdempotencyKeyConflictException.class, e -> assertThat(e.isInProgress()).isTrue());
+    }
+
+    @Test
+    void staleClaimIsTakenOver() {
+        existingClaim(LocalDateTime.now().minusMinutes(5));
+        when(activityRepository.findById("a1")).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.deleteByIdAndActivityId("u1:k1", "a1")).thenReturn(1L);
+
+        assertThat(store().claim("u1", "k1", request(30), "a2")).isEmpty();
+        verify(idempotencyRecordRepository, times(3)).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void rejectsBlankKeys() {
+        assertThatThrownBy(() -> store.claim("u1", " ", request(30), "a1"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // Claims the key with the first store, then makes any further insert collide with that claim
+    private IdempotencyRecord existingClaim(LocalDateTime createdAt) {
+        store.claim("u1", "k1", request(30), "a1");
+        IdempotencyRecord claim = claimed();
+        claim.setCreatedAt(createdAt);
+        when(idempotencyRecordRepository.insert(any(IdempotencyRecord.class)))
+                .thenThrow(new DuplicateKeyException("E11000"))
+                .thenReturn(claim);
+        when(idempotencyRecordRepository.findById("u1:k1")).thenReturn(Optional.of(claim));
+        return claim;
+    }
+
+    private IdempotencyRecord claimed() {
+        ArgumentCaptor<IdempotencyRecord> captor = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(idempotencyRecordRepository).insert(captor.capture());
+        return captor.getValue();
+    }
+
+    private IdempotencyKeyStore store() {
+        return new IdempotencyKeyStore(idempotencyRecordRepository, activityRepository, new ObjectMapper().findAndRegisterModules(),
+                new SimpleMeterRegistry(), 100, 60, 60);
+    }
+
+    static ActivityRequest request(int duration) {
+        ActivityRequest request = new ActivityRequest();
+        request.setUserId("u1");
+        request.setActivityType(ActivityType.RUNNING);
+        request.setDuration(duration);
+        request.setCaloriesBurned(300);
+        request.setStartTime(LocalDateTime.of(2025, 6, 14, 8, 0));
+        return request;
+    }
+
+    private static Activity activity(String id) {
+        return Activity.builder().id(id).userId("u1").type(ActivityType.RUNNING).duration(30).build();
+    }
+}
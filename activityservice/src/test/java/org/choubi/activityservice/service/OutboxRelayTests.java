@@ -0,0 +1,96 @@
+package org.choubi.activityservice.service;
+
+import org.bson.types.ObjectId;
+import org.choubi.activityservice.model.Activity;
+import org.choubi.activityservice.model.OutboxEvent;
+import org.choubi.activityservice.model.OutboxRelayState;
+import org.choubi.activityservice.repository.ActivityRepository;
+import org.choubi.activityservice.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTests {
+
+    private static final int BATCH_SIZE = 3;
+
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final ActivityRepository activityRepository = mock(ActivityRepository.class);
+    private final ActivityEventPublisher activityEventPublisher = mock(ActivityEventPublisher.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final Map<String, String> ids = new HashMap<>();
+    private final OutboxRelay relay = new OutboxRelay(outboxEventRepository, activityRepository, activityEventPublisher, mongoTemplate);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(relay, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(relay, "relayDelayMs", 30000L);
+        ReflectionTestUtils.setField(relay, "confirmTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(relay, "leaseMs", 30000L);
+        ReflectionTestUtils.setField(relay, "orphanGraceMs", 60000L);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(OutboxRelayState.class)))
+                .thenReturn(new OutboxRelayState());
+        when(activityEventPublisher.publish(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void fullBatchStillWaitingForItsActivitiesEndsTheRun() {
+        List<OutboxEvent> waiting = IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> event("a" + i, LocalDateTime.now()))
+                .toList();
+        when(outboxEventRepository.findByPublishedAtIsNullAndIdLessThanOrderByIdAsc(anyString(), any(Limit.class)))
+                .thenReturn(waiting);
+
+        relay.relay();
+
+        verify(outboxEventRepository, times(1)).findByPublishedAtIsNullAndIdLessThanOrderByIdAsc(anyString(), any(Limit.class));
+        verify(outboxEventRepository, never()).deleteAllById(any());
+        verify(activityEventPublisher, never()).publish(any(), any());
+    }
+
+    @Test
+    void countsPublishedAndDroppedEntriesOnly() {
+        Activity stored = new Activity();
+        stored.setId("a1");
+        when(outboxEventRepository.findByPublishedAtIsNullAndIdLessThanOrderByIdAsc(anyString(), any(Limit.class)))
+                .thenReturn(List.of(
+                        event("a1", LocalDateTime.now()),
+                        event("a2", LocalDateTime.now().minusMinutes(5)),
+                        event("a3", LocalDateTime.now())));
+        when(activityRepository.findAllById(any())).thenReturn(List.of(stored));
+
+        assertThat(relay.relayBatch()).isEqualTo(2);
+        verify(activityEventPublisher).publish(any(), eq(stored));
+        verify(outboxEventRepository).deleteAllById(List.of(idOf("a2")));
+    }
+
+    private OutboxEvent event(String activityId, LocalDateTime createdAt) {
+        return OutboxEvent.builder().id(idOf(activityId)).activityId(activityId).createdAt(createdAt).build();
+    }
+
+    private String idOf(String activityId) {
+        return ids.computeIfAbsent(activityId, id -> new ObjectId().toHexString());
+    }
+}
@@ -0,0 +1,73 @@
+package org.choubi.activityservice.service;
+
+import org.choubi.activityservice.model.SampleEncoding;
+import org.choubi.activityservice.model.SampleStreamType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SampleChunkCodecTests {
+
+    private static final int ONE_HOUR = 3600;
+
+    @Test
+    void roundTripsDeltasOfEitherSign() {
+        long[] offsets = {0, 1, 2, 5, 300, 301};
+        long[] values = {150, 148, 0, -7, Long.MAX_VALUE / 2, Long.MIN_VALUE / 2};
+
+        for (boolean compress : new boolean[]{false, true}) {
+            SampleChunkCodec.Encoded encoded = SampleChunkCodec.encode(offsets, values, 0, offsets.length, compress);
+            SampleChunkCodec.Samples decoded = SampleChunkCodec.decode(encoded.encoding(), encoded.data());
+
+            assertThat(decoded.offsets()).containsExactly(offsets);
+            assertThat(decoded.values()).containsExactly(values);
+        }
+    }
+
+    @Test
+    void encodesASubRange() {
+        long[] offsets = {10, 11, 12, 13};
+        long[] values = {1, 2, 3, 4};
+
+        SampleChunkCodec.Encoded encoded = SampleChunkCodec.encode(offsets, values, 1, 3, false);
+        SampleChunkCodec.Samples decoded = SampleChunkCodec.decode(encoded.encoding(), encoded.data());
+
+        assertThat(decoded.offsets()).containsExactly(11, 12);
+        assertThat(decoded.values()).containsExactly(2, 3);
+    }
+
+    @Test
+    void oneHourOfOneHertzSamplesTakesKilobytes() {
+        Random random = new Random(42);
+        long[] offsets = new long[ONE_HOUR];
+        long[] heartRate = new long[ONE_HOUR];
+        long[] latitude = new long[ONE_HOUR];
+        double bpm = 120;
+        double lat = 48.8566;
+        for (int i = 0; i < ONE_HOUR; i++) {
+            offsets[i] = i;
+            bpm = Math.max(90, Math.min(185, bpm + random.nextGaussian()));
+            heartRate[i] = SampleStreamType.HEART_RATE.toFixed(bpm);
+            lat += 0.00002 + random.nextGaussian() * 0.000005; // ~2 m/s with GPS jitter
+            latitude[i] = SampleStreamType.LATITUDE.toFixed(lat);
+        }
+
+        int heartRateBytes = encodedSize(offsets, heartRate);
+        int latitudeBytes = encodedSize(offsets, latitude);
+
+        assertThat(heartRateBytes).isLessThan(4 * 1024);
+        assertThat(latitudeBytes).isLessThan(8 * 1024);
+    }
+
+    private static int encodedSize(long[] offsets, long[] values) {
+        int bytes = 0;
+        for (int from = 0; from < offsets.length; from += 600) {
+            SampleChunkCodec.Encoded encoded = SampleChunkCodec.encode(offsets, values, from, from + 600, true);
+            assertThat(encoded.encoding()).isEqualTo(SampleEncoding.DELTA_VARINT_DEFLATE);
+            bytes += encoded.data().length;
+        }
+        return bytes;
+    }
+}
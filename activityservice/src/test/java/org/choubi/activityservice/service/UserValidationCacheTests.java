@@ -0,0 +1,124 @@
+package org.choubi.activityservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.activityservice.dto.UserChangedEvent;
+import org.choubi.activityservice.microRequestInterface.UserServiceInterface;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserValidationCacheTests {
+
+    private final UserServiceInterface userService = mock(UserServiceInterface.class);
+    private final AtomicLong nanos = new AtomicLong();
+    private final UserValidationCache cache = new UserValidationCache(userService, new SimpleMeterRegistry(), 100, 300, 30, nanos::get);
+
+    @Test
+    void knownUserIsLookedUpOncePerTtl() {
+        when(userService.validate("u1")).thenReturn(true);
+
+        assertThat(cache.isValid("u1")).isTrue();
+        advance(Duration.ofSeconds(299));
+        assertThat(cache.isValid("u1")).isTrue();
+        verify(userService, times(1)).validate("u1");
+
+        advance(Duration.ofSeconds(2));
+        assertThat(cache.isValid("u1")).isTrue();
+        verify(userService, times(2)).validate("u1");
+    }
+
+    @Test
+    void unknownUserExpiresAfterTheShorterTtl() {
+        when(userService.validate("u1")).thenReturn(false);
+
+        assertThat(cache.isValid("u1")).isFalse();
+        advance(Duration.ofSeconds(29));
+        assertThat(cache.isValid("u1")).isFalse();
+        verify(userService, times(1)).validate("u1");
+
+        advance(Duration.ofSeconds(2));
+        when(userService.validate("u1")).thenReturn(true);
+        assertThat(cache.isValid("u1")).isTrue();
+        verify(userService, times(2)).validate("u1");
+    }
+
+    @Test
+    void failedLookupIsNotCached() {
+        when(userService.validate("u1")).thenThrow(new IllegalStateException("user-service down")).thenReturn(true);
+
+        assertThatThrownBy(() -> cache.isValid("u1")).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.isValid("u1")).isTrue();
+        assertThat(cache.isValid("u1")).isTrue();
+        verify(userService, times(2)).validate("u1");
+    }
+
+    @Test
+    void reactiveLookupFillsAndReadsTheSameCache() {
+        AtomicInteger lookups = new AtomicInteger();
+
+        StepVerifier.create(cache.isValid("u1", id -> Mono.fromSupplier(() -> lookups.incrementAndGet() > 0)))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(cache.isValid("u1", id -> Mono.fromSupplier(() -> lookups.incrementAndGet() > 0)))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertThat(lookups).hasValue(1);
+        assertThat(cache.isValid("u1")).isTrue();
+        verify(userService, times(0)).validate("u1");
+    }
+
+    @Test
+    void reactiveFailureIsNotCachedAndEmptyMeansUnknown() {
+        StepVerifier.create(cache.isValid("u1", id -> Mono.error(new IllegalStateException("user-service down"))))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(cache.isValid("u1", id -> Mono.just(true)))
+                .expectNext(true)
+                .verifyComplete();
+
+        StepVerifier.create(cache.isValid("u2", id -> Mono.empty()))
+                .expectNext(false)
+                .verifyComplete();
+        advance(Duration.ofSeconds(31));
+        StepVerifier.create(cache.isValid("u2", id -> Mono.just(true)))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void userChangedEventDropsTheCachedAnswer() {
+        when(userService.validate("u1")).thenReturn(false, true);
+        UserEventListener listener = new UserEventListener(cache);
+
+        assertThat(cache.isValid("u1")).isFalse();
+        listener.handleUserChanged(new UserChangedEvent("u1"));
+        listener.handleUserChanged(new UserChangedEvent(null));
+
+        assertThat(cache.isValid("u1")).isTrue();
+        verify(userService, times(2)).validate("u1");
+    }
+
+    @Test
+    void missingUserIdIsNeverLookedUp() {
+        assertThat(cache.isValid(null)).isFalse();
+        StepVerifier.create(cache.isValid(null, id -> Mono.just(true)))
+                .expectNext(false)
+                .verifyComplete();
+        verify(userService, times(0)).validate(null);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
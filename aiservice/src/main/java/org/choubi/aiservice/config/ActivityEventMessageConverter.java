@@ -0,0 +1,283 @@
+package org.choubi.aiservice.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityMetrics;
+import org.choubi.aiservice.model.ActivityType;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Copy of activityservice's binary activity event format, selected by content type
+ * {@link #CONTENT_TYPE}. Events with a newer schema version than {@link #SCHEMA_VERSION} are
+ * rejected instead of being read with missing fields. See the activityservice copy for the layout.
+ */
+public class ActivityEventMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/vnd.fitness.activity-event";
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final int ID = 1, USER_ID = 1 << 1, TYPE = 1 << 2, DURATION = 1 << 3, CALORIES = 1 << 4,
+            START_TIME = 1 << 5, METRICS = 1 << 6, CREATED_AT = 1 << 7, UPDATED_AT = 1 << 8;
+    private static final int DISTANCE = 1, PACE = 1 << 1, ELEVATION_GAIN = 1 << 2, AVG_HEART_RATE = 1 << 3,
+            MAX_HEART_RATE = 1 << 4, CADENCE = 1 << 5, EXTRA = 1 << 6;
+    private static final int NULL = 0, STRING = 1, LONG = 2, DOUBLE = 3, TRUE = 4, FALSE = 5, JSON = 6;
+
+    private final ObjectMapper objectMapper;
+
+    public ActivityEventMessageConverter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof Activity activity)) {
+            throw new MessageConversionException("Only activities can be sent as " + CONTENT_TYPE + ", got " + object.getClass());
+        }
+        byte[] body = write(activity);
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        messageProperties.setHeader(SCHEMA_VERSION_HEADER, SCHEMA_VERSION);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Activity fromMessage(Message message) {
+        return read(message.getBody());
+    }
+
+    public byte[] write(Activity activity) {
+        Output out = new Output();
+        out.write(SCHEMA_VERSION);
+        ActivityMetrics metrics = activity.getAdditionalMetrics();
+        int present = (activity.getId() != null ? ID : 0)
+                | (activity.getUserId() != null ? USER_ID : 0)
+                | (activity.getType() != null ? TYPE : 0)
+                | (activity.getDuration() != null ? DURATION : 0)
+                | (activity.getCaloriesBurned() != null ? CALORIES : 0)
+                | (activity.getStartTime() != null ? START_TIME : 0)
+                | (metrics != null ? METRICS : 0)
+                | (activity.getCreatedAt() != null ? CREATED_AT : 0)
+                | (activity.getUpdatedAt() != null ? UPDATED_AT : 0);
+        out.writeVarint(present);
+        if (activity.getId() != null) out.writeString(activity.getId());
+        if (activity.getUserId() != null) out.writeString(activity.getUserId());
+        if (activity.getType() != null) out.writeString(activity.getType().name());
+        if (activity.getDuration() != null) out.writeZigzag(activity.getDuration());
+        if (activity.getCaloriesBurned() != null) out.writeZigzag(activity.getCaloriesBurned());
+        if (activity.getStartTime() != null) out.writeTime(activity.getStartTime());
+        if (metrics != null) writeMetrics(out, metrics);
+        if (activity.getCreatedAt() != null) out.writeTime(activity.getCreatedAt());
+        if (activity.getUpdatedAt() != null) out.writeTime(activity.getUpdatedAt());
+        return out.toByteArray();
+    }
+
+    public Activity read(byte[] body) {
+        ByteBuffer in = ByteBuffer.wrap(body);
+        try {
+            int version = in.get();
+            if (version > SCHEMA_VERSION) {
+                throw new MessageConversionException("Activity event schema version " + version
+                        + " is newer than the supported " + SCHEMA_VERSION);
+            }
+            Activity activity = new Activity();
+            int present = (int) readVarint(in);
+            if ((present & ID) != 0) activity.setId(readString(in));
+            if ((present & USER_ID) != 0) activity.setUserId(readString(in));
+            if ((present & TYPE) != 0) activity.setType(ActivityType.valueOf(readString(in)));
+            if ((present & DURATION) != 0) activity.setDuration((int) readZigzag(in));
+            if ((present & CALORIES) != 0) activity.setCaloriesBurned((int) readZigzag(in));
+            if ((present & START_TIME) != 0) activity.setStartTime(readTime(in));
+            if ((present & METRICS) != 0) activity.setAdditionalMetrics(readMetrics(in));
+            if ((present & CREATED_AT) != 0) activity.setCreatedAt(readTime(in));
+            if ((present & UPDATED_AT) != 0) activity.setUpdatedAt(readTime(in));
+            return activity;
+        } catch (MessageConversionException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Malformed activity event", e);
+        }
+    }
+
+    private void writeMetrics(Output out, ActivityMetrics metrics) {
+        Map<String, Object> extra = metrics.getExtra();
+        int present = (ActivityMetrics.isPresent(metrics.getDistance()) ? DISTANCE : 0)
+                | (ActivityMetrics.isPresent(metrics.getPace()) ? PACE : 0)
+                | (ActivityMetrics.isPresent(metrics.getElevationGain()) ? ELEVATION_GAIN : 0)
+                | (ActivityMetrics.isPresent(metrics.getAvgHeartRate()) ? AVG_HEART_RATE : 0)
+                | (ActivityMetrics.isPresent(metrics.getMaxHeartRate()) ? MAX_HEART_RATE : 0)
+                | (ActivityMetrics.isPresent(metrics.getCadence()) ? CADENCE : 0)
+                | (extra != null && !extra.isEmpty() ? EXTRA : 0);
+        out.writeVarint(present);
+        if ((present & DISTANCE) != 0) out.writeDouble(metrics.getDistance());
+        if ((present & PACE) != 0) out.writeDouble(metrics.getPace());
+        if ((present & ELEVATION_GAIN) != 0) out.writeDouble(metrics.getElevationGain());
+        if ((present & AVG_HEART_RATE) != 0) out.writeZigzag(metrics.getAvgHeartRate());
+        if ((present & MAX_HEART_RATE) != 0) out.writeZigzag(metrics.getMaxHeartRate());
+        if ((present & CADENCE) != 0) out.writeZigzag(metrics.getCadence());
+        if ((present & EXTRA) != 0) {
+            out.writeVarint(extra.size());
+            for (Map.Entry<String, Object> entry : extra.entrySet()) {
+                out.writeString(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private ActivityMetrics readMetrics(ByteBuffer in) {
+        ActivityMetrics metrics = new ActivityMetrics();
+        int present = (int) readVarint(in);
+        if ((present & DISTANCE) != 0) metrics.setDistance(in.getDouble());
+        if ((present & PACE) != 0) metrics.setPace(in.getDouble());
+        if ((present & ELEVATION_GAIN) != 0) metrics.setElevationGain(in.getDouble());
+        if ((present & AVG_HEART_RATE) != 0) metrics.setAvgHeartRate((int) readZigzag(in));
+        if ((present & MAX_HEART_RATE) != 0) metrics.setMaxHeartRate((int) readZigzag(in));
+        if ((present & CADENCE) != 0) metrics.setCadence((int) readZigzag(in));
+        if ((present & EXTRA) != 0) {
+            for (long i = readVarint(in); i > 0; i--) {
+                metrics.put(readString(in), readValue(in));
+            }
+        }
+        return metrics;
+    }
+
+    private void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof String text) {
+            out.write(STRING);
+            out.writeString(text);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.write(LONG);
+            out.writeZigzag(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.write(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean flag) {
+            out.write(flag ? TRUE : FALSE);
+        } else {
+            out.write(JSON);
+            try {
+                out.writeString(objectMapper.writeValueAsString(value));
+            } catch (JsonProcessingException e) {
+                throw new MessageConversionException("Cannot encode metric value " + value, e);
+            }
+        }
+    }
+
+    private Object readValue(ByteBuffer in) {
+        int tag = in.get();
+        return switch (tag) {
+            case NULL -> null;
+            case STRING -> readString(in);
+            case LONG -> readZigzag(in);
+            case DOUBLE -> in.getDouble();
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case JSON -> {
+                try {
+                    yield objectMapper.readValue(readString(in), Object.class);
+                } catch (JsonProcessingException e) {
+                    throw new MessageConversionException("Malformed metric value", e);
+                }
+            }
+            default -> throw new MessageConversionException("Unknown metric value tag " + tag);
+        };
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new MessageConversionException("Varint too long");
+    }
+
+    private static long readZigzag(ByteBuffer in) {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarint(in);
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static LocalDateTime readTime(ByteBuffer in) {
+        return LocalDateTime.ofEpochSecond(readZigzag(in), (int) readVarint(in), ZoneOffset.UTC);
+    }
+
+    // Unsynchronized ByteArrayOutputStream; events are a few hundred bytes
+    private static final class Output {
+
+        private byte[] bytes = new byte[128];
+        private int length;
+
+        void write(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        void write(byte[] source) {
+            if (length + source.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length * 2, length + source.length));
+            }
+            System.arraycopy(source, 0, bytes, length, source.length);
+            length += source.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (bits >>> shift));
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        // Local times are encoded as if they were UTC; both sides read them back the same way
+        void writeTime(LocalDateTime time) {
+            writeZigzag(time.toEpochSecond(ZoneOffset.UTC));
+            writeVarint(time.getNano());
+        }
+    }
+}
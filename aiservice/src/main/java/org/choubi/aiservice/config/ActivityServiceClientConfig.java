@@ -0,0 +1,26 @@
+package org.choubi.aiservice.config;
+
+import org.choubi.aiservice.microRequestInterface.ActivityServiceInterface;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+
+@Configuration
+public class ActivityServiceClientConfig {
+
+    // The load balancer is added to a copy of the builder: GeminiService uses the same one for a plain URL
+    @Bean
+    public ActivityServiceInterface activityServiceInterface(WebClient.Builder webClientBuilder,
+                                                             LoadBalancedExchangeFilterFunction loadBalancer) {
+        WebClient webClient = webClientBuilder.clone()
+                .baseUrl("http://activity-service")
+                .filter(loadBalancer)
+                .build();
+        return HttpServiceProxyFactory.builderFor(WebClientAdapter.create(webClient))
+                .build()
+                .createClient(ActivityServiceInterface.class);
+    }
+}
@@ -1,9 +1,50 @@
 package org.choubi.aiservice.config;
 
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 
+@Slf4j
 @Configuration
 @EnableMongoAuditing
+@RequiredArgsConstructor
 public class MongoConfig {
+
+    private final MongoTemplate mongoTemplate;
+
+    // Spring Boot leaves auto index creation off, so the indexes declared on the documents are created here
+    @EventListener(ContextRefreshedEvent.class)
+    public void createIndexes() {
+        createIndexes(mongoTemplate);
+    }
+
+    public static void createIndexes(MongoTemplate mongoTemplate) {
+        MongoMappingContext mappingContext = (MongoMappingContext) mongoTemplate.getConverter().getMappingContext();
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            IndexOperations indexOps = mongoTemplate.indexOps(entity.getType());
+            resolver.resolveIndexForEntity(entity).forEach(holder -> {
+                try {
+                    indexOps.createIndex(holder.getIndexDefinition());
+                } catch (Exception e) {
+                    // Keep starting: a missing index slows queries down, it does not break them. Duplicate
+                    // recommendations keep activity_idx from being built, see RecommendationDedupeRunner
+                    log.error("Failed to create index {} on {}: {}", holder.getIndexDefinition().getIndexOptions(),
+                            entity.getCollection(), e.getMessage());
+                }
+            });
+        }
+    }
 }
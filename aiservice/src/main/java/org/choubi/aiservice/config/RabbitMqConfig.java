@@ -1,14 +1,30 @@
 package org.choubi.aiservice.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 
 @Configuration
@@ -19,6 +35,28 @@ public class RabbitMqConfig {
     private String routingKey;
     @Value("${rabbitmq.queue.name}")
     private String queueName;
+    @Value("${rabbitmq.queue.backfill:activity.backfill.queue}")
+    private String backfillQueueName;
+    @Value("${rabbitmq.routing.backfillKey:activity.backfill}")
+    private String backfillRoutingKey;
+    @Value("${rabbitmq.exchanges.recommendations:recommendation.events}")
+    private String recommendationEventsExchangeName;
+    @Value("${ai.listener.prefetch:64}")
+    private int prefetch;
+    @Value("${ai.retry.delaysSeconds:10,60,600}")
+    private long[] retryDelaysSeconds;
+
+    // Set by activityservice on every event: "live" or "backfill"
+    public static final String LANE_HEADER = "x-activity-lane";
+    public static final String BACKFILL_LANE = "backfill";
+
+    public static String retryQueue(String queue, long delaySeconds) {
+        return queue + ".retry." + delaySeconds + "s";
+    }
+
+    public static String parkingLot(String queue) {
+        return queue + ".parking-lot";
+    }
 
 
     @Bean
@@ -37,7 +75,66 @@ public class RabbitMqConfig {
                 .with(routingKey);
     }
     @Bean
+    public Queue activityBackfillQueue() {
+        return new Queue(backfillQueueName, true);
+    }
+    @Bean
+    public Binding activityBackfillBinding() {
+        return BindingBuilder
+                .bind(activityBackfillQueue())
+                .to(activityExchange())
+                .with(backfillRoutingKey);
+    }
+    // Failed messages wait in the retry queue for their attempt, then expire back into the queue of their lane.
+    // After the last tier they go to the parking lot until replayed through /admin/parking-lot.
+    @Bean
+    public Declarables activityRetryQueues() {
+        List<Declarable> queues = new ArrayList<>();
+        for (String lane : List.of(queueName, backfillQueueName)) {
+            for (long delay : retryDelaysSeconds) {
+                queues.add(QueueBuilder.durable(retryQueue(lane, delay))
+                        .ttl((int) TimeUnit.SECONDS.toMillis(delay))
+                        .deadLetterExchange("")
+                        .deadLetterRoutingKey(lane)
+                        .build());
+            }
+        }
+        queues.add(QueueBuilder.durable(parkingLot(queueName)).build());
+        return new Declarables(queues);
+    }
+    // Stream subscribers can be connected to any instance, so each one gets a private queue on the fanout exchange
+    @Bean
+    public AnonymousQueue recommendationEventsQueue() {
+        return new AnonymousQueue();
+    }
+    @Bean
+    public FanoutExchange recommendationEventsExchange() {
+        return new FanoutExchange(recommendationEventsExchangeName);
+    }
+    @Bean
+    public Binding recommendationEventsBinding() {
+        return BindingBuilder
+                .bind(recommendationEventsQueue())
+                .to(recommendationEventsExchange());
+    }
+    // activityservice sends JSON or the binary event format; each message is read by its content type
+    @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(json);
+        converter.addDelegate(MimeTypeUtils.APPLICATION_JSON_VALUE, json);
+        converter.addDelegate(ActivityEventMessageConverter.CONTENT_TYPE, new ActivityEventMessageConverter(new ObjectMapper()));
+        return converter;
+    }
+    // Messages are acked when the listener's future completes; prefetch should be above ai.listener.maxInFlight
+    // so a freed slot can start on the next message without a broker round trip
+    @Bean
+    public SimpleRabbitListenerContainerFactory asyncActivityListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                      ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(prefetch);
+        return factory;
     }
 }
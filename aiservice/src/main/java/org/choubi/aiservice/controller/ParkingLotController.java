@@ -0,0 +1,49 @@
+package org.choubi.aiservice.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.choubi.aiservice.service.ParkingLotService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Operations only: not routed through the gateway
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/admin/parking-lot")
+public class ParkingLotController {
+
+    private final ParkingLotService parkingLotService;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getParkedCount() {
+        return ResponseEntity.ok(status());
+    }
+
+    /** Starts a replay in the background: 202 with its status, poll GET for progress. */
+    @PostMapping("/replay")
+    public ResponseEntity<Map<String, Object>> replay(@RequestParam(defaultValue = "100") int max,
+                                                      @RequestParam(defaultValue = "10") double perSecond) {
+        try {
+            parkingLotService.startReplay(max, perSecond);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(status());
+        }
+        return ResponseEntity.accepted().body(status());
+    }
+
+    private Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("parked", parkingLotService.countParked());
+        parkingLotService.lastReplay().ifPresent(replay -> status.put("replay", replay));
+        return status;
+    }
+}
@@ -2,13 +2,20 @@ package org.choubi.aiservice.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.service.RecommendationNotifier;
 import org.choubi.aiservice.service.RecommendationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.List;
 
 @RestController
@@ -17,6 +24,12 @@ import java.util.List;
 public class RecommendationController {
 
     private final RecommendationService recommendationService;
+    private final RecommendationNotifier recommendationNotifier;
+
+    @Value("${ai.stream.heartbeatSeconds:15}")
+    private long heartbeatSeconds;
+    @Value("${ai.stream.maxMinutes:30}")
+    private long maxMinutes;
 
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Recommendation>> getUserRecommendations(@PathVariable String userId) {
@@ -28,4 +41,23 @@ public class RecommendationController {
         return ResponseEntity.ok(recommendationService.getActivityRecommendations(activityId));
     }
 
+    /**
+     * A "recommendation" event for each new recommendation of the user, instead of polling. Only
+     * what is stored after connecting is sent, so clients read the list once after (re)connecting.
+     * Closed after maxMinutes; EventSource and most SSE clients reconnect on their own.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Recommendation>> streamRecommendations(@RequestHeader("X-USER-ID") String userId) {
+        Flux<ServerSentEvent<Recommendation>> recommendations = recommendationNotifier.subscribe(userId)
+                .map(recommendation -> ServerSentEvent.builder(recommendation)
+                        .id(recommendation.getId())
+                        .event("recommendation")
+                        .build());
+        // Keeps idle connections from being dropped by proxies on the way
+        Flux<ServerSentEvent<Recommendation>> heartbeats = Flux.interval(Duration.ofSeconds(heartbeatSeconds))
+                .map(tick -> ServerSentEvent.<Recommendation>builder().comment("keep-alive").build());
+        return Flux.merge(recommendations, heartbeats)
+                .take(Duration.ofMinutes(maxMinutes));
+    }
+
 }
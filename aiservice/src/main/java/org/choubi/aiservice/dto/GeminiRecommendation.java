@@ -0,0 +1,50 @@
+package org.choubi.aiservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * The JSON the model is asked to write, see the prompts in {@code ActivityAIService}. Anything it
+ * adds beyond that is ignored; {@code activityId} is only there in replies to a batch prompt.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record GeminiRecommendation(String activityId,
+                                   Analysis analysis,
+                                   List<Improvement> improvements,
+                                   List<Suggestion> suggestions,
+                                   List<SafetyTip> safety) {
+
+    public GeminiRecommendation withActivityId(String activityId) {
+        return new GeminiRecommendation(activityId, analysis, improvements, suggestions, safety);
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Analysis(String overall, String pace, String heartRate, String caloriesBurned) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Improvement(String area, String recommendation) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Suggestion(String workout, String description) {
+    }
+
+    // Usually a plain string; some replies wrap it as {"text": "..."}
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record SafetyTip(String text) {
+
+        @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+        public SafetyTip(@JsonProperty("text") String text) {
+            this.text = text;
+        }
+
+        @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+        public static SafetyTip of(String text) {
+            return new SafetyTip(text);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.choubi.aiservice.microRequestInterface;
+
+import org.choubi.aiservice.model.Activity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.service.annotation.GetExchange;
+import reactor.core.publisher.Mono;
+
+// Reads activities from activity-service when a recommendation is generated on demand (see ActivityServiceClientConfig)
+public interface ActivityServiceInterface {
+    @GetExchange("/activities/{id}")
+    Mono<Activity> getActivity(@PathVariable String id);
+}
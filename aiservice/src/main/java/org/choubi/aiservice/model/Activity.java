@@ -11,7 +11,6 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Data
 
@@ -23,7 +22,7 @@ public class Activity {
     private Integer duration;
     private Integer caloriesBurned;
     private LocalDateTime startTime;
-    private Map<String,Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
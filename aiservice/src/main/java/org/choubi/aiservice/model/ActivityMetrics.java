@@ -0,0 +1,191 @@
+package org.choubi.aiservice.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copy of activityservice's typed metrics, read from activity events. Absent values are
+ * {@code NaN} for decimals and {@code 0} for counts; unknown keys are kept in {@code extra}.
+ */
+@Data
+@NoArgsConstructor
+@JsonSerialize(using = ActivityMetrics.JsonWriter.class)
+@JsonDeserialize(using = ActivityMetrics.JsonReader.class)
+public class ActivityMetrics {
+    public static final String DISTANCE = "distance";
+    public static final String PACE = "pace";
+    public static final String ELEVATION_GAIN = "elevationGain";
+    public static final String AVG_HEART_RATE = "avgHeartRate";
+    public static final String MAX_HEART_RATE = "maxHeartRate";
+    public static final String CADENCE = "cadence";
+
+    private double distance = Double.NaN; // km
+    private double pace = Double.NaN; // minutes per km
+    private double elevationGain = Double.NaN; // m
+    private int avgHeartRate; // bpm
+    private int maxHeartRate; // bpm
+    private int cadence; // steps or strokes per minute
+    private Map<String, Object> extra; // null when there are no unknown keys
+
+    public static boolean isPresent(double value) {
+        return !Double.isNaN(value);
+    }
+
+    public static boolean isPresent(int value) {
+        return value != 0;
+    }
+
+    /** Maps older spellings onto the current key names. */
+    public static String canonicalKey(String key) {
+        return switch (key) {
+            case "heartRate", "averageHeartRate", "avgHr" -> AVG_HEART_RATE;
+            case "maxHr" -> MAX_HEART_RATE;
+            case "elevation" -> ELEVATION_GAIN;
+            case "distanceKm" -> DISTANCE;
+            default -> key;
+        };
+    }
+
+    public boolean isEmpty() {
+        return !isPresent(distance) && !isPresent(pace) && !isPresent(elevationGain)
+                && !isPresent(avgHeartRate) && !isPresent(maxHeartRate) && !isPresent(cadence)
+                && (extra == null || extra.isEmpty());
+    }
+
+    /**
+     * Stores a raw value as sent by a client or found in a legacy document. Known keys with a
+     * numeric value (or a numeric string) go to their field; blank values are dropped; anything
+     * else is kept in {@code extra} under its original key.
+     */
+    public void put(String key, Object value) {
+        if (value == null || (value instanceof String text && text.isBlank())) {
+            return;
+        }
+        String canonical = canonicalKey(key);
+        if (isKnown(canonical)) {
+            double number = toDouble(value);
+            if (!Double.isNaN(number)) {
+                set(canonical, number);
+                return;
+            }
+        }
+        if (extra == null) {
+            extra = new LinkedHashMap<>();
+        }
+        extra.put(key, value);
+    }
+
+    private static boolean isKnown(String key) {
+        return switch (key) {
+            case DISTANCE, PACE, ELEVATION_GAIN, AVG_HEART_RATE, MAX_HEART_RATE, CADENCE -> true;
+            default -> false;
+        };
+    }
+
+    private void set(String key, double number) {
+        switch (key) {
+            case DISTANCE -> distance = number;
+            case PACE -> pace = number;
+            case ELEVATION_GAIN -> elevationGain = number;
+            case AVG_HEART_RATE -> avgHeartRate = (int) Math.round(number);
+            case MAX_HEART_RATE -> maxHeartRate = (int) Math.round(number);
+            case CADENCE -> cadence = (int) Math.round(number);
+            default -> throw new IllegalArgumentException("Unknown metric: " + key);
+        }
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        if (isPresent(distance)) sb.append(DISTANCE).append('=').append(distance).append(", ");
+        if (isPresent(pace)) sb.append(PACE).append('=').append(pace).append(", ");
+        if (isPresent(elevationGain)) sb.append(ELEVATION_GAIN).append('=').append(elevationGain).append(", ");
+        if (isPresent(avgHeartRate)) sb.append(AVG_HEART_RATE).append('=').append(avgHeartRate).append(", ");
+        if (isPresent(maxHeartRate)) sb.append(MAX_HEART_RATE).append('=').append(maxHeartRate).append(", ");
+        if (isPresent(cadence)) sb.append(CADENCE).append('=').append(cadence).append(", ");
+        if (extra != null) extra.forEach((key, value) -> sb.append(key).append('=').append(value).append(", "));
+        if (sb.length() > 1) sb.setLength(sb.length() - 2);
+        return sb.append('}').toString();
+    }
+
+    // Streams the primitives straight to the generator instead of going through a Map
+    public static class JsonWriter extends JsonSerializer<ActivityMetrics> {
+        @Override
+        public void serialize(ActivityMetrics metrics, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            if (isPresent(metrics.distance)) gen.writeNumberField(DISTANCE, metrics.distance);
+            if (isPresent(metrics.pace)) gen.writeNumberField(PACE, metrics.pace);
+            if (isPresent(metrics.elevationGain)) gen.writeNumberField(ELEVATION_GAIN, metrics.elevationGain);
+            if (isPresent(metrics.avgHeartRate)) gen.writeNumberField(AVG_HEART_RATE, metrics.avgHeartRate);
+            if (isPresent(metrics.maxHeartRate)) gen.writeNumberField(MAX_HEART_RATE, metrics.maxHeartRate);
+            if (isPresent(metrics.cadence)) gen.writeNumberField(CADENCE, metrics.cadence);
+            if (metrics.extra != null) {
+                for (Map.Entry<String, Object> entry : metrics.extra.entrySet()) {
+                    gen.writeFieldName(entry.getKey());
+                    provider.defaultSerializeValue(entry.getValue(), gen);
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    public static class JsonReader extends JsonDeserializer<ActivityMetrics> {
+        @Override
+        public ActivityMetrics deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            ActivityMetrics metrics = new ActivityMetrics();
+            if (p.currentToken() == JsonToken.START_OBJECT) {
+                p.nextToken();
+            }
+            for (; p.currentToken() == JsonToken.FIELD_NAME; p.nextToken()) {
+                String key = p.currentName();
+                JsonToken value = p.nextToken();
+                String canonical = canonicalKey(key);
+                if ((value == JsonToken.VALUE_NUMBER_FLOAT || value == JsonToken.VALUE_NUMBER_INT) && isKnown(canonical)) {
+                    metrics.set(canonical, p.getDoubleValue());
+                    continue;
+                }
+                metrics.put(key, readExtra(p, value, ctxt));
+            }
+            return metrics;
+        }
+
+        // Scalars are read directly; only nested objects and arrays need a deserializer lookup
+        private static Object readExtra(JsonParser p, JsonToken value, DeserializationContext ctxt) throws IOException {
+            return switch (value) {
+                case VALUE_STRING -> p.getText();
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> p.getNumberValue();
+                case VALUE_TRUE -> Boolean.TRUE;
+                case VALUE_FALSE -> Boolean.FALSE;
+                case VALUE_NULL -> null;
+                default -> ctxt.readValue(p, Object.class);
+            };
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.choubi.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Gemini's answer for one set of normalized activity features, shared by every activity with the
+ * same features. Only answers that parsed are kept, never the default recommendation.
+ */
+@Document(collection = "recommendation_cache")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CachedRecommendation {
+
+    @Id
+    private String id; // RecommendationFeatures.key()
+    private String recommendation;
+    private List<String> improvements;
+    private List<String> suggestions;
+    private List<String> safety;
+    // Long enough to cover the usual weekly routine, short enough that prompt changes roll out
+    @Indexed(name = "created_ttl_idx", expireAfter = "7d")
+    private LocalDateTime createdAt;
+}
@@ -1,20 +1,30 @@
 package org.choubi.aiservice.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Document(collection = "recommendations")
+@CompoundIndex(name = "user_created_idx", def = "{'userId': 1, 'createdAt': -1}")
 @Data
 @Builder
+@AllArgsConstructor
+@NoArgsConstructor
 public class Recommendation {
+    public static final String ACTIVITY_INDEX = "activity_idx";
+
     @Id
     private String id;
+    @Indexed(name = ACTIVITY_INDEX, unique = true)
     private String activityId;
     private String userId;
     private String activityType;
@@ -0,0 +1,29 @@
+package org.choubi.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Taken by the consumer that generates the recommendation of an activity, so a redelivered or
+ * duplicated event does not call Gemini a second time while the first is still at it.
+ */
+@Document(collection = "recommendation_claims")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationClaim {
+
+    @Id
+    private String id; // activityId
+    // Once the recommendation is stored the claim is not needed any more; a day covers the retry tiers
+    @Indexed(name = "claimed_ttl_idx", expireAfter = "24h")
+    private LocalDateTime claimedAt;
+}
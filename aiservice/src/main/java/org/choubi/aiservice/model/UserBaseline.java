@@ -0,0 +1,112 @@
+package org.choubi.aiservice.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * What a user's activities of one type usually look like, updated with every activity that got a
+ * recommendation. Pace and calories per minute are rolling averages that follow recent form;
+ * durations go into a histogram of {@value #DURATION_BUCKET_MINUTES}-minute buckets for percentiles.
+ */
+@Document(collection = "user_baselines")
+@Data
+@NoArgsConstructor
+public class UserBaseline {
+    public static final int DURATION_BUCKET_MINUTES = 5;
+    // Four hours; anything longer goes into the last bucket
+    public static final int DURATION_BUCKETS = 48;
+
+    @Id
+    private String id; // userId:activityType
+    private String userId;
+    private ActivityType activityType;
+    private long count;
+    private Rolling pace = new Rolling(); // minutes per km
+    private Rolling caloriesPerMinute = new Rolling();
+    private Rolling avgHeartRate = new Rolling();
+    private int[] durationHistogram = new int[DURATION_BUCKETS];
+    private LocalDateTime updatedAt;
+
+    public UserBaseline(String userId, ActivityType activityType) {
+        this.id = idOf(userId, activityType);
+        this.userId = userId;
+        this.activityType = activityType;
+    }
+
+    public static String idOf(String userId, ActivityType activityType) {
+        return userId + ":" + activityType;
+    }
+
+    public void record(Activity activity) {
+        count++;
+        Integer duration = activity.getDuration();
+        if (duration != null && duration > 0) {
+            durationHistogram[Math.min(duration / DURATION_BUCKET_MINUTES, DURATION_BUCKETS - 1)]++;
+            if (activity.getCaloriesBurned() != null && activity.getCaloriesBurned() > 0) {
+                caloriesPerMinute.add(activity.getCaloriesBurned() / (double) duration);
+            }
+        }
+        ActivityMetrics metrics = activity.getAdditionalMetrics();
+        if (metrics != null) {
+            if (ActivityMetrics.isPresent(metrics.getPace())) pace.add(metrics.getPace());
+            if (ActivityMetrics.isPresent(metrics.getAvgHeartRate())) avgHeartRate.add(metrics.getAvgHeartRate());
+        }
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Duration in minutes below which the given share of past activities fell, to the start of its
+     * {@value #DURATION_BUCKET_MINUTES}-minute bucket; -1 without any.
+     */
+    public int durationPercentile(double percentile) {
+        long total = 0;
+        for (int bucket : durationHistogram) total += bucket;
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < durationHistogram.length; i++) {
+            seen += durationHistogram[i];
+            if (seen >= Math.max(rank, 1)) {
+                return i * DURATION_BUCKET_MINUTES;
+            }
+        }
+        return (DURATION_BUCKETS - 1) * DURATION_BUCKET_MINUTES;
+    }
+
+    /**
+     * Exponentially weighted mean and variance. The first samples are weighted 1/n, which is the
+     * plain average, so a handful of activities already gives a usable baseline.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Rolling {
+        private static final double ALPHA = 0.1;
+
+        private long samples;
+        private double mean;
+        private double variance;
+
+        public void add(double value) {
+            samples++;
+            double weight = Math.max(ALPHA, 1.0 / samples);
+            double delta = value - mean;
+            mean += weight * delta;
+            variance = (1 - weight) * (variance + weight * delta * delta);
+        }
+
+        /** Standard deviations from the mean; 0 until there are two samples. Never below 2% of the mean. */
+        public double zScore(double value) {
+            if (samples < 2) {
+                return 0;
+            }
+            double deviation = Math.max(Math.sqrt(variance), Math.abs(mean) * 0.02);
+            return deviation == 0 ? 0 : (value - mean) / deviation;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.choubi.aiservice.repository;
+
+import org.choubi.aiservice.model.CachedRecommendation;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CachedRecommendationRepository extends MongoRepository<CachedRecommendation, String> {
+}
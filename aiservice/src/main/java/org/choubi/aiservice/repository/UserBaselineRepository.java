@@ -0,0 +1,9 @@
+package org.choubi.aiservice.repository;
+
+import org.choubi.aiservice.model.UserBaseline;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserBaselineRepository extends MongoRepository<UserBaseline, String> {
+}
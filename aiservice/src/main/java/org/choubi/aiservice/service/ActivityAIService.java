@@ -1,198 +1,312 @@
 package org.choubi.aiservice.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.dto.GeminiRecommendation;
 import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.CachedRecommendation;
 import org.choubi.aiservice.model.Recommendation;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ActivityAIService {
+    private static final GeminiResponseParser PARSER = new GeminiResponseParser();
+    // What the model must reply with for one activity; the batch prompt adds "activityId"
+    private static final String RECOMMENDATION_FORMAT = """
+                "analysis":{
+                    "overall":"Overall analysis here",
+                    "pace":"Pace analysis here",
+                    "heartRate":"Heart rate analysis here",
+                    "caloriesBurned":"Calories analysis here"
+                },
+                "improvements":[
+                    {
+                       "area":"Area to improve",
+                       "recommendation":"Detailed recommendation"
+                    }
+                ],
+                "suggestions":[
+                    {
+                       "workout":"Workout name",
+                       "description":"Detailed Workout description"
+                    }
+                ],
+                "safety":[
+                   "Safety point 1",
+                   "Safety point 2"
+                ]""";
+    private static final String DEFAULT_RECOMMENDATION = "Based on your recent activity, maintain a consistent pace and monitor your heart rate to optimize performance. Consider incorporating interval training to enhance endurance and calorie burn. Always ensure proper hydration and warm-up routines to prevent injuries.";
+
     private final GeminiService geminiService;
+    private final RecommendationCache recommendationCache;
+    private final UserBaselineService userBaselineService;
+    private final LocalRecommendationEngine localRecommendationEngine;
+    private final MeterRegistry meterRegistry;
 
-    public Recommendation generateActivityRecommendation(Activity activity) {
-        String prompt = createPromptForActivity(activity);
-        log.info("Generating activity recommendation for prompt: {}", prompt);
-        String response;
-        try {
-            response = geminiService.getGeminiResponse(prompt);
-        } catch (WebClientResponseException e) {
-            // On transient errors (e.g., 503/429) or other HTTP errors, fall back to a default recommendation
-            log.error("Gemini API call failed: status={}, message={}", e.getStatusCode().value(), e.getMessage());
-            return generateDefaultRecommendation(activity);
-        } catch (Exception e) {
-            log.error("Unexpected error when calling Gemini API: {}", e.getMessage(), e);
-            return generateDefaultRecommendation(activity);
+    @Value("${ai.local.enabled:true}")
+    private boolean localEnabled;
+    @Value("${ai.local.primary:false}")
+    private boolean localPrimary;
+    @Value("${ai.retry.enabled:true}")
+    private boolean retryEnabled;
+    @Value("${ai.batch.enabled:false}")
+    private boolean batchEnabled;
+    @Value("${ai.batch.maxItems:8}")
+    private int batchMaxItems;
+    @Value("${ai.batch.maxWaitMs:200}")
+    private long batchMaxWaitMs;
+    @Value("${ai.batch.concurrency:4}")
+    private int batchConcurrency;
+    private RecommendationBatcher batcher;
+
+    @PostConstruct
+    void startBatching() {
+        if (batchEnabled) {
+            batcher = new RecommendationBatcher(batchMaxItems, Duration.ofMillis(batchMaxWaitMs), batchConcurrency, this::askGemini);
         }
-        log.info("Received response from GeminiService: {}", response);
-        Recommendation processedResponse = proccessAIResponse(activity,response);
-        log.info("Processed AI response: {}", processedResponse);
-        return processedResponse;
     }
 
-    public Recommendation proccessAIResponse(Activity activity,String aiResponse)  {
+    @PreDestroy
+    void stopBatching() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
-        try{
-            // Parse the raw Gemini API JSON
-            JsonNode root = mapper.readTree(aiResponse);
-            JsonNode textNode = root.path("candidates")
-                    .path(0)
-                    .path("content")
-                    .path("parts")
-                    .path(0)
-                    .path("text");
-
-            if (textNode.isMissingNode() || textNode.isNull()) {
-                log.error("AI response missing candidates[0].content.parts[0].text; using default recommendation");
-                return generateDefaultRecommendation(activity);
-            }
+    /**
+     * With {@code ai.local.primary} the local engine answers activities in line with the user's
+     * baseline and only the others reach the cache and Gemini. The activity joins the baseline
+     * once it has its recommendation.
+     */
+    public Mono<Recommendation> generateActivityRecommendation(Activity activity) {
+        return userBaselineService.lookup(activity)
+                .flatMap(baseline -> {
+                    if (localEnabled && localPrimary && !localRecommendationEngine.deviates(activity, baseline)) {
+                        meterRegistry.counter("ai.recommendation.local", "reason", "primary").increment();
+                        return Mono.just(localRecommendationEngine.recommend(activity, baseline));
+                    }
+                    return fromCacheOrGemini(activity);
+                })
+                .doOnNext(recommendation -> userBaselineService.record(activity));
+    }
 
-            String text = textNode.asText();
-            // Strip markdown code fences like ```json ... ``` or ``` ... ```
-            String cleaned = text.trim()
-                    .replaceFirst("^```(?i:json)?\\s*", "")
-                    .replaceFirst("\\s*```$", "")
-                    .trim();
-
-            // Validate and normalize to compact JSON
-            try {
-                JsonNode JsonContent = mapper.readTree(cleaned);
-
-                StringBuilder analysis = new StringBuilder();
-                JsonNode analysisNode = JsonContent.path("analysis");
-                addAnalysisSection(analysisNode, analysis,"overall","Overall Analysis :");
-                addAnalysisSection(analysisNode, analysis,"pace","\nPace Analysis :");
-                addAnalysisSection(analysisNode, analysis,"heartRate","\n Heart Rate Analysis");
-                addAnalysisSection(analysisNode, analysis,"caloriesBurned","\n Calories Burned Analysis :");
-
-                List<String> improvements = new ArrayList<>();
-                JsonNode improvementsNode = JsonContent.path("improvements");
-                extractImprovements(improvementsNode, improvements);
-
-                List<String> suggestions = new ArrayList<>();
-                JsonNode suggestionsNode = JsonContent.path("suggestions");
-                extractSuggestions(suggestionsNode, suggestions);
-
-                List<String> safetyTips = new ArrayList<String>();
-                JsonNode safetyNode = JsonContent.path("safety");
-                extractSafetyTips(safetyNode, safetyTips);
-
-                Recommendation recommendation = Recommendation.builder()
-                        .activityId(activity.getId())
-                        .userId(activity.getUserId())
-                        .activityType(activity.getType().toString())
-                        .recommendation(analysis.toString())
-                        .improvements(improvements)
-                        .suggestions(suggestions)
-                        .safety(safetyTips)
-                        .createdAt(LocalDateTime.now())
-                        .build();
-
-                return recommendation;
-
-            } catch (JsonProcessingException e) {
-                // If it's not valid JSON after cleaning, return default recommendation
-                log.warn("Inner AI text is not valid JSON after cleaning; using default recommendation. Error: {}", e.getMessage());
-                return generateDefaultRecommendation(activity);
-            }
+    private Mono<Recommendation> fromCacheOrGemini(Activity activity) {
+        RecommendationFeatures features = recommendationCache.features(activity);
+        String key = features.key();
+        return recommendationCache.lookup(key)
+                .map(cached -> fromCache(activity, cached))
+                .switchIfEmpty(Mono.defer(() -> batcher != null && activity.getId() != null
+                        ? batcher.submit(activity, features, key)
+                        : askGemini(activity, features, key)));
+    }
 
-        }catch(JsonProcessingException e){
-            log.error("Failed to parse AI response: {}", e.getMessage(), e);
-            return generateDefaultRecommendation(activity);
+    // One prompt for the whole batch; activities the reply leaves out are asked for on their own
+    private Mono<Void> askGemini(List<RecommendationBatcher.Item> batch) {
+        meterRegistry.summary("gemini.batch.size").record(batch.size());
+        if (batch.size() == 1) {
+            RecommendationBatcher.Item item = batch.get(0);
+            return askGemini(item.activity(), item.features(), item.cacheKey()).doOnNext(item::complete).doOnError(item::fail).then();
         }
+        List<Activity> activities = batch.stream().map(RecommendationBatcher.Item::activity).toList();
+        String prompt = createPromptForActivities(batch);
+        log.info("Generating recommendations for {} activities with prompt: {}", batch.size(), prompt);
+        return geminiService.getGeminiResponse(prompt)
+                .map(response -> proccessAIResponse(activities, response))
+                .onErrorResume(e -> {
+                    if (retryLater(e)) {
+                        batch.forEach(item -> item.fail(e));
+                        return Mono.empty();
+                    }
+                    log.warn("Batch Gemini call failed, asking for each activity on its own: {}", e.getMessage());
+                    return Mono.just(Map.of());
+                })
+                .flatMapMany(recommendations -> Flux.fromIterable(batch).flatMap(item -> {
+                    Recommendation recommendation = recommendations.get(item.activity().getId());
+                    if (recommendation == null) {
+                        meterRegistry.counter("gemini.batch.missing").increment();
+                        return askGemini(item.activity(), item.features(), item.cacheKey())
+                                .doOnNext(item::complete)
+                                .doOnError(item::fail)
+                                .onErrorResume(e -> Mono.empty());
+                    }
+                    recommendationCache.store(item.cacheKey(), recommendation);
+                    item.complete(recommendation);
+                    return Mono.just(recommendation);
+                }))
+                .then();
     }
 
-    public Recommendation generateDefaultRecommendation(Activity activity) {
-        String defaultText = "Based on your recent activity, maintain a consistent pace and monitor your heart rate to optimize performance. Consider incorporating interval training to enhance endurance and calorie burn. Always ensure proper hydration and warm-up routines to prevent injuries.";
+    private Mono<Recommendation> askGemini(Activity activity, RecommendationFeatures features, String cacheKey) {
+        String prompt = createPromptForActivity(features);
+        log.info("Generating activity recommendation for prompt: {}", prompt);
+        return geminiService.getGeminiResponse(prompt)
+                .map(response -> {
+                    log.info("Received response from GeminiService: {}", response);
+                    GeminiRecommendation content = PARSER.parse(response);
+                    if (content == null) {
+                        return generateDefaultRecommendation(activity);
+                    }
+                    Recommendation processedResponse = toRecommendation(activity, content);
+                    log.info("Processed AI response: {}", processedResponse);
+                    recommendationCache.store(cacheKey, processedResponse);
+                    return processedResponse;
+                })
+                .onErrorResume(e -> {
+                    if (retryLater(e)) {
+                        log.warn("Gemini unavailable for activity {}, leaving it for a retry: {}", activity.getId(), e.getMessage());
+                        return Mono.error(e);
+                    }
+                    if (e instanceof GeminiUnavailableException) {
+                        log.warn("Skipping Gemini for activity {}: {}", activity.getId(), e.getMessage());
+                    } else if (e instanceof WebClientResponseException responseException) {
+                        // On transient errors (e.g., 503/429) or other HTTP errors, fall back to a default recommendation
+                        log.error("Gemini API call failed: status={}, message={}", responseException.getStatusCode().value(), e.getMessage());
+                    } else {
+                        log.error("Unexpected error when calling Gemini API: {}", e.getMessage(), e);
+                    }
+                    return Mono.just(generateDefaultRecommendation(activity));
+                });
+    }
+
+    // An outage is worth waiting out in the retry queues rather than answering with the default text
+    private boolean retryLater(Throwable e) {
+        return retryEnabled && (e instanceof GeminiUnavailableException || GeminiService.isOutage(e));
+    }
+
+    private static Recommendation fromCache(Activity activity, CachedRecommendation cached) {
         return Recommendation.builder()
                 .activityId(activity.getId())
                 .userId(activity.getUserId())
                 .activityType(activity.getType().toString())
-                .recommendation(defaultText)
-                .improvements(new ArrayList<>())
-                .suggestions(new ArrayList<>())
-                .safety(new ArrayList<>())
+                .recommendation(cached.getRecommendation())
+                .improvements(cached.getImprovements())
+                .suggestions(cached.getSuggestions())
+                .safety(cached.getSafety())
                 .createdAt(LocalDateTime.now())
                 .build();
     }
 
-    private void extractSafetyTips(JsonNode safetyNode, List<String> safetyTips) {
-        if(safetyNode.isArray()){
-            safetyNode.forEach(tip->{
-                if (tip.isTextual()) {
-                    safetyTips.add(tip.asText());
-                } else if (tip.isObject()) {
-                    // if AI returns objects, try a 'text' field fallback
-                    String val = tip.path("text").asText(null);
-                    if (val != null) safetyTips.add(val);
-                }
-            });
+    public Recommendation proccessAIResponse(Activity activity,String aiResponse)  {
+        GeminiRecommendation content = PARSER.parse(aiResponse);
+        if (content == null) {
+            return generateDefaultRecommendation(activity);
         }
+        return toRecommendation(activity, content);
     }
 
-    private void extractSuggestions(JsonNode suggestionsNode, List<String> suggestions) {
-        if(suggestionsNode.isArray()){
-            suggestionsNode.forEach(suggestion->{
-                String workout = suggestion.path("workout").asText();
-                String description = suggestion.path("description").asText();
-                suggestions.add(String.format("%s : %s", workout, description));
-            });
+    /**
+     * Splits the reply to a batch prompt into one recommendation per activity, by activity id.
+     * Activities the reply does not cover are left out of the map.
+     */
+    public Map<String, Recommendation> proccessAIResponse(List<Activity> activities, String aiResponse) {
+        Map<String, Recommendation> recommendations = new HashMap<>();
+        Map<String, GeminiRecommendation> byId = PARSER.parseBatch(aiResponse);
+        for (Activity activity : activities) {
+            GeminiRecommendation item = byId.get(activity.getId());
+            if (item != null) {
+                recommendations.put(activity.getId(), toRecommendation(activity, item));
+            }
         }
+        return recommendations;
     }
 
-    private void extractImprovements(JsonNode improvementsNode, List<String> improvements) {
-        if (improvementsNode.isArray()) {
-            for (JsonNode improvement : improvementsNode) {
-                String area = improvement.path("area").asText();
-                String recommendation = improvement.path("recommendation").asText();
-                improvements.add(String.format("%s : %s", area, recommendation));
+    private Recommendation toRecommendation(Activity activity, GeminiRecommendation content) {
+        GeminiRecommendation.Analysis analysis = content.analysis();
+        String recommendation = analysis == null
+                ? analysisText(null, null, null, null)
+                : analysisText(analysis.overall(), analysis.pace(), analysis.heartRate(), analysis.caloriesBurned());
+
+        List<String> improvements = new ArrayList<>();
+        if (content.improvements() != null) {
+            for (GeminiRecommendation.Improvement improvement : content.improvements()) {
+                if (improvement != null) {
+                    improvements.add(text(improvement.area()) + " : " + text(improvement.recommendation()));
+                }
+            }
+        }
+
+        List<String> suggestions = new ArrayList<>();
+        if (content.suggestions() != null) {
+            for (GeminiRecommendation.Suggestion suggestion : content.suggestions()) {
+                if (suggestion != null) {
+                    suggestions.add(text(suggestion.workout()) + " : " + text(suggestion.description()));
+                }
             }
         }
 
+        List<String> safetyTips = new ArrayList<>();
+        if (content.safety() != null) {
+            for (GeminiRecommendation.SafetyTip tip : content.safety()) {
+                if (tip != null && tip.text() != null) {
+                    safetyTips.add(tip.text());
+                }
+            }
+        }
+
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType().toString())
+                .recommendation(recommendation)
+                .improvements(improvements)
+                .suggestions(suggestions)
+                .safety(safetyTips)
+                .createdAt(LocalDateTime.now())
+                .build();
     }
 
-    private void addAnalysisSection(JsonNode jsonContent, StringBuilder recommandation, String node, String prefix) {
-        recommandation.append(prefix)
-                .append(jsonContent.path(node).asText());
+    // Whenever Gemini has no usable answer; the fixed text is only left for ai.local.enabled=false
+    public Recommendation generateDefaultRecommendation(Activity activity) {
+        if (localEnabled) {
+            meterRegistry.counter("ai.recommendation.local", "reason", "fallback").increment();
+            return localRecommendationEngine.recommend(activity, userBaselineService.peek(activity));
+        }
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType().toString())
+                .recommendation(DEFAULT_RECOMMENDATION)
+                .improvements(new ArrayList<>())
+                .suggestions(new ArrayList<>())
+                .safety(new ArrayList<>())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    // The layout recommendations have always been stored in, whoever wrote them
+    static String analysisText(String overall, String pace, String heartRate, String caloriesBurned) {
+        return "Overall Analysis :" + text(overall)
+                + "\nPace Analysis :" + text(pace)
+                + "\n Heart Rate Analysis" + text(heartRate)
+                + "\n Calories Burned Analysis :" + text(caloriesBurned);
     }
 
-    private String createPromptForActivity(Activity activity) {
+    private static String text(String value) {
+        return value != null ? value : "";
+    }
+
+    // Built from the normalized features, so every activity sharing a cache key gets the same prompt
+    private String createPromptForActivity(RecommendationFeatures features) {
         return String.format("""
                 Analyze this fitness activity and provide detailed recommendations in the following EXACT JSON format:
                 {
-                    "analysis":{
-                        "overall":"Overall analysis here",
-                        "pace":"Pace analysis here",
-                        "heartRate":"Heart rate analysis here",
-                        "caloriesBurned":"Calories analysis here"
-                    },
-                    "improvements":[
-                        {
-                           "area":"Area to improve",
-                           "recommendation":"Detailed recommendation"
-                        }
-                    ],
-                    "suggestions":[
-                        {
-                           "workout":"Workout name",
-                           "description":"Detailed Workout description"
-                        }
-                    ],
-                    "safety":[
-                       "Safety point 1",
-                       "Safety point 2"
-                    ]
+                %s
                 }
                 
                 Analyze this activity:
@@ -204,10 +318,36 @@ public class ActivityAIService {
                 Provide detailed analysis focusing on performance, improvements, next workout suggestions, and safety tips.
                 Respond with ONLY the JSON object above; do not include code fences or any extra text.
                 """,
-                activity.getType(),
-                activity.getDuration(),
-                activity.getCaloriesBurned(),
-                activity.getAdditionalMetrics()
+                RECOMMENDATION_FORMAT,
+                features.type(),
+                features.duration(),
+                features.caloriesBurned(),
+                features.metrics()
+        );
+    }
+
+    private String createPromptForActivities(List<RecommendationBatcher.Item> batch) {
+        StringBuilder activities = new StringBuilder();
+        for (RecommendationBatcher.Item item : batch) {
+            RecommendationFeatures features = item.features();
+            activities.append(String.format("- Activity ID: %s, Type: %s, Duration: %d minutes, Calories Burned: %d, Additional Metrics: %s%n",
+                    item.activity().getId(), features.type(), features.duration(), features.caloriesBurned(), features.metrics()));
+        }
+        return String.format("""
+                Analyze each of the following fitness activities on its own and provide detailed recommendations.
+                Reply with a JSON array holding one object per activity, each in the following EXACT JSON format:
+                {
+                    "activityId":"The activity ID given below",
+                %s
+                }
+                
+                Analyze these activities:
+                %s
+                Provide detailed analysis focusing on performance, improvements, next workout suggestions, and safety tips.
+                Respond with ONLY the JSON array; do not include code fences or any extra text.
+                """,
+                RECOMMENDATION_FORMAT,
+                activities
         );
     }
 }
@@ -5,27 +5,59 @@ import lombok.extern.slf4j.Slf4j;
 import org.choubi.aiservice.model.Activity;
 import org.choubi.aiservice.model.Recommendation;
 import org.choubi.aiservice.repository.RecommendationRepository;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+// One message at a time per consumer; AsyncActivityMessageListener is used unless ai.listener.mode is "blocking".
+// The lanes are weighted by their number of consumers.
 @Service
 @RequiredArgsConstructor
 @Slf4j
+@ConditionalOnProperty(name = "ai.listener.mode", havingValue = "blocking")
 public class ActivityMessageListener {
 
     private final ActivityAIService activityService;
     private final RecommendationRepository recommendationRepository;
+    private final ActivityRetryPublisher retryPublisher;
+    private final RecommendationGenerationPolicy generationPolicy;
+    private final RecommendationClaims claims;
 
-    @RabbitListener(queues = "activity.queue")
-    public void handleActivityMessage(Activity activity) {
+    @RabbitListener(queues = "activity.queue", concurrency = "${ai.listener.liveConsumers:1}")
+    public void handleActivityMessage(Activity activity, Message message) {
         log.info("Received activity message: {}" , activity);
+        process(activity, message);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.backfill:activity.backfill.queue}", concurrency = "${ai.listener.backfillConsumers:1}")
+    public void handleBackfillMessage(Activity activity, Message message) {
+        log.info("Received backfill activity message: {}" , activity);
+        process(activity, message);
+    }
+
+    private void process(Activity activity, Message message) {
+        if (!generationPolicy.generateOnArrival(activity)) {
+            return;
+        }
+        RecommendationClaims.Outcome claim = claims.claim(activity.getId());
+        if (claim == RecommendationClaims.Outcome.DONE) {
+            log.info("Recommendation for activity {} already exists, skipping", activity.getId());
+            return;
+        }
+        if (claim == RecommendationClaims.Outcome.BUSY) {
+            retryPublisher.retryOrPark(message, new IllegalStateException("Activity " + activity.getId() + " is being processed by another consumer"));
+            return;
+        }
         try {
-            Recommendation recommendation = activityService.generateActivityRecommendation(activity);
+            Recommendation recommendation = activityService.generateActivityRecommendation(activity).block();
             recommendationRepository.save(recommendation);
             log.info("Generated Recommendation : {}" , recommendation);
         } catch (Exception e) {
             log.error("Failed to generate recommendation for activity {}: {}", activity.getId(), e.getMessage(), e);
-            // Swallow exception so the message isn't requeued endlessly; consider routing to a DLQ instead.
+            claims.release(activity.getId());
+            // Not requeued here, which would spin on the same failure: it comes back after the retry delay
+            retryPublisher.retryOrPark(message, e);
         }
     }
 }
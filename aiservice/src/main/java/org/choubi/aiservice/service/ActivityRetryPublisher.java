@@ -0,0 +1,85 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.config.RabbitMqConfig;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends an activity message that could not be processed to the next retry queue, or to the
+ * parking lot once every tier was tried. The message goes as received, so JSON and binary events
+ * come back unchanged; {@value #RETRY_COUNT_HEADER} counts the attempts.
+ */
+@Slf4j
+@Service
+public class ActivityRetryPublisher {
+
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+    public static final String LAST_ERROR_HEADER = "x-last-error";
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String queueName;
+    private final String backfillQueueName;
+    private final long[] retryDelaysSeconds;
+    private final boolean enabled;
+
+    public ActivityRetryPublisher(RabbitTemplate rabbitTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${rabbitmq.queue.name}") String queueName,
+                                  @Value("${rabbitmq.queue.backfill:activity.backfill.queue}") String backfillQueueName,
+                                  @Value("${ai.retry.delaysSeconds:10,60,600}") long[] retryDelaysSeconds,
+                                  @Value("${ai.retry.enabled:true}") boolean enabled) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.meterRegistry = meterRegistry;
+        this.queueName = queueName;
+        this.backfillQueueName = backfillQueueName;
+        this.retryDelaysSeconds = retryDelaysSeconds;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Schedules the message for another attempt. With retries turned off the message is dropped,
+     * as before. If the broker does not take it, the original is requeued rather than lost.
+     */
+    public void retryOrPark(Message message, Throwable failure) {
+        if (!enabled) {
+            return;
+        }
+        int attempt = message.getMessageProperties().getHeaders().get(RETRY_COUNT_HEADER) instanceof Number n ? n.intValue() : 0;
+        String error = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+        // Retries come back to the lane they were consumed from
+        String origin = backfillQueueName.equals(message.getMessageProperties().getConsumerQueue()) ? backfillQueueName : queueName;
+        try {
+            if (attempt < retryDelaysSeconds.length) {
+                long delay = retryDelaysSeconds[attempt];
+                send(RabbitMqConfig.retryQueue(origin, delay), message, attempt + 1, error);
+                meterRegistry.counter("ai.retry.scheduled", "delay", delay + "s").increment();
+                log.warn("Retrying message in {}s (attempt {}/{})", delay, attempt + 1, retryDelaysSeconds.length);
+            } else {
+                send(RabbitMqConfig.parkingLot(queueName), message, attempt, error);
+                meterRegistry.counter("ai.retry.parked").increment();
+                log.error("Parked message after {} retries: {}", attempt, error);
+            }
+        } catch (AmqpException e) {
+            throw new ImmediateRequeueAmqpException("Could not schedule a retry, requeueing the message", e);
+        }
+    }
+
+    private void send(String queue, Message message, int attempt, String error) {
+        Message copy = MessageBuilder.fromClonedMessage(message)
+                .setHeader(RETRY_COUNT_HEADER, attempt)
+                .setHeader(LAST_ERROR_HEADER, error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error)
+                .build();
+        // The broker's dead-letter history grows on every round trip; the retry count says enough
+        copy.getMessageProperties().getHeaders().remove("x-death");
+        rabbitTemplate.send("", queue, copy);
+    }
+}
@@ -0,0 +1,121 @@
+package org.choubi.aiservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.repository.RecommendationRepository;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Consumes activity events without waiting for Gemini on the consumer thread. Each message is
+ * handed to a pipeline and acknowledged when its recommendation is stored (the container runs in
+ * manual-ack mode, see {@code RabbitMqConfig}). At most {@code maxInFlight} messages are processed
+ * at a time; when all slots are taken the consumer thread waits, and the rest stays in the queue
+ * or in the channel's prefetch buffer. It also waits while calls are piling up in front of
+ * {@link GeminiRateLimiter}, so a Gemini slowdown leaves work in RabbitMQ rather than in memory.
+ * <p>
+ * Backfill messages share the same slots but only take one while more than {@code liveReserve}
+ * are free, so imports use whatever capacity fresh activities leave over.
+ * <p>
+ * In on-demand mode only the activities {@link RecommendationGenerationPolicy} picks are processed;
+ * the others are acked right away and generated when first read.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ai.listener.mode", havingValue = "async", matchIfMissing = true)
+public class AsyncActivityMessageListener {
+
+    private final ActivityAIService activityService;
+    private final RecommendationRepository recommendationRepository;
+    private final GeminiRateLimiter rateLimiter;
+    private final ActivityRetryPublisher retryPublisher;
+    private final RecommendationGenerationPolicy generationPolicy;
+    private final RecommendationClaims claims;
+    private final Semaphore inFlight;
+    private final int liveReserve;
+
+    public AsyncActivityMessageListener(ActivityAIService activityService,
+                                        RecommendationRepository recommendationRepository,
+                                        GeminiRateLimiter rateLimiter,
+                                        ActivityRetryPublisher retryPublisher,
+                                        RecommendationGenerationPolicy generationPolicy,
+                                        RecommendationClaims claims,
+                                        @Value("${ai.listener.maxInFlight:32}") int maxInFlight,
+                                        @Value("${ai.listener.liveReserve:8}") int liveReserve) {
+        this.activityService = activityService;
+        this.recommendationRepository = recommendationRepository;
+        this.rateLimiter = rateLimiter;
+        this.retryPublisher = retryPublisher;
+        this.generationPolicy = generationPolicy;
+        this.claims = claims;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.liveReserve = Math.max(0, Math.min(liveReserve, maxInFlight - 1));
+    }
+
+    @RabbitListener(queues = "activity.queue", containerFactory = "asyncActivityListenerContainerFactory")
+    public CompletableFuture<Void> handleActivityMessage(Activity activity, Message message) throws InterruptedException {
+        log.info("Received activity message: {}", activity);
+        if (!generationPolicy.generateOnArrival(activity) || !claim(activity, message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        rateLimiter.awaitCapacity();
+        inFlight.acquire();
+        return process(activity, message);
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.backfill:activity.backfill.queue}", containerFactory = "asyncActivityListenerContainerFactory")
+    public CompletableFuture<Void> handleBackfillMessage(Activity activity, Message message) throws InterruptedException {
+        log.info("Received backfill activity message: {}", activity);
+        if (!generationPolicy.generateOnArrival(activity) || !claim(activity, message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        rateLimiter.awaitCapacity();
+        // Waits until the reserve plus one slot are free, then keeps one; live messages can always overtake
+        inFlight.acquire(liveReserve + 1);
+        inFlight.release(liveReserve);
+        return process(activity, message);
+    }
+
+    // Redelivered and duplicated events stop here, before they take a slot
+    private boolean claim(Activity activity, Message message) {
+        return switch (claims.claim(activity.getId())) {
+            case CLAIMED -> true;
+            case DONE -> {
+                log.info("Recommendation for activity {} already exists, skipping", activity.getId());
+                yield false;
+            }
+            case BUSY -> {
+                // Checked again after the retry delay: by then it is stored, or the claim went stale
+                retryPublisher.retryOrPark(message, new IllegalStateException("Activity " + activity.getId() + " is being processed by another consumer"));
+                yield false;
+            }
+        };
+    }
+
+    private CompletableFuture<Void> process(Activity activity, Message message) {
+        return Mono.defer(() -> activityService.generateActivityRecommendation(activity))
+                // Gemini replies on a Netty thread; the blocking Mongo write must not run there
+                .publishOn(Schedulers.boundedElastic())
+                .map(recommendationRepository::save)
+                .doOnNext(recommendation -> log.info("Generated Recommendation : {}", recommendation))
+                // Failed messages are acked once a retry is scheduled, so they come back after a delay and not at once
+                .onErrorResume(e -> {
+                    log.error("Failed to generate recommendation for activity {}: {}", activity.getId(), e.getMessage(), e);
+                    return Mono.fromRunnable(() -> {
+                        claims.release(activity.getId());
+                        retryPublisher.retryOrPark(message, e);
+                    });
+                })
+                .doFinally(signal -> inFlight.release())
+                .then()
+                .toFuture();
+    }
+}
@@ -0,0 +1,143 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Predicate;
+
+/**
+ * Count-based circuit breaker for Gemini calls. It opens when at least {@code failureRateThreshold}
+ * percent of the last {@code windowSize} calls failed (once {@code minimumCalls} were made), fails
+ * every call with {@link GeminiUnavailableException} for {@code openSeconds}, then lets a single
+ * trial call through: success closes it, failure opens it again.
+ * <p>
+ * State is exported as {@code gemini.circuit.state} (0 closed, 1 open, 2 half-open).
+ */
+@Slf4j
+@Component
+public class GeminiCircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Only the call let through as the trial decides how a half-open breaker goes on
+    private enum Permit { REJECTED, CALL, TRIAL }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openNanos;
+    private final Counter rejectedCounter;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int calls;
+    private int failures;
+    private int next;
+    private long openedAt;
+    private boolean trialRunning;
+
+    public GeminiCircuitBreaker(MeterRegistry meterRegistry,
+                                @Value("${gemini.circuit.windowSize:20}") int windowSize,
+                                @Value("${gemini.circuit.minimumCalls:10}") int minimumCalls,
+                                @Value("${gemini.circuit.failureRateThreshold:50}") int failureRateThreshold,
+                                @Value("${gemini.circuit.openSeconds:30}") long openSeconds) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = Duration.ofSeconds(openSeconds).toNanos();
+        Gauge.builder("gemini.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        this.rejectedCounter = meterRegistry.counter("gemini.circuit.rejected");
+    }
+
+    /**
+     * Runs the call unless the breaker is open. Errors matching {@code isFailure} count against
+     * the breaker; other errors (a bad request, say) are passed on without being recorded.
+     */
+    public <T> Mono<T> protect(Mono<T> call, Predicate<Throwable> isFailure) {
+        return Mono.defer(() -> {
+            Permit permit = tryAcquire();
+            if (permit == Permit.REJECTED) {
+                rejectedCounter.increment();
+                return Mono.error(new GeminiUnavailableException("Gemini circuit breaker is open"));
+            }
+            Mono<T> recorded = call
+                    .doOnSuccess(value -> record(permit, true))
+                    .doOnError(e -> record(permit, !isFailure.test(e)));
+            // A cancelled trial says nothing about Gemini; let the next call try instead
+            return permit == Permit.TRIAL ? recorded.doOnCancel(this::releaseTrial) : recorded;
+        });
+    }
+
+    synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private synchronized Permit tryAcquire() {
+        return switch (getState()) {
+            case CLOSED -> Permit.CALL;
+            case OPEN -> Permit.REJECTED;
+            case HALF_OPEN -> {
+                if (trialRunning) {
+                    yield Permit.REJECTED;
+                }
+                trialRunning = true;
+                yield Permit.TRIAL;
+            }
+        };
+    }
+
+    private synchronized void record(Permit permit, boolean success) {
+        if (permit == Permit.TRIAL) {
+            trialRunning = false;
+            if (success) {
+                log.info("Gemini circuit breaker closed");
+                reset(State.CLOSED);
+            } else {
+                open();
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return; // a call that started before the breaker opened
+        }
+        if (calls == window.length) {
+            failures -= window[next] ? 0 : 1;
+        } else {
+            calls++;
+        }
+        window[next] = success;
+        failures += success ? 0 : 1;
+        next = (next + 1) % window.length;
+        if (calls >= minimumCalls && failures * 100 >= failureRateThreshold * calls) {
+            log.warn("Gemini circuit breaker opened: {} of the last {} calls failed", failures, calls);
+            open();
+        }
+    }
+
+    private synchronized void releaseTrial() {
+        trialRunning = false;
+    }
+
+    private void open() {
+        reset(State.OPEN);
+        openedAt = System.nanoTime();
+    }
+
+    private void reset(State newState) {
+        state = newState;
+        calls = 0;
+        failures = 0;
+        next = 0;
+    }
+}
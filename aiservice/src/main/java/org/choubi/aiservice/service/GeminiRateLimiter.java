@@ -0,0 +1,181 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Predicate;
+
+/**
+ * Client-side budget for Gemini calls, shared by everything that goes through
+ * {@link GeminiService}. A call starts only when there is room in three limits:
+ * <ul>
+ *   <li>a request bucket refilled at {@code requestsPerSecond},</li>
+ *   <li>a token bucket refilled at {@code tokensPerMinute}, charged with the call's estimated tokens,</li>
+ *   <li>an AIMD concurrency limit: each success raises it by about one per round of calls,
+ *       a 429 or 503 halves it (at most once per second, so one burst of rejections counts once).</li>
+ * </ul>
+ * Calls that do not fit wait on a timer, never on a thread. {@link #awaitCapacity()} lets the
+ * listener stop taking messages while {@code maxQueued} calls are already waiting.
+ * <p>
+ * A budget of 0 turns that bucket off.
+ */
+@Slf4j
+@Component
+public class GeminiRateLimiter {
+
+    private static final long DECREASE_COOLDOWN_NANOS = Duration.ofSeconds(1).toNanos();
+    // How often a call blocked by the concurrency limit looks again
+    private static final long CONCURRENCY_POLL_MS = 20;
+
+    private final double requestsPerSecond;
+    private final double tokensPerMinute;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final Counter decreaseCounter;
+
+    // Guarded by this
+    private double requestBudget;
+    private double tokenBudget;
+    private long refilledAt;
+    private double concurrencyLimit;
+    private int inFlight;
+    private int waiting;
+    private long decreasedAt;
+
+    public GeminiRateLimiter(MeterRegistry meterRegistry,
+                             @Value("${gemini.limiter.requestsPerSecond:2}") double requestsPerSecond,
+                             @Value("${gemini.limiter.tokensPerMinute:250000}") double tokensPerMinute,
+                             @Value("${gemini.limiter.initialConcurrency:4}") int initialConcurrency,
+                             @Value("${gemini.limiter.minConcurrency:1}") int minConcurrency,
+                             @Value("${gemini.limiter.maxConcurrency:32}") int maxConcurrency,
+                             @Value("${gemini.limiter.maxQueued:8}") int maxQueued) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.tokensPerMinute = tokensPerMinute;
+        this.minConcurrency = Math.max(1, minConcurrency);
+        this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.requestBudget = Math.max(1, requestsPerSecond);
+        this.tokenBudget = tokensPerMinute;
+        this.refilledAt = System.nanoTime();
+        this.concurrencyLimit = Math.max(this.minConcurrency, Math.min(initialConcurrency, this.maxConcurrency));
+        this.decreasedAt = refilledAt - DECREASE_COOLDOWN_NANOS;
+        Gauge.builder("gemini.limiter.concurrency", this, GeminiRateLimiter::getConcurrencyLimit)
+                .description("Current AIMD limit on concurrent Gemini calls")
+                .register(meterRegistry);
+        Gauge.builder("gemini.limiter.inflight", this, GeminiRateLimiter::getInFlight).register(meterRegistry);
+        Gauge.builder("gemini.limiter.waiting", this, GeminiRateLimiter::getWaiting).register(meterRegistry);
+        this.decreaseCounter = meterRegistry.counter("gemini.limiter.decreases");
+    }
+
+    /**
+     * Runs the call once the budget allows it. Errors matching {@code isOverload} shrink the
+     * concurrency limit; successes grow it. Every retry should go through here again.
+     */
+    public <T> Mono<T> limit(int estimatedTokens, Mono<T> call, Predicate<Throwable> isOverload) {
+        return acquire(estimatedTokens).then(Mono.defer(() -> call
+                .doOnSuccess(value -> increase())
+                .doOnError(e -> {
+                    if (isOverload.test(e)) {
+                        decrease();
+                    }
+                })
+                .doFinally(signal -> release())));
+    }
+
+    /** Blocks the calling thread while {@code maxQueued} or more calls are waiting for a slot. */
+    public synchronized void awaitCapacity() throws InterruptedException {
+        while (waiting >= maxQueued) {
+            wait();
+        }
+    }
+
+    synchronized double getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getWaiting() {
+        return waiting;
+    }
+
+    private Mono<Void> acquire(int tokens) {
+        return Mono.fromCallable(() -> tryAcquire(tokens))
+                .flatMap(waitMs -> waitMs == 0
+                        ? Mono.just(waitMs)
+                        : Mono.delay(Duration.ofMillis(waitMs)).then(Mono.<Long>empty()))
+                .repeatWhenEmpty(repeats -> repeats)
+                .doOnSubscribe(subscription -> enterQueue())
+                .doFinally(signal -> leaveQueue())
+                .then();
+    }
+
+    /** Takes a slot and returns 0, or returns how many milliseconds to wait before trying again. */
+    private synchronized long tryAcquire(int tokens) {
+        long now = System.nanoTime();
+        refill(now);
+        if (inFlight >= (int) concurrencyLimit) {
+            return CONCURRENCY_POLL_MS;
+        }
+        // A call larger than the whole budget would never fit otherwise
+        double needed = Math.min(tokens, tokensPerMinute);
+        double waitSeconds = 0;
+        if (requestsPerSecond > 0 && requestBudget < 1) {
+            waitSeconds = (1 - requestBudget) / requestsPerSecond;
+        }
+        if (tokensPerMinute > 0 && tokenBudget < needed) {
+            waitSeconds = Math.max(waitSeconds, (needed - tokenBudget) * 60 / tokensPerMinute);
+        }
+        if (waitSeconds > 0) {
+            return Math.max(1, (long) Math.ceil(waitSeconds * 1000));
+        }
+        requestBudget -= 1;
+        tokenBudget -= needed;
+        inFlight++;
+        return 0;
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - refilledAt) / 1e9;
+        refilledAt = now;
+        requestBudget = Math.min(Math.max(1, requestsPerSecond), requestBudget + elapsedSeconds * requestsPerSecond);
+        tokenBudget = Math.min(tokensPerMinute, tokenBudget + elapsedSeconds * tokensPerMinute / 60);
+    }
+
+    private synchronized void increase() {
+        concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+    }
+
+    private synchronized void decrease() {
+        long now = System.nanoTime();
+        if (now - decreasedAt < DECREASE_COOLDOWN_NANOS) {
+            return;
+        }
+        decreasedAt = now;
+        concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+        decreaseCounter.increment();
+        log.warn("Gemini is pushing back, concurrency limit lowered to {}", (int) concurrencyLimit);
+    }
+
+    private synchronized void release() {
+        inFlight--;
+    }
+
+    private synchronized void enterQueue() {
+        waiting++;
+    }
+
+    private synchronized void leaveQueue() {
+        waiting--;
+        notifyAll();
+    }
+}
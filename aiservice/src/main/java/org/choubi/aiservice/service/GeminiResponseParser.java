@@ -0,0 +1,153 @@
+package org.choubi.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.dto.GeminiRecommendation;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads Gemini's generateContent replies. The envelope is only walked with the streaming parser
+ * down to {@code candidates[0].content.parts[0].text}, skipping everything else, and the model's
+ * JSON inside it is bound straight to {@link GeminiRecommendation}: no trees, no regexes. Thread
+ * safe; one instance is meant to be shared.
+ */
+@Slf4j
+public final class GeminiResponseParser {
+
+    private static final String FENCE = "```";
+
+    private final JsonMapper mapper = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+    private final ObjectReader reader = mapper.readerFor(GeminiRecommendation.class);
+
+    /** The reply to a single-activity prompt, or null when it is missing or not JSON. */
+    public GeminiRecommendation parse(String response) {
+        String json = innerJson(response);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return reader.readValue(json);
+        } catch (IOException e) {
+            log.warn("Inner AI text is not valid JSON after cleaning; using default recommendation. Error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The reply to a batch prompt by activity id: an array of objects carrying {@code activityId},
+     * or an object keyed by activity id. What could be read before an error is kept.
+     */
+    public Map<String, GeminiRecommendation> parseBatch(String response) {
+        Map<String, GeminiRecommendation> byId = new HashMap<>();
+        String json = innerJson(response);
+        if (json == null) {
+            return byId;
+        }
+        try (JsonParser parser = reader.createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.START_OBJECT) {
+                        GeminiRecommendation item = reader.readValue(parser);
+                        if (item.activityId() != null) {
+                            byId.put(item.activityId(), item);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String activityId = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        GeminiRecommendation item = reader.readValue(parser);
+                        byId.put(activityId, item.withActivityId(activityId));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Inner AI text is not valid JSON after cleaning; kept {} recommendations. Error: {}", byId.size(), e.getMessage());
+        }
+        return byId;
+    }
+
+    /** {@code candidates[0].content.parts[0].text}, or null when the reply has no such string. */
+    public String extractText(String response) throws IOException {
+        try (JsonParser parser = mapper.createParser(response)) {
+            parser.nextToken();
+            if (field(parser, "candidates") && firstElement(parser)
+                    && field(parser, "content")
+                    && field(parser, "parts") && firstElement(parser)
+                    && field(parser, "text")
+                    && parser.currentToken() == JsonToken.VALUE_STRING) {
+                return parser.getText();
+            }
+            return null;
+        }
+    }
+
+    /** Drops markdown code fences like {@code ```json ... ```} around the text, and surrounding whitespace. */
+    static String stripCodeFence(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        if (text.startsWith(FENCE, start)) {
+            start += FENCE.length();
+            if (text.regionMatches(true, start, "json", 0, 4)) start += 4;
+            while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        }
+        if (end - start >= FENCE.length() && text.startsWith(FENCE, end - FENCE.length())) {
+            end -= FENCE.length();
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        }
+        return start == 0 && end == text.length() ? text : text.substring(start, end);
+    }
+
+    private String innerJson(String response) {
+        String text;
+        try {
+            text = extractText(response);
+        } catch (IOException e) {
+            log.error("Failed to parse AI response: {}", e.getMessage(), e);
+            return null;
+        }
+        if (text == null) {
+            log.error("AI response missing candidates[0].content.parts[0].text; using default recommendation");
+            return null;
+        }
+        return stripCodeFence(text);
+    }
+
+    // On a START_OBJECT: moves to the value of the named field, skipping the fields before it
+    private static boolean field(JsonParser parser, String name) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String current = parser.currentName();
+            parser.nextToken();
+            if (name.equals(current)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // On a START_ARRAY: moves to its first element
+    private static boolean firstElement(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.START_ARRAY && parser.nextToken() != JsonToken.END_ARRAY;
+    }
+}
@@ -1,5 +1,6 @@
 package org.choubi.aiservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -9,9 +10,13 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 @Service
 public class GeminiService {
@@ -26,15 +31,35 @@ public class GeminiService {
     private int maxAttempts;
     @Value("${gemini.retry.baseBackoffMs:500}")
     private long baseBackoffMs;
+    @Value("${gemini.retry.maxBackoffMs:30000}")
+    private long maxBackoffMs;
+    @Value("${gemini.timeoutMs:30000}")
+    private long timeoutMs;
+    @Value("${gemini.limiter.expectedOutputTokens:800}")
+    private int expectedOutputTokens;
 
     private final WebClient webClient;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiRateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
     private static final Logger log = LoggerFactory.getLogger(GeminiService.class);
 
-    public GeminiService(WebClient.Builder webClient) {
+    public GeminiService(WebClient.Builder webClient, GeminiCircuitBreaker circuitBreaker,
+                         GeminiRateLimiter rateLimiter, MeterRegistry meterRegistry) {
         this.webClient = webClient.build();
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.meterRegistry = meterRegistry;
     }
 
-    public String getGeminiResponse(String prompt) {
+    /**
+     * Sends the prompt and emits Gemini's raw JSON reply. Nothing blocks: 429 and 503 replies are
+     * retried after a jittered backoff (or the server's Retry-After) on a timer, the fallback model
+     * is tried when the primary one keeps failing, and the whole call goes through
+     * {@link GeminiCircuitBreaker}. Every attempt, retries included, waits for room in
+     * {@link GeminiRateLimiter}.
+     */
+    public Mono<String> getGeminiResponse(String prompt) {
         // Build request body according to Generative Language API schema
         Map<String, Object> requestBody = Map.of(
                 "contents", new Object[]{
@@ -47,50 +72,65 @@ public class GeminiService {
                 }
         );
 
+        // About four characters per token, plus room for the answer
+        int estimatedTokens = prompt.length() / 4 + expectedOutputTokens;
         String primaryUrl = appendApiKey(GEMINI_API_URL, GEMINI_API_KEY);
-        System.out.println("Using Gemini API URL: " + primaryUrl);
+        Mono<String> call = callWithRetries(primaryUrl, requestBody, estimatedTokens, maxAttempts, baseBackoffMs)
+                // If primary fails after retries and fallback is configured, try fallback once with limited retries
+                .onErrorResume(WebClientResponseException.class, last -> {
+                    if (GEMINI_API_FALLBACK_URL == null || GEMINI_API_FALLBACK_URL.isBlank()) {
+                        return Mono.error(last);
+                    }
+                    String fallbackUrl = appendApiKey(GEMINI_API_FALLBACK_URL, GEMINI_API_KEY);
+                    log.warn("Primary model failed after retries (status {}). Trying fallback model URL...", last.getStatusCode().value());
+                    return callWithRetries(fallbackUrl, requestBody, estimatedTokens, Math.max(2, maxAttempts / 2), baseBackoffMs);
+                });
+        return circuitBreaker.protect(call, GeminiService::isOutage);
+    }
 
-        // Try primary URL with retries
-        try {
-            return callWithRetries(primaryUrl, requestBody, maxAttempts, baseBackoffMs);
-        } catch (WebClientResponseException last) {
-            // If primary fails after retries and fallback is configured, try fallback once with limited retries
-            if (GEMINI_API_FALLBACK_URL != null && !GEMINI_API_FALLBACK_URL.isBlank()) {
-                String fallbackUrl = appendApiKey(GEMINI_API_FALLBACK_URL, GEMINI_API_KEY);
-                log.warn("Primary model failed after retries (status {}). Trying fallback model URL...", last.getStatusCode().value());
-                return callWithRetries(fallbackUrl, requestBody, Math.max(2, maxAttempts / 2), baseBackoffMs);
-            }
-            throw last;
-        }
+    private Mono<String> callWithRetries(String url, Map<String, Object> body, int estimatedTokens, int attempts, long baseBackoff) {
+        Mono<String> request = webClient.post()
+                .uri(url)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .defaultIfEmpty("");
+        return rateLimiter.limit(estimatedTokens, request, GeminiService::isOverload)
+                .doOnError(WebClientResponseException.class, e ->
+                        log.error("Gemini API request failed with status {} and body: {}", e.getStatusCode().value(), e.getResponseBodyAsString()))
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                    Throwable failure = signal.failure();
+                    int attempt = (int) signal.totalRetries() + 1;
+                    if (!(failure instanceof WebClientResponseException e) || !isTransient(e) || attempt >= attempts) {
+                        return Mono.error(failure);
+                    }
+                    long backoff = Math.min(computeBackoff(e, baseBackoff, attempt), maxBackoffMs);
+                    long delay = backoff + ThreadLocalRandom.current().nextLong(0, baseBackoff + 1);
+                    int status = e.getStatusCode().value();
+                    meterRegistry.counter("gemini.retries", "status", String.valueOf(status)).increment();
+                    log.warn("Transient error ({}). Retrying attempt {}/{} after {} ms...", status, attempt + 1, attempts, delay);
+                    return Mono.delay(Duration.ofMillis(delay));
+                })));
     }
 
-    private String callWithRetries(String url, Map<String, Object> body, int attempts, long baseBackoff) {
-        for (int attempt = 1; attempt <= attempts; attempt++) {
-            try {
-                String json = webClient.post()
-                        .uri(url)
-                        .header("Content-Type", "application/json")
-                        .header("Accept", "application/json")
-                        .bodyValue(body)
-                        .retrieve()
-                        .bodyToMono(String.class)
-                        .block();
-                return json != null ? json : "";
-            } catch (WebClientResponseException e) {
-                int status = e.getStatusCode().value();
-                log.error("Gemini API request failed with status {} and body: {}", status, e.getResponseBodyAsString());
-                if ((status == 503 || status == 429) && attempt < attempts) {
-                    long sleepMs = computeBackoff(e, baseBackoff, attempt);
-                    long jitter = ThreadLocalRandom.current().nextLong(0, baseBackoff + 1);
-                    long totalSleep = sleepMs + jitter;
-                    log.warn("Transient error ({}). Retrying attempt {}/{} after {} ms...", status, attempt + 1, attempts, totalSleep);
-                    sleepQuietly(totalSleep);
-                    continue;
-                }
-                throw e;
-            }
+    private static boolean isTransient(WebClientResponseException e) {
+        int status = e.getStatusCode().value();
+        return status == 503 || status == 429;
+    }
+
+    private static boolean isOverload(Throwable e) {
+        return e instanceof WebClientResponseException response && isTransient(response);
+    }
+
+    // What the circuit breaker counts: Gemini overloaded, down or unreachable, not requests it rejected
+    static boolean isOutage(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
         }
-        return ""; // should not reach
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
     }
 
     private long computeBackoff(WebClientResponseException e, long baseBackoffMs, int attempt) {
@@ -113,14 +153,6 @@ public class GeminiService {
         return baseBackoffMs * (1L << (attempt - 1));
     }
 
-    private void sleepQuietly(long ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private String appendApiKey(String baseUrl, String apiKey) {
         if (baseUrl == null || baseUrl.isBlank()) return baseUrl;
         String delimiter = baseUrl.contains("?") ? "&" : "?";
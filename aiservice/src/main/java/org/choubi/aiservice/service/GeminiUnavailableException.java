@@ -0,0 +1,11 @@
+package org.choubi.aiservice.service;
+
+/**
+ * Gemini was not called because {@link GeminiCircuitBreaker} is open.
+ */
+public class GeminiUnavailableException extends RuntimeException {
+
+    public GeminiUnavailableException(String message) {
+        super(message);
+    }
+}
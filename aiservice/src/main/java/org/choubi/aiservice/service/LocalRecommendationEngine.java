@@ -0,0 +1,262 @@
+package org.choubi.aiservice.service;
+
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityMetrics;
+import org.choubi.aiservice.model.ActivityType;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.model.UserBaseline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.choubi.aiservice.model.ActivityMetrics.isPresent;
+
+/**
+ * Rule-based recommendations from the activity and the user's {@link UserBaseline}. No I/O and no
+ * model, so it answers in microseconds and always gives the same answer for the same input. It
+ * stands in whenever Gemini has no usable answer; with {@code ai.local.primary} it also answers
+ * every activity that looks like the user's usual ones, and only those that {@link #deviates}
+ * go to Gemini.
+ */
+@Component
+public class LocalRecommendationEngine {
+
+    // A z-score beyond this reads as "faster/slower than usual" in the text
+    private static final double NOTABLE = 1.0;
+    private static final int LONG_SESSION_MINUTES = 90;
+    private static final int BIG_CLIMB_METERS = 500;
+    private static final double NEAR_PEAK_HEART_RATE = 0.9;
+
+    @Value("${ai.local.minSamples:5}")
+    private int minSamples;
+    @Value("${ai.local.deviationThreshold:2.0}")
+    private double deviationThreshold;
+
+    /**
+     * Whether the activity is unlike the user's usual ones of its type: too little history to
+     * tell, pace, heart rate or calories per minute beyond {@code ai.local.deviationThreshold}
+     * standard deviations, or a duration more than one histogram bucket outside the 5th to 95th
+     * percentile.
+     */
+    public boolean deviates(Activity activity, UserBaseline baseline) {
+        if (baseline.getCount() < minSamples) {
+            return true;
+        }
+        ActivityMetrics metrics = activity.getAdditionalMetrics();
+        if (metrics != null) {
+            if (isPresent(metrics.getPace()) && Math.abs(baseline.getPace().zScore(metrics.getPace())) > deviationThreshold) {
+                return true;
+            }
+            if (isPresent(metrics.getAvgHeartRate())
+                    && Math.abs(baseline.getAvgHeartRate().zScore(metrics.getAvgHeartRate())) > deviationThreshold) {
+                return true;
+            }
+        }
+        double caloriesPerMinute = caloriesPerMinute(activity);
+        if (!Double.isNaN(caloriesPerMinute)
+                && Math.abs(baseline.getCaloriesPerMinute().zScore(caloriesPerMinute)) > deviationThreshold) {
+            return true;
+        }
+        Integer duration = activity.getDuration();
+        return duration != null
+                && (duration < baseline.durationPercentile(0.05) - UserBaseline.DURATION_BUCKET_MINUTES
+                || duration >= baseline.durationPercentile(0.95) + 2 * UserBaseline.DURATION_BUCKET_MINUTES);
+    }
+
+    public Recommendation recommend(Activity activity, UserBaseline baseline) {
+        ActivityMetrics metrics = activity.getAdditionalMetrics() != null ? activity.getAdditionalMetrics() : new ActivityMetrics();
+        double paceZ = isPresent(metrics.getPace()) ? baseline.getPace().zScore(metrics.getPace()) : 0;
+        boolean nearPeak = isPresent(metrics.getAvgHeartRate()) && isPresent(metrics.getMaxHeartRate())
+                && metrics.getAvgHeartRate() >= NEAR_PEAK_HEART_RATE * metrics.getMaxHeartRate();
+        boolean hard = nearPeak || paceZ < -NOTABLE;
+
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(String.valueOf(activity.getType()))
+                .recommendation(ActivityAIService.analysisText(
+                        overall(activity, baseline),
+                        pace(metrics, baseline, paceZ),
+                        heartRate(metrics, baseline, nearPeak),
+                        calories(activity, baseline)))
+                .improvements(improvements(activity, metrics, baseline, paceZ))
+                .suggestions(suggestions(activity.getType(), hard))
+                .safety(safety(activity, metrics, nearPeak))
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private String overall(Activity activity, UserBaseline baseline) {
+        String text = name(activity.getType())
+                + (activity.getDuration() != null ? " of " + activity.getDuration() + " minutes" : "")
+                + (activity.getCaloriesBurned() != null ? ", burning " + activity.getCaloriesBurned() + " kcal." : ".");
+        if (baseline.getCount() == 0) {
+            return text + " This is your first recorded session of this kind, so there is nothing to compare it with yet.";
+        }
+        int median = baseline.durationPercentile(0.5);
+        if (activity.getDuration() == null || median < 0) {
+            return text + " Compared with your last " + baseline.getCount() + " sessions of this kind.";
+        }
+        String length = activity.getDuration() > median + UserBaseline.DURATION_BUCKET_MINUTES ? "longer than"
+                : activity.getDuration() < median - UserBaseline.DURATION_BUCKET_MINUTES ? "shorter than" : "about as long as";
+        return text + " It was " + length + " your usual session (around " + median + " minutes over the last "
+                + baseline.getCount() + ").";
+    }
+
+    private static String pace(ActivityMetrics metrics, UserBaseline baseline, double paceZ) {
+        if (!isPresent(metrics.getPace())) {
+            return "No pace was recorded for this session.";
+        }
+        String text = "Average pace " + minutesPerKm(metrics.getPace()) + " per km";
+        if (baseline.getPace().getSamples() < 2) {
+            return text + ".";
+        }
+        String usual = minutesPerKm(baseline.getPace().getMean());
+        if (paceZ < -NOTABLE) return text + ", clearly faster than your usual " + usual + ".";
+        if (paceZ > NOTABLE) return text + ", slower than your usual " + usual + ".";
+        return text + ", in line with your usual " + usual + ".";
+    }
+
+    private static String heartRate(ActivityMetrics metrics, UserBaseline baseline, boolean nearPeak) {
+        if (!isPresent(metrics.getAvgHeartRate())) {
+            return "No heart rate was recorded for this session.";
+        }
+        String text = "Average heart rate " + metrics.getAvgHeartRate() + " bpm"
+                + (isPresent(metrics.getMaxHeartRate()) ? ", peaking at " + metrics.getMaxHeartRate() + " bpm" : "");
+        if (nearPeak) {
+            return text + ". It stayed close to the peak the whole time, which makes this a hard session.";
+        }
+        double z = baseline.getAvgHeartRate().zScore(metrics.getAvgHeartRate());
+        if (z > NOTABLE) return text + ", higher than usual for you.";
+        if (z < -NOTABLE) return text + ", lower than usual for you.";
+        return text + ".";
+    }
+
+    private static String calories(Activity activity, UserBaseline baseline) {
+        double perMinute = caloriesPerMinute(activity);
+        if (Double.isNaN(perMinute)) {
+            return activity.getCaloriesBurned() != null ? activity.getCaloriesBurned() + " kcal burned." : "No calories were recorded for this session.";
+        }
+        String text = oneDecimal(perMinute) + " kcal per minute";
+        if (baseline.getCaloriesPerMinute().getSamples() < 2) {
+            return text + ".";
+        }
+        double z = baseline.getCaloriesPerMinute().zScore(perMinute);
+        String usual = oneDecimal(baseline.getCaloriesPerMinute().getMean());
+        if (z > NOTABLE) return text + ", a higher burn rate than your usual " + usual + ".";
+        if (z < -NOTABLE) return text + ", a lower burn rate than your usual " + usual + ".";
+        return text + ", close to your usual " + usual + ".";
+    }
+
+    private List<String> improvements(Activity activity, ActivityMetrics metrics, UserBaseline baseline, double paceZ) {
+        List<String> improvements = new ArrayList<>();
+        if (paceZ > NOTABLE) {
+            improvements.add("Pace : Slower than usual. If that was not planned, check sleep and recovery before the next hard session.");
+        }
+        if (activity.getDuration() != null && baseline.getCount() >= minSamples
+                && activity.getDuration() < baseline.durationPercentile(0.25) - UserBaseline.DURATION_BUCKET_MINUTES) {
+            improvements.add("Duration : Shorter than most of your sessions. Adding 5 to 10 easy minutes builds endurance.");
+        }
+        if (isPresent(metrics.getCadence())) {
+            if (activity.getType() == ActivityType.RUNNING && metrics.getCadence() < 160) {
+                improvements.add("Cadence : " + metrics.getCadence() + " steps per minute is on the low side. Shorter, quicker steps (around 170) reduce impact.");
+            } else if (activity.getType() == ActivityType.CYCLING && metrics.getCadence() < 75) {
+                improvements.add("Cadence : " + metrics.getCadence() + " rpm is a heavy gear. Spinning at 80 to 95 rpm saves your legs.");
+            }
+        }
+        if (improvements.isEmpty()) {
+            improvements.add("Consistency : Keep this kind of session regular. Steady repetition is what moves your baseline.");
+        }
+        return improvements;
+    }
+
+    private static List<String> suggestions(ActivityType type, boolean hard) {
+        List<String> suggestions = new ArrayList<>();
+        if (hard) {
+            suggestions.add("Recovery : An easy session or a rest day next gives this effort time to pay off.");
+        }
+        if (type == null) {
+            suggestions.add("Mobility : 15 minutes of stretching and mobility work.");
+            return suggestions;
+        }
+        switch (type) {
+            case RUNNING -> {
+                suggestions.add("Intervals : 6 x 400 m at a hard effort with 90 seconds of walking in between.");
+                suggestions.add("Long run : A run 20% longer than usual at a conversational pace.");
+            }
+            case CYCLING -> {
+                suggestions.add("Tempo ride : 2 x 15 minutes at a comfortably hard effort.");
+                suggestions.add("Endurance ride : A steady ride 30 minutes longer than usual.");
+            }
+            case SWIMMING -> {
+                suggestions.add("Technique set : 8 x 50 m focusing on a long, relaxed stroke.");
+                suggestions.add("Pace set : 4 x 100 m at a steady pace with 20 seconds rest.");
+            }
+            case WALKING -> {
+                suggestions.add("Brisk walk : 30 minutes at a pace where talking takes some effort.");
+                suggestions.add("Hill walk : A route with a few climbs to build leg strength.");
+            }
+            case YOGA -> {
+                suggestions.add("Balance flow : A session built around standing balance poses.");
+                suggestions.add("Restorative session : 20 minutes of long, supported holds.");
+            }
+            case STRENGTH_TRAINING -> {
+                suggestions.add("Full body : Squats, push-ups and rows, 3 sets of 10 each.");
+                suggestions.add("Core : Planks and dead bugs, 3 rounds.");
+            }
+        }
+        return suggestions;
+    }
+
+    private static List<String> safety(Activity activity, ActivityMetrics metrics, boolean nearPeak) {
+        List<String> safety = new ArrayList<>();
+        if (nearPeak) {
+            safety.add("Your heart rate stayed near its peak. Stop and rest if you feel dizzy or short of breath.");
+        }
+        if (activity.getDuration() != null && activity.getDuration() >= LONG_SESSION_MINUTES) {
+            safety.add("Drink and refuel during sessions longer than 90 minutes.");
+        }
+        if (isPresent(metrics.getElevationGain()) && metrics.getElevationGain() >= BIG_CLIMB_METERS) {
+            safety.add("Take long descents carefully; they load knees and thighs more than the climbs.");
+        }
+        if (activity.getType() != null) {
+            safety.add(switch (activity.getType()) {
+                case RUNNING -> "Warm up for 5 to 10 minutes before running faster.";
+                case CYCLING -> "Wear a helmet and use lights when visibility is low.";
+                case SWIMMING -> "Swim where a lifeguard is present or with a partner.";
+                case WALKING -> "Wear visible clothing when walking near traffic.";
+                case YOGA -> "Ease out of any pose that causes sharp pain.";
+                case STRENGTH_TRAINING -> "Keep good form and use a spotter for heavy lifts.";
+            });
+        }
+        safety.add("Stay hydrated before and after exercise.");
+        return safety;
+    }
+
+    private static double caloriesPerMinute(Activity activity) {
+        Integer duration = activity.getDuration();
+        Integer calories = activity.getCaloriesBurned();
+        return duration != null && duration > 0 && calories != null && calories > 0 ? calories / (double) duration : Double.NaN;
+    }
+
+    private static String name(ActivityType type) {
+        if (type == null) {
+            return "Activity";
+        }
+        String name = type.name().replace('_', ' ').toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String minutesPerKm(double pace) {
+        long seconds = Math.round(pace * 60);
+        long remainder = seconds % 60;
+        return seconds / 60 + ":" + (remainder < 10 ? "0" : "") + remainder;
+    }
+
+    private static String oneDecimal(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+}
@@ -0,0 +1,158 @@
+package org.choubi.aiservice.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.config.RabbitMqConfig;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moves parked activity messages back to the activity queue in the background, at most
+ * {@code perSecond} a second so a large replay does not hit Gemini all at once. Replayed messages start again with a full set
+ * of retries, in the lane activityservice put them in.
+ */
+@Slf4j
+@Service
+public class ParkingLotService {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final Counter replayedCounter;
+    private final String queueName;
+    private final String backfillQueueName;
+    private final String parkingLot;
+    private final int maxReplay;
+    private final double maxPerSecond;
+    private final AtomicReference<ReplayStatus> lastReplay = new AtomicReference<>();
+
+    public ParkingLotService(RabbitTemplate rabbitTemplate,
+                             AmqpAdmin amqpAdmin,
+                             MeterRegistry meterRegistry,
+                             @Value("${rabbitmq.queue.name}") String queueName,
+                             @Value("${rabbitmq.queue.backfill:activity.backfill.queue}") String backfillQueueName,
+                             @Value("${ai.retry.replayMax:10000}") int maxReplay,
+                             @Value("${ai.retry.replayMaxPerSecond:100}") double maxPerSecond) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+        this.replayedCounter = meterRegistry.counter("ai.retry.replayed");
+        this.queueName = queueName;
+        this.backfillQueueName = backfillQueueName;
+        this.parkingLot = RabbitMqConfig.parkingLot(queueName);
+        this.maxReplay = maxReplay;
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public long countParked() {
+        QueueInformation info = amqpAdmin.getQueueInfo(parkingLot);
+        return info != null ? info.getMessageCount() : 0;
+    }
+
+    /**
+     * Starts moving up to {@code max} messages back in the background and returns right away; the
+     * returned status is updated as it goes. Only one replay runs at a time.
+     */
+    public ReplayStatus startReplay(int max, double perSecond) {
+        if (max <= 0 || max > maxReplay) {
+            throw new IllegalArgumentException("max must be between 1 and " + maxReplay);
+        }
+        if (!(perSecond > 0) || perSecond > maxPerSecond) {
+            throw new IllegalArgumentException("perSecond must be above 0 and at most " + maxPerSecond);
+        }
+        ReplayStatus status = new ReplayStatus(max, perSecond, LocalDateTime.now());
+        ReplayStatus previous = lastReplay.get();
+        if ((previous != null && previous.isRunning()) || !lastReplay.compareAndSet(previous, status)) {
+            throw new IllegalStateException("A replay is already running");
+        }
+        // Ticks at the requested rate; the blocking broker calls run on boundedElastic, never on the caller's thread
+        Flux.interval(Duration.ZERO, Duration.ofNanos((long) (TimeUnit.SECONDS.toNanos(1) / perSecond)), Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .map(tick -> Boolean.TRUE.equals(rabbitTemplate.execute(this::moveOne)))
+                .takeWhile(moved -> moved)
+                .take(max)
+                .doOnNext(moved -> {
+                    status.replayed.incrementAndGet();
+                    replayedCounter.increment();
+                })
+                .doFinally(signal -> {
+                    status.running = false;
+                    log.info("Replayed {} parked messages", status.getReplayed());
+                })
+                .subscribe(moved -> { }, e -> log.error("Parking lot replay stopped: {}", e.getMessage()));
+        return status;
+    }
+
+    /** The running or most recent replay since startup, if any. */
+    public Optional<ReplayStatus> lastReplay() {
+        return Optional.ofNullable(lastReplay.get());
+    }
+
+    // Acked only after it was published, so a failure leaves the message parked
+    private boolean moveOne(Channel channel) throws IOException {
+        GetResponse response = channel.basicGet(parkingLot, false);
+        if (response == null) {
+            return false;
+        }
+        AMQP.BasicProperties properties = response.getProps();
+        Map<String, Object> headers = properties.getHeaders() != null ? new HashMap<>(properties.getHeaders()) : new HashMap<>();
+        headers.remove(ActivityRetryPublisher.RETRY_COUNT_HEADER);
+        boolean backfill = RabbitMqConfig.BACKFILL_LANE.equals(String.valueOf(headers.get(RabbitMqConfig.LANE_HEADER)));
+        channel.basicPublish("", backfill ? backfillQueueName : queueName, properties.builder().headers(headers).build(), response.getBody());
+        channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+        return true;
+    }
+
+    public static final class ReplayStatus {
+
+        private final int requested;
+        private final double perSecond;
+        private final LocalDateTime startedAt;
+        private final AtomicInteger replayed = new AtomicInteger();
+        private volatile boolean running = true;
+
+        private ReplayStatus(int requested, double perSecond, LocalDateTime startedAt) {
+            this.requested = requested;
+            this.perSecond = perSecond;
+            this.startedAt = startedAt;
+        }
+
+        public int getRequested() {
+            return requested;
+        }
+
+        public double getPerSecond() {
+            return perSecond;
+        }
+
+        public LocalDateTime getStartedAt() {
+            return startedAt;
+        }
+
+        public int getReplayed() {
+            return replayed.get();
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+    }
+}
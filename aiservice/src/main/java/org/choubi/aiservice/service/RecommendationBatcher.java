@@ -0,0 +1,62 @@
+package org.choubi.aiservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.Recommendation;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Groups recommendation requests into batches of up to {@code maxItems}, or whatever arrived
+ * within {@code maxWait} of the first one, and hands each batch to the handler, at most
+ * {@code concurrency} batches at a time. Every request keeps its own result: the handler
+ * completes the items it answered, and items it leaves open fail when its batch is done.
+ */
+@Slf4j
+final class RecommendationBatcher {
+
+    record Item(Activity activity, RecommendationFeatures features, String cacheKey, Sinks.One<Recommendation> result) {
+        void complete(Recommendation recommendation) {
+            result.tryEmitValue(recommendation);
+        }
+
+        void fail(Throwable error) {
+            result.tryEmitError(error);
+        }
+    }
+
+    private final Sinks.Many<Item> items = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable subscription;
+
+    RecommendationBatcher(int maxItems, Duration maxWait, int concurrency, Function<List<Item>, Mono<Void>> handler) {
+        this.subscription = items.asFlux()
+                // fairBackpressure: a batch that times out while all handlers are busy waits instead of failing the flux
+                .bufferTimeout(maxItems, maxWait, true)
+                .flatMap(batch -> Mono.defer(() -> handler.apply(batch))
+                        .onErrorResume(e -> {
+                            log.error("Recommendation batch of {} failed: {}", batch.size(), e.getMessage(), e);
+                            return Mono.empty();
+                        })
+                        .doFinally(signal -> batch.forEach(item -> item.result().tryEmitError(
+                                new IllegalStateException("No recommendation for activity " + item.activity().getId())))),
+                        concurrency)
+                .subscribe();
+    }
+
+    Mono<Recommendation> submit(Activity activity, RecommendationFeatures features, String cacheKey) {
+        Sinks.One<Recommendation> result = Sinks.one();
+        // Listener threads submit concurrently; the sink only takes one at a time
+        items.emitNext(new Item(activity, features, cacheKey, result), Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        return result.asMono();
+    }
+
+    void dispose() {
+        items.tryEmitComplete();
+        subscription.dispose();
+    }
+}
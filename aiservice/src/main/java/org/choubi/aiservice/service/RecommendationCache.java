@@ -0,0 +1,113 @@
+package org.choubi.aiservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.CachedRecommendation;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.repository.CachedRecommendationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Gemini answers by {@link RecommendationFeatures#key()}: an in-memory LRU in front of the
+ * {@code recommendation_cache} collection, whose TTL index drops old answers. Every hit is a
+ * Gemini call saved; {@code ai.recommendation.cache.requests} counts hits per tier and misses,
+ * {@code ai.recommendation.cache.saved.cost} adds up what the saved calls would have cost.
+ */
+@Slf4j
+@Service
+public class RecommendationCache {
+
+    private final CachedRecommendationRepository cachedRecommendationRepository;
+    private final Cache<String, CachedRecommendation> memory;
+    private final Counter memoryHits;
+    private final Counter mongoHits;
+    private final Counter misses;
+    private final Counter savedCost;
+
+    @Value("${ai.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${ai.cache.durationBucketMinutes:5}")
+    private int durationBucketMinutes;
+    @Value("${ai.cache.caloriesBucket:25}")
+    private int caloriesBucket;
+    @Value("${ai.cache.costPerCall:0.0005}")
+    private double costPerCall;
+
+    public RecommendationCache(CachedRecommendationRepository cachedRecommendationRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${ai.cache.maxSize:10000}") long maxSize,
+                               @Value("${ai.cache.memoryTtlMinutes:60}") long memoryTtlMinutes) {
+        this.cachedRecommendationRepository = cachedRecommendationRepository;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(memoryTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "recommendations");
+        this.memoryHits = meterRegistry.counter("ai.recommendation.cache.requests", "result", "memory");
+        this.mongoHits = meterRegistry.counter("ai.recommendation.cache.requests", "result", "mongo");
+        this.misses = meterRegistry.counter("ai.recommendation.cache.requests", "result", "miss");
+        this.savedCost = Counter.builder("ai.recommendation.cache.saved.cost")
+                .description("Estimated cost of the Gemini calls answered from the cache")
+                .register(meterRegistry);
+    }
+
+    public RecommendationFeatures features(Activity activity) {
+        return RecommendationFeatures.of(activity, durationBucketMinutes, caloriesBucket);
+    }
+
+    /** Emits the cached answer, or completes empty on a miss. A failing Mongo lookup is a miss. */
+    public Mono<CachedRecommendation> lookup(String key) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        CachedRecommendation hit = memory.getIfPresent(key);
+        if (hit != null) {
+            memoryHits.increment();
+            savedCost.increment(costPerCall);
+            return Mono.just(hit);
+        }
+        return Mono.fromCallable(() -> cachedRecommendationRepository.findById(key).orElse(null))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(found -> {
+                    memory.put(key, found);
+                    mongoHits.increment();
+                    savedCost.increment(costPerCall);
+                })
+                .onErrorResume(e -> {
+                    log.warn("Recommendation cache lookup failed: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.fromRunnable(misses::increment));
+    }
+
+    /** Keeps Gemini's answer for the key. The Mongo write happens in the background. */
+    public void store(String key, Recommendation recommendation) {
+        if (!enabled) {
+            return;
+        }
+        CachedRecommendation cached = CachedRecommendation.builder()
+                .id(key)
+                .recommendation(recommendation.getRecommendation())
+                .improvements(recommendation.getImprovements())
+                .suggestions(recommendation.getSuggestions())
+                .safety(recommendation.getSafety())
+                .createdAt(LocalDateTime.now())
+                .build();
+        memory.put(key, cached);
+        Mono.fromRunnable(() -> cachedRecommendationRepository.save(cached))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("Failed to store cached recommendation: {}", e.getMessage()));
+    }
+}
@@ -0,0 +1,96 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.model.RecommendationClaim;
+import org.choubi.aiservice.repository.RecommendationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Lets one consumer at a time generate the recommendation of an activity. A stored recommendation
+ * is found through the unique {@code activity_idx} index; otherwise the activity is claimed with
+ * an upsert that only matches a stale claim, so when a live one exists the insert runs into the
+ * {@code _id} and fails instead. Claims left behind by a consumer that died go stale after
+ * {@code ai.claim.staleSeconds}.
+ */
+@Slf4j
+@Service
+public class RecommendationClaims {
+
+    public enum Outcome {
+        /** Go ahead and generate it. */
+        CLAIMED,
+        /** The recommendation is already stored. */
+        DONE,
+        /** Another consumer is generating it right now. */
+        BUSY
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final RecommendationRepository recommendationRepository;
+    private final MeterRegistry meterRegistry;
+    private final Duration staleClaim;
+
+    public RecommendationClaims(MongoTemplate mongoTemplate,
+                                RecommendationRepository recommendationRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${ai.claim.staleSeconds:300}") long staleClaimSeconds) {
+        this.mongoTemplate = mongoTemplate;
+        this.recommendationRepository = recommendationRepository;
+        this.meterRegistry = meterRegistry;
+        this.staleClaim = Duration.ofSeconds(staleClaimSeconds);
+    }
+
+    /** A failing lookup lets the caller go ahead: at worst Gemini is asked twice, as before. */
+    public Outcome claim(String activityId) {
+        Outcome outcome;
+        try {
+            outcome = tryClaim(activityId);
+        } catch (DataAccessException e) {
+            log.warn("Failed to claim activity {}: {}", activityId, e.getMessage());
+            outcome = Outcome.CLAIMED;
+        }
+        meterRegistry.counter("ai.recommendation.claims", "result", outcome.name().toLowerCase()).increment();
+        return outcome;
+    }
+
+    // The recommendation was not stored, so a retry must be able to claim it again right away
+    public void release(String activityId) {
+        if (activityId == null) {
+            return;
+        }
+        try {
+            mongoTemplate.remove(query(where("_id").is(activityId)), RecommendationClaim.class);
+        } catch (Exception e) {
+            log.warn("Failed to release claim on activity {}: {}", activityId, e.getMessage());
+        }
+    }
+
+    private Outcome tryClaim(String activityId) {
+        if (activityId == null) {
+            return Outcome.CLAIMED;
+        }
+        if (recommendationRepository.existsByActivityId(activityId)) {
+            return Outcome.DONE;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            mongoTemplate.upsert(query(where("_id").is(activityId).and("claimedAt").lt(now.minus(staleClaim))),
+                    new Update().set("claimedAt", now), RecommendationClaim.class);
+            return Outcome.CLAIMED;
+        } catch (DuplicateKeyException e) {
+            return Outcome.BUSY;
+        }
+    }
+}
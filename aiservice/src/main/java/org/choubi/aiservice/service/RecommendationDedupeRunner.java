@@ -0,0 +1,68 @@
+package org.choubi.aiservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.config.MongoConfig;
+import org.choubi.aiservice.model.Recommendation;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Redelivered events used to store a second recommendation for the same activity, and such
+ * duplicates keep the unique activity_idx from being built. Deletes all but the first
+ * recommendation stored for each activity, then creates the indexes again. Enable for a single
+ * start with {@code ai.recommendations.dedupeOnStartup=true}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.recommendations.dedupeOnStartup", havingValue = "true")
+public class RecommendationDedupeRunner implements ApplicationRunner {
+
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (mongoTemplate.indexOps(Recommendation.class).getIndexInfo().stream()
+                .anyMatch(index -> Recommendation.ACTIVITY_INDEX.equals(index.getName()))) {
+            log.info("{} exists, so there are no duplicate recommendations to remove", Recommendation.ACTIVITY_INDEX);
+            return;
+        }
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("activityId").ne(null)),
+                Aggregation.sort(Sort.Direction.ASC, "createdAt", "_id"),
+                Aggregation.group("activityId").push("_id").as("ids").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1))
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        List<Object> extra = new ArrayList<>();
+        long removed = 0;
+        try (Stream<org.bson.Document> groups = mongoTemplate.aggregateStream(duplicates, Recommendation.class, org.bson.Document.class)) {
+            for (Iterator<org.bson.Document> it = groups.iterator(); it.hasNext(); ) {
+                List<?> ids = it.next().getList("ids", Object.class);
+                extra.addAll(ids.subList(1, ids.size()));
+                if (extra.size() >= DELETE_BATCH_SIZE || !it.hasNext()) {
+                    removed += mongoTemplate.remove(Query.query(Criteria.where("_id").in(extra)), Recommendation.class).getDeletedCount();
+                    extra.clear();
+                }
+            }
+        }
+        log.info("Removed {} duplicate recommendations", removed);
+        // The indexes were created before this ran, and activity_idx failed on the duplicates
+        MongoConfig.createIndexes(mongoTemplate);
+    }
+}
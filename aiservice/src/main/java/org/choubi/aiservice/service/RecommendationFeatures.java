@@ -0,0 +1,63 @@
+package org.choubi.aiservice.service;
+
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityMetrics;
+import org.choubi.aiservice.model.ActivityType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What the Gemini prompt is built from: the activity with its numbers rounded to buckets and its
+ * metrics in key order. Activities with the same features get the same prompt, so they can share
+ * one answer; {@link #key()} addresses it in {@link RecommendationCache}.
+ */
+public record RecommendationFeatures(ActivityType type, Integer duration, Integer caloriesBurned, Map<String, Object> metrics) {
+
+    public static RecommendationFeatures of(Activity activity, int durationBucket, int caloriesBucket) {
+        Map<String, Object> metrics = new TreeMap<>();
+        ActivityMetrics source = activity.getAdditionalMetrics();
+        if (source != null) {
+            // Finer than this does not change what a coach would say
+            if (ActivityMetrics.isPresent(source.getDistance())) metrics.put(ActivityMetrics.DISTANCE, round(source.getDistance(), 0.5));
+            if (ActivityMetrics.isPresent(source.getPace())) metrics.put(ActivityMetrics.PACE, round(source.getPace(), 0.1));
+            if (ActivityMetrics.isPresent(source.getElevationGain())) metrics.put(ActivityMetrics.ELEVATION_GAIN, round(source.getElevationGain(), 10));
+            if (ActivityMetrics.isPresent(source.getAvgHeartRate())) metrics.put(ActivityMetrics.AVG_HEART_RATE, bucket(source.getAvgHeartRate(), 5));
+            if (ActivityMetrics.isPresent(source.getMaxHeartRate())) metrics.put(ActivityMetrics.MAX_HEART_RATE, bucket(source.getMaxHeartRate(), 5));
+            if (ActivityMetrics.isPresent(source.getCadence())) metrics.put(ActivityMetrics.CADENCE, bucket(source.getCadence(), 5));
+            if (source.getExtra() != null) {
+                source.getExtra().forEach((key, value) -> metrics.put(key, String.valueOf(value)));
+            }
+        }
+        return new RecommendationFeatures(activity.getType(),
+                activity.getDuration() != null ? bucket(activity.getDuration(), durationBucket) : null,
+                activity.getCaloriesBurned() != null ? bucket(activity.getCaloriesBurned(), caloriesBucket) : null,
+                metrics);
+    }
+
+    /** SHA-256 of the canonical form, in hex. */
+    public String key() {
+        StringBuilder canonical = new StringBuilder()
+                .append(type).append('|').append(duration).append('|').append(caloriesBurned);
+        metrics.forEach((key, value) -> canonical.append('|').append(key).append('=').append(value));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static int bucket(int value, int size) {
+        return size <= 1 ? value : Math.round(value / (float) size) * size;
+    }
+
+    private static double round(double value, double step) {
+        // Back to two decimals so 5.5 stays 5.5 and not 5.500000000000001
+        return Math.round(Math.round(value / step) * step * 100) / 100.0;
+    }
+}
@@ -0,0 +1,38 @@
+package org.choubi.aiservice.service;
+
+import org.choubi.aiservice.model.Activity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * When recommendations are generated. In "eager" mode every activity gets one as soon as its
+ * event arrives. In "on-demand" mode it is generated the first time it is read (see
+ * {@link RecommendationService#getActivityRecommendations}), and on arrival only for the users
+ * listed in {@code ai.generation.eagerUsers}: most recommendations are never opened.
+ */
+@Component
+public class RecommendationGenerationPolicy {
+
+    private final boolean onDemand;
+    private final Set<String> eagerUsers;
+
+    public RecommendationGenerationPolicy(@Value("${ai.generation.mode:eager}") String mode,
+                                          @Value("${ai.generation.eagerUsers:}") Set<String> eagerUsers) {
+        this.onDemand = switch (mode) {
+            case "eager" -> false;
+            case "on-demand" -> true;
+            default -> throw new IllegalArgumentException("Unknown ai.generation.mode: " + mode);
+        };
+        this.eagerUsers = eagerUsers;
+    }
+
+    public boolean isOnDemand() {
+        return onDemand;
+    }
+
+    public boolean generateOnArrival(Activity activity) {
+        return !onDemand || (activity.getUserId() != null && eagerUsers.contains(activity.getUserId()));
+    }
+}
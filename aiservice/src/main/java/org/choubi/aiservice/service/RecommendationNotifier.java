@@ -0,0 +1,83 @@
+package org.choubi.aiservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.model.Recommendation;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tells connected clients about new recommendations instead of having them poll. Every stored
+ * recommendation, whichever code path saved it, is announced on the fanout exchange; each
+ * instance hands it to the streams of its user that are connected there. Nothing is replayed:
+ * a client that was disconnected reads what it missed with a normal GET after reconnecting.
+ */
+@Slf4j
+@Service
+public class RecommendationNotifier extends AbstractMongoEventListener<Recommendation> {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final String exchangeName;
+    private final ConcurrentMap<String, UserStreams> streams = new ConcurrentHashMap<>();
+
+    public RecommendationNotifier(RabbitTemplate rabbitTemplate,
+                                  @Value("${rabbitmq.exchanges.recommendations:recommendation.events}") String exchangeName) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.exchangeName = exchangeName;
+    }
+
+    /** New recommendations of the user, from now on. Slow subscribers miss some rather than hold up the others. */
+    public Flux<Recommendation> subscribe(String userId) {
+        return Flux.defer(() -> streams.compute(userId, (id, existing) -> {
+                    UserStreams user = existing != null ? existing : new UserStreams();
+                    user.subscribers++;
+                    return user;
+                }).sink.asFlux())
+                .doFinally(signal -> streams.computeIfPresent(userId, (id, user) -> --user.subscribers == 0 ? null : user));
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Recommendation> event) {
+        Recommendation recommendation = event.getSource();
+        if (recommendation.getUserId() == null) {
+            return;
+        }
+        try {
+            rabbitTemplate.convertAndSend(exchangeName, "", recommendation);
+        } catch (AmqpException e) {
+            // Stored all the same; subscribers see it on their next read
+            log.warn("Failed to announce recommendation for activity {}: {}", recommendation.getActivityId(), e.getMessage());
+        }
+    }
+
+    @RabbitListener(queues = "#{recommendationEventsQueue.name}")
+    public void handleRecommendationSaved(Recommendation recommendation) {
+        UserStreams user = streams.get(recommendation.getUserId());
+        if (user == null) {
+            return;
+        }
+        // A multicast sink takes one emission at a time
+        synchronized (user) {
+            user.sink.tryEmitNext(recommendation);
+        }
+    }
+
+    int connectedUsers() {
+        return streams.size();
+    }
+
+    // Counted here rather than asked from the sink, so a subscriber that is about to attach keeps it alive
+    private static final class UserStreams {
+        private final Sinks.Many<Recommendation> sink = Sinks.many().multicast().directBestEffort();
+        private int subscribers;
+    }
+}
@@ -1,24 +1,139 @@
 package org.choubi.aiservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.microRequestInterface.ActivityServiceInterface;
 import org.choubi.aiservice.model.Recommendation;
 import org.choubi.aiservice.repository.RecommendationRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class RecommendationService {
 
     private final RecommendationRepository recommendationRepository;
+    private final ActivityServiceInterface activityServiceInterface;
+    private final ActivityAIService activityAIService;
+    private final RecommendationGenerationPolicy generationPolicy;
+    private final RecommendationClaims claims;
+    private final MeterRegistry meterRegistry;
+    // Generations in progress by activity id, shared by every request that misses meanwhile
+    private final ConcurrentMap<String, CompletableFuture<Recommendation>> generations = new ConcurrentHashMap<>();
+
+    @Value("${ai.generation.timeoutMs:60000}")
+    private long timeoutMs;
+    @Value("${ai.generation.pollMs:500}")
+    private long pollMs;
+
     public List<Recommendation> getRecommendationsForUser(String userId) {
         return recommendationRepository.findByUserId(userId);
     }
 
+    /** The stored recommendation; in on-demand mode a missing one is generated and stored first. */
     public Recommendation getActivityRecommendations(String activityId) {
         return recommendationRepository.findByActivityId(activityId)
-                .orElseThrow(() -> new RuntimeException("Recommendation not found for activityId: " + activityId));
+                .orElseGet(() -> {
+                    if (!generationPolicy.isOnDemand()) {
+                        throw notFound(activityId);
+                    }
+                    return await(activityId, generation(activityId));
+                });
+    }
+
+    private CompletableFuture<Recommendation> generation(String activityId) {
+        CompletableFuture<Recommendation> created = new CompletableFuture<>();
+        CompletableFuture<Recommendation> running = generations.putIfAbsent(activityId, created);
+        if (running != null) {
+            meterRegistry.counter("ai.generation.on-demand", "result", "coalesced").increment();
+            return running;
+        }
+        created.whenComplete((recommendation, e) -> generations.remove(activityId, created));
+        // The claim keeps other replicas and the listener from paying for the same Gemini call
+        Mono.fromCallable(() -> claims.claim(activityId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(outcome -> {
+                    meterRegistry.counter("ai.generation.on-demand", "result", switch (outcome) {
+                        case CLAIMED -> "generated";
+                        case DONE -> "stored";
+                        case BUSY -> "waited";
+                    }).increment();
+                    return switch (outcome) {
+                        case CLAIMED -> generate(activityId);
+                        case DONE -> Mono.fromCallable(() -> recommendationRepository.findByActivityId(activityId).orElseThrow(() -> notFound(activityId)));
+                        case BUSY -> awaitStored(activityId);
+                    };
+                })
+                .subscribe(created::complete, created::completeExceptionally);
+        return created;
+    }
+
+    private Mono<Recommendation> generate(String activityId) {
+        return Mono.defer(() -> activityServiceInterface.getActivity(activityId))
+                .onErrorMap(WebClientResponseException.NotFound.class, e -> notFound(activityId))
+                .switchIfEmpty(Mono.error(() -> notFound(activityId)))
+                .doOnNext(activity -> log.info("Generating recommendation on demand for activity {}", activityId))
+                .flatMap(activityAIService::generateActivityRecommendation)
+                .publishOn(Schedulers.boundedElastic())
+                .map(this::store)
+                .doOnError(e -> claims.release(activityId));
+    }
+
+    // Another replica or the listener holds the claim; its result is read once stored
+    private Mono<Recommendation> awaitStored(String activityId) {
+        return Mono.fromCallable(() -> recommendationRepository.findByActivityId(activityId).orElse(null))
+                .subscribeOn(Schedulers.boundedElastic())
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(pollMs)))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .onErrorMap(TimeoutException.class, e -> stillGenerating(activityId, e));
+    }
+
+    // The listener may store the same activity meanwhile (users generated eagerly); the first one wins
+    private Recommendation store(Recommendation recommendation) {
+        try {
+            return recommendationRepository.save(recommendation);
+        } catch (DuplicateKeyException e) {
+            return recommendationRepository.findByActivityId(recommendation.getActivityId()).orElseThrow(() -> e);
+        }
+    }
+
+    private Recommendation await(String activityId, CompletableFuture<Recommendation> generation) {
+        try {
+            return generation.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Could not generate recommendation for activityId: " + activityId, e.getCause());
+        } catch (TimeoutException e) {
+            // The generation goes on and is stored; a later request finds it
+            throw stillGenerating(activityId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating recommendation for activityId: " + activityId, e);
+        }
+    }
+
+    private static RuntimeException stillGenerating(String activityId, TimeoutException e) {
+        return new RuntimeException("Recommendation for activityId " + activityId + " is still being generated", e);
+    }
+
+    private static RuntimeException notFound(String activityId) {
+        return new RuntimeException("Recommendation not found for activityId: " + activityId);
     }
 }
@@ -0,0 +1,91 @@
+package org.choubi.aiservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.UserBaseline;
+import org.choubi.aiservice.repository.UserBaselineRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Per-user baselines for {@link LocalRecommendationEngine}: kept in memory for the users seen
+ * lately and in the {@code user_baselines} collection. Each activity is added once its
+ * recommendation is generated, so the baseline an activity is compared with never includes it.
+ */
+@Slf4j
+@Service
+public class UserBaselineService {
+
+    private final UserBaselineRepository userBaselineRepository;
+    private final Cache<String, UserBaseline> memory;
+
+    public UserBaselineService(UserBaselineRepository userBaselineRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${ai.local.baselineCacheSize:10000}") long maxSize) {
+        this.userBaselineRepository = userBaselineRepository;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofHours(6))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "userBaselines");
+    }
+
+    /** The baseline for the activity's user and type; an empty one when there is no history or it cannot be read. */
+    public Mono<UserBaseline> lookup(Activity activity) {
+        if (activity.getUserId() == null || activity.getType() == null) {
+            return Mono.just(new UserBaseline(activity.getUserId(), activity.getType()));
+        }
+        String id = UserBaseline.idOf(activity.getUserId(), activity.getType());
+        UserBaseline hit = memory.getIfPresent(id);
+        if (hit != null) {
+            return Mono.just(hit);
+        }
+        return Mono.fromCallable(() -> userBaselineRepository.findById(id)
+                        .orElseGet(() -> new UserBaseline(activity.getUserId(), activity.getType())))
+                .subscribeOn(Schedulers.boundedElastic())
+                // Two lookups racing for the same user end up sharing the first one's instance
+                .map(loaded -> memory.asMap().merge(id, loaded, (current, ignored) -> current))
+                .onErrorResume(e -> {
+                    // Not kept in memory: recording into it would overwrite the stored history
+                    log.warn("Failed to load baseline {}: {}", id, e.getMessage());
+                    return Mono.just(new UserBaseline(activity.getUserId(), activity.getType()));
+                });
+    }
+
+    /** What {@link #lookup} loaded for the activity, or an empty baseline when it is not in memory. */
+    public UserBaseline peek(Activity activity) {
+        UserBaseline baseline = activity.getUserId() == null || activity.getType() == null ? null
+                : memory.getIfPresent(UserBaseline.idOf(activity.getUserId(), activity.getType()));
+        return baseline != null ? baseline : new UserBaseline(activity.getUserId(), activity.getType());
+    }
+
+    /** Adds the activity to its baseline, if {@link #lookup} loaded it. The Mongo write happens in the background. */
+    public void record(Activity activity) {
+        if (activity.getUserId() == null || activity.getType() == null) {
+            return;
+        }
+        UserBaseline baseline = memory.getIfPresent(UserBaseline.idOf(activity.getUserId(), activity.getType()));
+        if (baseline == null) {
+            return;
+        }
+        synchronized (baseline) {
+            baseline.record(activity);
+        }
+        Mono.fromRunnable(() -> {
+                    synchronized (baseline) {
+                        userBaselineRepository.save(baseline);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("Failed to store baseline {}: {}", baseline.getId(), e.getMessage()));
+    }
+}
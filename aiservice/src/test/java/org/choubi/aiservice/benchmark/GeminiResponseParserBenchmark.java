@@ -0,0 +1,167 @@
+package org.choubi.aiservice.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityType;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.service.ActivityAIService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a Gemini reply into a {@link Recommendation}: {@code streaming} is what
+ * {@link ActivityAIService#proccessAIResponse(Activity, String)} does now, {@code tree} is the
+ * previous implementation (new ObjectMapper per call, two readTree passes, regex fence stripping,
+ * String.format), kept here as the baseline. Logging is switched off so the malformed case
+ * measures parsing, not the console.
+ * <p>
+ * Run with:
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt &&
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main GeminiResponseParserBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeminiResponseParserBenchmark {
+
+    private static final String RECOMMENDATION = """
+            {
+              "analysis": {
+                "overall": "A steady 10k with an even effort from start to finish.",
+                "pace": "Pace stayed within five seconds per kilometre of 5:30.",
+                "heartRate": "Average heart rate of 152 bpm sits in the upper aerobic zone.",
+                "caloriesBurned": "About 640 kcal, in line with the distance and effort."
+              },
+              "improvements": [
+                {"area": "Cadence", "recommendation": "Aim for 170-175 steps per minute to reduce ground contact time."},
+                {"area": "Finish", "recommendation": "Try a faster last kilometre to practise running on tired legs."}
+              ],
+              "suggestions": [
+                {"workout": "Intervals", "description": "6 x 800m at 5k pace with 400m easy jog recoveries."},
+                {"workout": "Long run", "description": "14-16 km at an easy, conversational pace."}
+              ],
+              "safety": ["Hydrate before and after the run.", "Warm up for ten minutes before the intervals."]
+            }""";
+
+    @Param({"wellFormed", "fenced", "malformed"})
+    private String payload;
+
+    private final ActivityAIService service = new ActivityAIService(null, null, null, null, null);
+    private final Activity activity = new Activity();
+    private String response;
+
+    @Setup
+    public void setUp() throws Exception {
+        ((Logger) LoggerFactory.getLogger("org.choubi")).setLevel(Level.OFF);
+        activity.setId("activity-1");
+        activity.setUserId("user-1");
+        activity.setType(ActivityType.RUNNING);
+        String text = switch (payload) {
+            case "wellFormed" -> RECOMMENDATION;
+            case "fenced" -> "```json\n" + RECOMMENDATION + "\n```";
+            case "malformed" -> "Here is your analysis: the run went well, keep it up!";
+            default -> throw new IllegalArgumentException(payload);
+        };
+        // Roughly what generateContent sends back around the text
+        response = new ObjectMapper().writeValueAsString(Map.of(
+                "candidates", List.of(Map.of(
+                        "content", Map.of("role", "model", "parts", List.of(Map.of("text", text))),
+                        "finishReason", "STOP",
+                        "safetyRatings", List.of(Map.of("category", "HARM_CATEGORY_DANGEROUS_CONTENT", "probability", "NEGLIGIBLE")))),
+                "usageMetadata", Map.of("promptTokenCount", 180, "candidatesTokenCount", 240, "totalTokenCount", 420),
+                "modelVersion", "gemini-2.0-flash"));
+    }
+
+    @Benchmark
+    public Recommendation streaming() {
+        return service.proccessAIResponse(activity, response);
+    }
+
+    @Benchmark
+    public Recommendation tree() {
+        return TreeParser.process(activity, response);
+    }
+
+    // The parser this replaced, as it was
+    private static final class TreeParser {
+
+        static Recommendation process(Activity activity, String aiResponse) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                JsonNode root = mapper.readTree(aiResponse);
+                JsonNode textNode = root.path("candidates").path(0).path("content").path("parts").path(0).path("text");
+                if (textNode.isMissingNode() || textNode.isNull()) {
+                    return defaultRecommendation(activity);
+                }
+                String cleaned = textNode.asText().trim()
+                        .replaceFirst("^```(?i:json)?\\s*", "")
+                        .replaceFirst("\\s*```$", "")
+                        .trim();
+                JsonNode content;
+                try {
+                    content = mapper.readTree(cleaned);
+                } catch (Exception e) {
+                    return defaultRecommendation(activity);
+                }
+                StringBuilder analysis = new StringBuilder();
+                JsonNode analysisNode = content.path("analysis");
+                analysis.append("Overall Analysis :").append(analysisNode.path("overall").asText());
+                analysis.append("\nPace Analysis :").append(analysisNode.path("pace").asText());
+                analysis.append("\n Heart Rate Analysis").append(analysisNode.path("heartRate").asText());
+                analysis.append("\n Calories Burned Analysis :").append(analysisNode.path("caloriesBurned").asText());
+                List<String> improvements = new ArrayList<>();
+                for (JsonNode improvement : content.path("improvements")) {
+                    improvements.add(String.format("%s : %s", improvement.path("area").asText(), improvement.path("recommendation").asText()));
+                }
+                List<String> suggestions = new ArrayList<>();
+                for (JsonNode suggestion : content.path("suggestions")) {
+                    suggestions.add(String.format("%s : %s", suggestion.path("workout").asText(), suggestion.path("description").asText()));
+                }
+                List<String> safety = new ArrayList<>();
+                for (JsonNode tip : content.path("safety")) {
+                    if (tip.isTextual()) {
+                        safety.add(tip.asText());
+                    }
+                }
+                return Recommendation.builder()
+                        .activityId(activity.getId())
+                        .userId(activity.getUserId())
+                        .activityType(activity.getType().toString())
+                        .recommendation(analysis.toString())
+                        .improvements(improvements)
+                        .suggestions(suggestions)
+                        .safety(safety)
+                        .createdAt(LocalDateTime.now())
+                        .build();
+            } catch (Exception e) {
+                return defaultRecommendation(activity);
+            }
+        }
+
+        private static Recommendation defaultRecommendation(Activity activity) {
+            return Recommendation.builder().activityId(activity.getId()).recommendation("default").build();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.choubi.aiservice.benchmark;
+
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityMetrics;
+import org.choubi.aiservice.model.ActivityType;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.model.UserBaseline;
+import org.choubi.aiservice.service.LocalRecommendationEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the local tier per activity: {@code deviates} decides whether Gemini is needed,
+ * {@code recommend} writes the recommendation, {@code record} adds the activity to the baseline.
+ * <p>
+ * Run with:
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt &&
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main LocalRecommendationEngineBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalRecommendationEngineBenchmark {
+
+    private final LocalRecommendationEngine engine = new LocalRecommendationEngine();
+    private final UserBaseline baseline = new UserBaseline("user-1", ActivityType.RUNNING);
+    private Activity activity;
+
+    @Setup
+    public void setUp() {
+        ReflectionTestUtils.setField(engine, "minSamples", 5);
+        ReflectionTestUtils.setField(engine, "deviationThreshold", 2.0);
+        for (int i = 0; i < 50; i++) {
+            baseline.record(run(5.2 + (i % 5) * 0.1, 35 + (i % 4) * 5, 150 + (i % 3) * 5));
+        }
+        activity = run(5.6, 50, 148);
+    }
+
+    @Benchmark
+    public boolean deviates() {
+        return engine.deviates(activity, baseline);
+    }
+
+    @Benchmark
+    public Recommendation recommend() {
+        return engine.recommend(activity, baseline);
+    }
+
+    @Benchmark
+    public UserBaseline record() {
+        UserBaseline copy = new UserBaseline("user-1", ActivityType.RUNNING);
+        copy.record(activity);
+        return copy;
+    }
+
+    private static Activity run(double pace, int duration, int avgHeartRate) {
+        Activity activity = new Activity();
+        activity.setId("activity-1");
+        activity.setUserId("user-1");
+        activity.setType(ActivityType.RUNNING);
+        activity.setDuration(duration);
+        activity.setCaloriesBurned(duration * 10);
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.setPace(pace);
+        metrics.setAvgHeartRate(avgHeartRate);
+        metrics.setMaxHeartRate(172);
+        metrics.setCadence(166);
+        activity.setAdditionalMetrics(metrics);
+        return activity;
+    }
+}
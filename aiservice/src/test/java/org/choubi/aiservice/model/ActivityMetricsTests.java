@@ -0,0 +1,86 @@
+package org.choubi.aiservice.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Same cases as activityservice's ActivityMetricsTests; the two copies of the class must read alike
+class ActivityMetricsTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void roundTripsKnownAndUnknownKeys() throws Exception {
+        String json = "{\"distance\":10.4,\"pace\":5.45,\"elevationGain\":120.5,\"avgHeartRate\":152,\"maxHeartRate\":181,"
+                + "\"cadence\":172,\"shoe\":\"Pegasus\",\"splits\":[5.1,5.3],\"weather\":{\"tempC\":18}}";
+
+        ActivityMetrics metrics = objectMapper.readValue(json, ActivityMetrics.class);
+
+        assertThat(metrics.getDistance()).isEqualTo(10.4);
+        assertThat(metrics.getPace()).isEqualTo(5.45);
+        assertThat(metrics.getElevationGain()).isEqualTo(120.5);
+        assertThat(metrics.getAvgHeartRate()).isEqualTo(152);
+        assertThat(metrics.getMaxHeartRate()).isEqualTo(181);
+        assertThat(metrics.getCadence()).isEqualTo(172);
+        assertThat(metrics.getExtra()).containsOnlyKeys("shoe", "splits", "weather");
+        assertThat(objectMapper.readTree(objectMapper.writeValueAsString(metrics))).isEqualTo(objectMapper.readTree(json));
+    }
+
+    @Test
+    void readsLegacySpellings() throws Exception {
+        ActivityMetrics metrics = objectMapper.readValue(
+                "{\"heartRate\":148,\"maxHr\":175,\"elevation\":80,\"distanceKm\":5.2}", ActivityMetrics.class);
+
+        assertThat(metrics.getAvgHeartRate()).isEqualTo(148);
+        assertThat(metrics.getMaxHeartRate()).isEqualTo(175);
+        assertThat(metrics.getElevationGain()).isEqualTo(80);
+        assertThat(metrics.getDistance()).isEqualTo(5.2);
+        assertThat(metrics.getExtra()).isNull();
+        assertThat(objectMapper.writeValueAsString(metrics))
+                .isEqualTo("{\"distance\":5.2,\"elevationGain\":80.0,\"avgHeartRate\":148,\"maxHeartRate\":175}");
+    }
+
+    @Test
+    void readsNumbersSentAsStrings() throws Exception {
+        ActivityMetrics metrics = objectMapper.readValue("{\"distance\":\" 7.5 \",\"avgHr\":\"150\"}", ActivityMetrics.class);
+
+        assertThat(metrics.getDistance()).isEqualTo(7.5);
+        assertThat(metrics.getAvgHeartRate()).isEqualTo(150);
+        assertThat(metrics.getExtra()).isNull();
+    }
+
+    @Test
+    void dropsBlankValuesAndKeepsNonNumericKnownKeysAsSent() throws Exception {
+        ActivityMetrics metrics = objectMapper.readValue(
+                "{\"pace\":\"\",\"cadence\":null,\"heartRate\":\"high\",\"shoe\":\"  \"}", ActivityMetrics.class);
+
+        assertThat(ActivityMetrics.isPresent(metrics.getPace())).isFalse();
+        assertThat(ActivityMetrics.isPresent(metrics.getCadence())).isFalse();
+        assertThat(metrics.getExtra()).isEqualTo(Map.of("heartRate", "high"));
+    }
+
+    @Test
+    void roundsHeartRateAndCadence() {
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.put(ActivityMetrics.AVG_HEART_RATE, 147.5);
+        metrics.put(ActivityMetrics.MAX_HEART_RATE, "180.4");
+        metrics.put(ActivityMetrics.CADENCE, 171.6f);
+
+        assertThat(metrics.getAvgHeartRate()).isEqualTo(148);
+        assertThat(metrics.getMaxHeartRate()).isEqualTo(180);
+        assertThat(metrics.getCadence()).isEqualTo(172);
+    }
+
+    @Test
+    void emptyObjectStaysEmpty() throws Exception {
+        ActivityMetrics metrics = objectMapper.readValue("{}", ActivityMetrics.class);
+
+        assertThat(metrics.isEmpty()).isTrue();
+        assertThat(objectMapper.writeValueAsString(metrics)).isEqualTo("{}");
+        assertThat(objectMapper.readValue("{\"laps\":[]}", ActivityMetrics.class).getExtra()).isEqualTo(Map.of("laps", List.of()));
+    }
+}
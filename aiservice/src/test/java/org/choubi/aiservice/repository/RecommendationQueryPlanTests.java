@@ -0,0 +1,108 @@
+package org.choubi.aiservice.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.choubi.aiservice.config.MongoConfig;
+import org.choubi.aiservice.model.Recommendation;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the repository queries against a real MongoDB with the indexes created the same way as at
+ * startup, and fails when the winning plan of any issued query is a collection scan (see
+ * {@link QueryPlans}).
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RecommendationQueryPlanTests {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7");
+
+    private static final QueryPlans queryPlans = new QueryPlans();
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static RecommendationRepository recommendationRepository;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongo.getReplicaSetUrl("plans")))
+                .addCommandListener(queryPlans)
+                .build());
+
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Recommendation.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, "plans"), converter);
+        MongoConfig.createIndexes(mongoTemplate);
+
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(mongoTemplate);
+        recommendationRepository = factory.getRepository(RecommendationRepository.class);
+
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            recommendations.add(Recommendation.builder()
+                    .activityId("activity-" + i)
+                    .userId("user-" + (i % 10))
+                    .activityType("RUNNING")
+                    .recommendation("Keep going")
+                    .createdAt(LocalDateTime.now().minusDays(i))
+                    .build());
+        }
+        recommendationRepository.saveAll(recommendations);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @BeforeEach
+    void clearIssued() {
+        queryPlans.clear();
+    }
+
+    @Test
+    void findByUserIdUsesIndex() {
+        recommendationRepository.findByUserId("user-1");
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void findByActivityIdUsesIndex() {
+        recommendationRepository.findByActivityId("activity-42");
+        assertNoCollectionScan();
+    }
+
+    @Test
+    void existsByActivityIdUsesIndex() {
+        recommendationRepository.existsByActivityId("activity-42");
+        assertNoCollectionScan();
+    }
+
+    private void assertNoCollectionScan() {
+        queryPlans.assertNoCollectionScan(mongoTemplate.getDb());
+    }
+}
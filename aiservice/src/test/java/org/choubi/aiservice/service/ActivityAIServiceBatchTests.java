@@ -0,0 +1,107 @@
+package org.choubi.aiservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityType;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.repository.CachedRecommendationRepository;
+import org.choubi.aiservice.repository.UserBaselineRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ActivityAIServiceBatchTests {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final GeminiService geminiService = mock(GeminiService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationCache cache = new RecommendationCache(mock(CachedRecommendationRepository.class), meterRegistry, 100, 60);
+    private final ActivityAIService service = new ActivityAIService(geminiService, cache,
+            new UserBaselineService(mock(UserBaselineRepository.class), meterRegistry, 100), new LocalRecommendationEngine(), meterRegistry);
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+
+    {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        ReflectionTestUtils.setField(service, "batchEnabled", true);
+        ReflectionTestUtils.setField(service, "batchMaxItems", 3);
+        ReflectionTestUtils.setField(service, "batchMaxWaitMs", 1000L);
+        ReflectionTestUtils.setField(service, "batchConcurrency", 2);
+        service.startBatching();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stopBatching();
+    }
+
+    @Test
+    void splitsABatchReplyAndAsksAgainForMissingActivities() throws Exception {
+        when(geminiService.getGeminiResponse(anyString())).thenAnswer(invocation -> {
+            String prompt = invocation.getArgument(0);
+            prompts.add(prompt);
+            return Mono.just(prompt.contains("JSON array")
+                    ? reply("[" + item("a1", "Steady run") + "," + item("a2", "Easy ride") + "]")
+                    : reply(item(null, "Asked alone")));
+        });
+
+        List<Recommendation> recommendations = Flux.merge(
+                        service.generateActivityRecommendation(activity("a1", ActivityType.RUNNING)),
+                        service.generateActivityRecommendation(activity("a2", ActivityType.CYCLING)),
+                        service.generateActivityRecommendation(activity("a3", ActivityType.YOGA)))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(prompts).hasSize(2);
+        assertThat(prompts.get(0)).contains("Activity ID: a1", "Activity ID: a2", "Activity ID: a3");
+        assertThat(recommendations).extracting(Recommendation::getActivityId).containsExactlyInAnyOrder("a1", "a2", "a3");
+        assertThat(recommendations).filteredOn(r -> r.getActivityId().equals("a1"))
+                .singleElement().extracting(Recommendation::getRecommendation).asString().contains("Steady run");
+        assertThat(recommendations).filteredOn(r -> r.getActivityId().equals("a3"))
+                .singleElement().extracting(Recommendation::getRecommendation).asString().contains("Asked alone");
+        assertThat(meterRegistry.counter("gemini.batch.missing").count()).isEqualTo(1);
+    }
+
+    @Test
+    void readsRepliesKeyedByActivityId() throws Exception {
+        String reply = reply("{\"a1\":" + item(null, "Keyed") + "}");
+
+        Map<String, Recommendation> recommendations = service.proccessAIResponse(
+                List.of(activity("a1", ActivityType.RUNNING), activity("a2", ActivityType.RUNNING)), reply);
+
+        assertThat(recommendations).containsOnlyKeys("a1");
+        assertThat(recommendations.get("a1").getRecommendation()).contains("Keyed");
+    }
+
+    private static String item(String activityId, String overall) {
+        return (activityId != null ? "{\"activityId\":\"" + activityId + "\"," : "{")
+                + "\"analysis\":{\"overall\":\"" + overall + "\"},\"improvements\":[],\"suggestions\":[],\"safety\":[\"Hydrate\"]}";
+    }
+
+    private static String reply(String text) throws Exception {
+        return MAPPER.writeValueAsString(Map.of("candidates", List.of(
+                Map.of("content", Map.of("parts", List.of(Map.of("text", text)))))));
+    }
+
+    private static Activity activity(String id, ActivityType type) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        activity.setType(type);
+        activity.setDuration(30);
+        activity.setCaloriesBurned(300);
+        return activity;
+    }
+}
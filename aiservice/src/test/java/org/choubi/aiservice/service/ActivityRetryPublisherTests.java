@@ -0,0 +1,98 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.net.ConnectException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ActivityRetryPublisherTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ActivityRetryPublisher publisher =
+            new ActivityRetryPublisher(rabbitTemplate, meterRegistry, "activity.queue", "activity.backfill.queue", new long[]{10, 60, 600}, true);
+
+    @Test
+    void sendsEachAttemptToTheNextTier() {
+        publisher.retryOrPark(message(null), new IllegalStateException("503"));
+        publisher.retryOrPark(message(1), new IllegalStateException("503"));
+
+        Message first = sent("activity.queue.retry.10s");
+        assertThat(first.getBody()).isEqualTo("{\"id\":\"a1\"}".getBytes());
+        assertThat(first.getMessageProperties().getContentType()).isEqualTo("application/json");
+        assertThat(first.getMessageProperties().<Integer>getHeader(ActivityRetryPublisher.RETRY_COUNT_HEADER)).isEqualTo(1);
+        assertThat(first.getMessageProperties().<String>getHeader(ActivityRetryPublisher.LAST_ERROR_HEADER))
+                .isEqualTo("IllegalStateException: 503");
+        assertThat(first.getMessageProperties().getHeaders()).doesNotContainKey("x-death");
+        assertThat(sent("activity.queue.retry.60s").getMessageProperties().<Integer>getHeader(ActivityRetryPublisher.RETRY_COUNT_HEADER))
+                .isEqualTo(2);
+    }
+
+    @Test
+    void retriesBackfillMessagesInTheBackfillLane() {
+        Message message = message(null);
+        message.getMessageProperties().setConsumerQueue("activity.backfill.queue");
+
+        publisher.retryOrPark(message, new IllegalStateException("503"));
+
+        sent("activity.backfill.queue.retry.10s");
+    }
+
+    @Test
+    void parksTheMessageAfterTheLastTier() {
+        publisher.retryOrPark(message(3), new IllegalStateException("503"));
+
+        assertThat(sent("activity.queue.parking-lot").getMessageProperties().<Integer>getHeader(ActivityRetryPublisher.RETRY_COUNT_HEADER))
+                .isEqualTo(3);
+        assertThat(meterRegistry.counter("ai.retry.parked").count()).isEqualTo(1);
+    }
+
+    @Test
+    void requeuesWhenTheRetryCannotBeSent() {
+        doThrow(new AmqpConnectException(new ConnectException("down"))).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class));
+
+        assertThatThrownBy(() -> publisher.retryOrPark(message(null), new IllegalStateException("503")))
+                .isInstanceOf(ImmediateRequeueAmqpException.class);
+    }
+
+    @Test
+    void dropsTheMessageWhenRetriesAreOff() {
+        new ActivityRetryPublisher(rabbitTemplate, meterRegistry, "activity.queue", "activity.backfill.queue", new long[]{10}, false)
+                .retryOrPark(message(null), new IllegalStateException("503"));
+
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    private Message sent(String queue) {
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq(""), eq(queue), captor.capture());
+        return captor.getValue();
+    }
+
+    private static Message message(Integer retryCount) {
+        Message message = MessageBuilder.withBody("{\"id\":\"a1\"}".getBytes())
+                .setContentType("application/json")
+                .setHeader("x-death", "previous rounds")
+                .build();
+        if (retryCount != null) {
+            message.getMessageProperties().setHeader(ActivityRetryPublisher.RETRY_COUNT_HEADER, retryCount);
+        }
+        return message;
+    }
+}
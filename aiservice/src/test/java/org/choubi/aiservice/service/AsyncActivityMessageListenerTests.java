@@ -0,0 +1,157 @@
+package org.choubi.aiservice.service;
+
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.repository.RecommendationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncActivityMessageListenerTests {
+
+    private final ActivityAIService activityService = mock(ActivityAIService.class);
+    private final RecommendationRepository recommendationRepository = mock(RecommendationRepository.class);
+    private final ActivityRetryPublisher retryPublisher = mock(ActivityRetryPublisher.class);
+    private final RecommendationClaims claims = mock(RecommendationClaims.class);
+    private final AsyncActivityMessageListener listener = new AsyncActivityMessageListener(activityService, recommendationRepository,
+            mock(GeminiRateLimiter.class), retryPublisher, new RecommendationGenerationPolicy("eager", Set.of()), claims, 2, 1);
+    private final Message message = new Message(new byte[0]);
+
+    @BeforeEach
+    void claimEverything() {
+        when(claims.claim(any())).thenReturn(RecommendationClaims.Outcome.CLAIMED);
+    }
+
+    @Test
+    void completesWhenTheRecommendationIsStored() throws Exception {
+        Recommendation recommendation = Recommendation.builder().activityId("a1").build();
+        when(activityService.generateActivityRecommendation(any())).thenReturn(Mono.just(recommendation));
+        when(recommendationRepository.save(recommendation)).thenReturn(recommendation);
+
+        listener.handleActivityMessage(activity("a1"), message).get(2, TimeUnit.SECONDS);
+
+        verify(recommendationRepository).save(recommendation);
+    }
+
+    @Test
+    void failedMessagesAreScheduledForRetryAndComplete() throws Exception {
+        IllegalStateException failure = new IllegalStateException("boom");
+        when(activityService.generateActivityRecommendation(any())).thenReturn(Mono.error(failure));
+
+        CompletableFuture<Void> done = listener.handleActivityMessage(activity("a1"), message);
+
+        assertThat(done.get(2, TimeUnit.SECONDS)).isNull();
+        verify(claims).release("a1");
+        verify(retryPublisher).retryOrPark(message, failure);
+    }
+
+    @Test
+    void redeliveredMessageForAStoredRecommendationIsSkipped() throws Exception {
+        when(claims.claim("a1")).thenReturn(RecommendationClaims.Outcome.DONE);
+
+        assertThat(listener.handleActivityMessage(activity("a1"), message).get(2, TimeUnit.SECONDS)).isNull();
+
+        verify(activityService, never()).generateActivityRecommendation(any());
+        verify(retryPublisher, never()).retryOrPark(any(), any());
+    }
+
+    @Test
+    void messageClaimedElsewhereIsCheckedAgainLater() throws Exception {
+        when(claims.claim("a1")).thenReturn(RecommendationClaims.Outcome.BUSY);
+
+        assertThat(listener.handleActivityMessage(activity("a1"), message).get(2, TimeUnit.SECONDS)).isNull();
+
+        verify(activityService, never()).generateActivityRecommendation(any());
+        verify(retryPublisher).retryOrPark(eq(message), any(IllegalStateException.class));
+    }
+
+    @Test
+    void waitsForAFreeSlotBeyondMaxInFlight() throws Exception {
+        Sinks.Empty<Void> gemini = Sinks.empty();
+        AtomicInteger running = new AtomicInteger();
+        when(activityService.generateActivityRecommendation(any())).thenAnswer(invocation -> {
+            running.incrementAndGet();
+            return gemini.asMono().then(Mono.just(Recommendation.builder().build()));
+        });
+        listener.handleActivityMessage(activity("a1"), message);
+        listener.handleActivityMessage(activity("a2"), message);
+
+        CompletableFuture<CompletableFuture<Void>> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return listener.handleActivityMessage(activity("a3"), message);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(third).isNotDone();
+        assertThat(running).hasValue(2);
+
+        gemini.tryEmitEmpty();
+        third.get(2, TimeUnit.SECONDS).get(2, TimeUnit.SECONDS);
+        assertThat(running).hasValue(3);
+    }
+
+    @Test
+    void backfillLeavesTheReservedSlotToLiveMessages() throws Exception {
+        Sinks.Empty<Void> gemini = Sinks.empty();
+        when(activityService.generateActivityRecommendation(any()))
+                .thenAnswer(invocation -> gemini.asMono().then(Mono.just(Recommendation.builder().build())));
+        listener.handleActivityMessage(activity("live-1"), message);
+
+        CompletableFuture<CompletableFuture<Void>> backfill = CompletableFuture.supplyAsync(() -> {
+            try {
+                return listener.handleBackfillMessage(activity("b1"), message);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        // One of two slots is taken and the other is reserved for live traffic
+        assertThat(backfill).isNotDone();
+        CompletableFuture<Void> live = listener.handleActivityMessage(activity("live-2"), message);
+
+        gemini.tryEmitEmpty();
+        live.get(2, TimeUnit.SECONDS);
+        backfill.get(2, TimeUnit.SECONDS).get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void onDemandModeOnlyProcessesOptedInUsers() throws Exception {
+        AsyncActivityMessageListener onDemand = new AsyncActivityMessageListener(activityService, recommendationRepository,
+                mock(GeminiRateLimiter.class), retryPublisher, new RecommendationGenerationPolicy("on-demand", Set.of("opted-in")), claims, 2, 1);
+        Recommendation recommendation = Recommendation.builder().activityId("a2").build();
+        when(activityService.generateActivityRecommendation(any())).thenReturn(Mono.just(recommendation));
+        when(recommendationRepository.save(recommendation)).thenReturn(recommendation);
+        Activity optedIn = activity("a2");
+        optedIn.setUserId("opted-in");
+
+        onDemand.handleActivityMessage(activity("a1"), message).get(2, TimeUnit.SECONDS);
+        onDemand.handleBackfillMessage(activity("a1"), message).get(2, TimeUnit.SECONDS);
+        verify(activityService, never()).generateActivityRecommendation(any());
+
+        onDemand.handleActivityMessage(optedIn, message).get(2, TimeUnit.SECONDS);
+        verify(activityService).generateActivityRecommendation(optedIn);
+    }
+
+    private static Activity activity(String id) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        return activity;
+    }
+}
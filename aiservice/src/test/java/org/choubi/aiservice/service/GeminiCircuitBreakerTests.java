@@ -0,0 +1,83 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiCircuitBreakerTests {
+
+    // Opens after 2 failures out of 4 and is half-open again right away
+    private final GeminiCircuitBreaker breaker = new GeminiCircuitBreaker(new SimpleMeterRegistry(), 4, 4, 50, 0);
+
+    @Test
+    void slowCallFromBeforeTheBreakerOpenedDoesNotDecideTheTrial() {
+        Sinks.One<String> slow = Sinks.one();
+        breaker.protect(slow.asMono(), e -> true).subscribe();
+        open();
+        Sinks.One<String> trial = Sinks.one();
+        breaker.protect(trial.asMono(), e -> true).subscribe();
+
+        slow.tryEmitValue("late");
+
+        assertThat(breaker.getState()).isEqualTo(GeminiCircuitBreaker.State.HALF_OPEN);
+        StepVerifier.create(breaker.protect(Mono.just("second trial"), e -> true))
+                .expectError(GeminiUnavailableException.class)
+                .verify();
+
+        trial.tryEmitValue("ok");
+
+        assertThat(breaker.getState()).isEqualTo(GeminiCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void cancellingAnotherCallKeepsTheTrialSlotTaken() {
+        Disposable slow = breaker.protect(Sinks.<String>one().asMono(), e -> true).subscribe();
+        open();
+        breaker.protect(Sinks.<String>one().asMono(), e -> true).subscribe();
+
+        slow.dispose();
+
+        StepVerifier.create(breaker.protect(Mono.just("second trial"), e -> true))
+                .expectError(GeminiUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    void cancelledTrialLetsTheNextCallTry() {
+        open();
+        Disposable trial = breaker.protect(Sinks.<String>one().asMono(), e -> true).subscribe();
+
+        trial.dispose();
+
+        StepVerifier.create(breaker.protect(Mono.just("ok"), e -> true))
+                .expectNext("ok")
+                .verifyComplete();
+        assertThat(breaker.getState()).isEqualTo(GeminiCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedTrialOpensTheBreakerAgain() {
+        open();
+
+        StepVerifier.create(breaker.protect(Mono.error(new IllegalStateException("503")), e -> true))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        // With openSeconds 0 it is half-open again at once, but the window starts over
+        assertThat(breaker.getState()).isEqualTo(GeminiCircuitBreaker.State.HALF_OPEN);
+    }
+
+    private void open() {
+        IntStream.range(0, 4).forEach(i -> breaker.protect(Mono.error(new IllegalStateException("503")), e -> true)
+                .onErrorResume(e -> Mono.empty())
+                .block());
+        assertThat(breaker.getState()).isEqualTo(GeminiCircuitBreaker.State.HALF_OPEN);
+    }
+}
@@ -0,0 +1,94 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiRateLimiterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void halvesTheConcurrencyLimitOnOverloadAndGrowsItOnSuccess() {
+        GeminiRateLimiter limiter = new GeminiRateLimiter(meterRegistry, 0, 0, 8, 1, 32, 8);
+
+        StepVerifier.create(limiter.limit(10, Mono.error(new IllegalStateException("429")), e -> true))
+                .verifyError(IllegalStateException.class);
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(4);
+
+        // The rest of the same burst of rejections does not halve it again
+        StepVerifier.create(limiter.limit(10, Mono.error(new IllegalStateException("429")), e -> true))
+                .verifyError(IllegalStateException.class);
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(4);
+
+        StepVerifier.create(limiter.limit(10, Mono.just("ok"), e -> true))
+                .expectNext("ok")
+                .verifyComplete();
+        assertThat(limiter.getConcurrencyLimit()).isEqualTo(4.25);
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(meterRegistry.counter("gemini.limiter.decreases").count()).isEqualTo(1);
+    }
+
+    @Test
+    void pacesCallsToTheRequestBudget() {
+        GeminiRateLimiter limiter = new GeminiRateLimiter(meterRegistry, 5, 0, 8, 1, 32, 100);
+
+        long started = System.nanoTime();
+        Flux.range(0, 8)
+                .flatMap(i -> limiter.limit(10, Mono.just(i), e -> false))
+                .blockLast(Duration.ofSeconds(5));
+
+        // Five fit in the bucket, the other three wait 200 ms each
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(500));
+    }
+
+    @Test
+    void waitsForTheTokenBudget() {
+        GeminiRateLimiter limiter = new GeminiRateLimiter(meterRegistry, 0, 6000, 8, 1, 32, 100);
+
+        limiter.limit(6000, Mono.just("large"), e -> false).block(Duration.ofSeconds(1));
+        long started = System.nanoTime();
+        limiter.limit(50, Mono.just("small"), e -> false).block(Duration.ofSeconds(5));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(450));
+    }
+
+    @Test
+    void holdsCallsAndTheListenerWhileTheConcurrencyLimitIsReached() throws Exception {
+        GeminiRateLimiter limiter = new GeminiRateLimiter(meterRegistry, 0, 0, 1, 1, 1, 1);
+        Sinks.One<String> gemini = Sinks.one();
+        AtomicBoolean secondStarted = new AtomicBoolean();
+
+        limiter.limit(10, gemini.asMono(), e -> false).subscribe();
+        CompletableFuture<String> second = limiter.limit(10, Mono.fromSupplier(() -> {
+            secondStarted.set(true);
+            return "second";
+        }), e -> false).toFuture();
+        CompletableFuture<Void> listener = CompletableFuture.runAsync(() -> {
+            try {
+                limiter.awaitCapacity();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(200);
+        assertThat(secondStarted).isFalse();
+        assertThat(limiter.getWaiting()).isEqualTo(1);
+        assertThat(listener).isNotDone();
+
+        gemini.tryEmitValue("first");
+        assertThat(second.get(2, TimeUnit.SECONDS)).isEqualTo("second");
+        listener.get(2, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,91 @@
+package org.choubi.aiservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.choubi.aiservice.dto.GeminiRecommendation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiResponseParserTests {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String RECOMMENDATION = """
+            {"analysis":{"overall":"Solid run","pace":"Even"},
+             "improvements":[{"area":"Cadence","recommendation":"Shorter steps"}],
+             "suggestions":[{"workout":"Intervals","description":"6 x 400m"}],
+             "safety":["Hydrate",{"text":"Warm up"},{"other":"ignored"}],
+             "confidence":0.9}""";
+
+    private final GeminiResponseParser parser = new GeminiResponseParser();
+
+    @Test
+    void readsTheTextOfTheFirstPartAndSkipsEverythingElse() throws Exception {
+        String response = """
+                {"modelVersion":"flash","candidates":[{"finishReason":"STOP","safetyRatings":[{"a":[1,2]}],
+                  "content":{"role":"model","parts":[{"text":"first"},{"text":"second"}]}},
+                  {"content":{"parts":[{"text":"other candidate"}]}}],
+                 "usageMetadata":{"totalTokenCount":42}}""";
+
+        assertThat(parser.extractText(response)).isEqualTo("first");
+        assertThat(parser.extractText("{\"candidates\":[]}")).isNull();
+        assertThat(parser.extractText("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":null}]}}]}")).isNull();
+        assertThat(parser.extractText("")).isNull();
+    }
+
+    @Test
+    void bindsTheModelJsonToTheDto() throws Exception {
+        GeminiRecommendation recommendation = parser.parse(envelope(RECOMMENDATION));
+
+        assertThat(recommendation.analysis().overall()).isEqualTo("Solid run");
+        assertThat(recommendation.analysis().heartRate()).isNull();
+        assertThat(recommendation.improvements()).containsExactly(new GeminiRecommendation.Improvement("Cadence", "Shorter steps"));
+        assertThat(recommendation.suggestions()).containsExactly(new GeminiRecommendation.Suggestion("Intervals", "6 x 400m"));
+        assertThat(recommendation.safety()).extracting(GeminiRecommendation.SafetyTip::text).containsExactly("Hydrate", "Warm up", null);
+    }
+
+    @Test
+    void acceptsFencedReplies() throws Exception {
+        assertThat(parser.parse(envelope("```json\n" + RECOMMENDATION + "\n```")).analysis().overall()).isEqualTo("Solid run");
+        assertThat(parser.parse(envelope("  ```JSON " + RECOMMENDATION + "```  ")).analysis().overall()).isEqualTo("Solid run");
+        assertThat(parser.parse(envelope("```\n" + RECOMMENDATION + "\n```")).analysis().overall()).isEqualTo("Solid run");
+    }
+
+    @Test
+    void stripsCodeFencesLikeBefore() {
+        assertThat(GeminiResponseParser.stripCodeFence(" {\"a\":1} ")).isEqualTo("{\"a\":1}");
+        assertThat(GeminiResponseParser.stripCodeFence("```json```")).isEmpty();
+        assertThat(GeminiResponseParser.stripCodeFence("```")).isEmpty();
+        assertThat(GeminiResponseParser.stripCodeFence("{\"a\":\"```\"}")).isEqualTo("{\"a\":\"```\"}");
+    }
+
+    @Test
+    void returnsNullForMalformedReplies() throws Exception {
+        assertThat(parser.parse("not json")).isNull();
+        assertThat(parser.parse("{\"candidates\":[{\"content\":{}}]}")).isNull();
+        assertThat(parser.parse(envelope("Sorry, I cannot help with that."))).isNull();
+        assertThat(parser.parse(envelope("{\"analysis\":{\"overall\":\"cut off"))).isNull();
+    }
+
+    @Test
+    void splitsBatchRepliesByActivityId() throws Exception {
+        Map<String, GeminiRecommendation> array = parser.parseBatch(envelope("""
+                [{"activityId":"a1","analysis":{"overall":"one"}}, "noise", {"analysis":{"overall":"no id"}},
+                 {"activityId":"a2","analysis":{"overall":"two"}}]"""));
+        Map<String, GeminiRecommendation> keyed = parser.parseBatch(envelope("""
+                {"a1":{"analysis":{"overall":"one"}},"a2":[]}"""));
+
+        assertThat(array).containsOnlyKeys("a1", "a2");
+        assertThat(array.get("a2").analysis().overall()).isEqualTo("two");
+        assertThat(keyed).containsOnlyKeys("a1");
+        assertThat(keyed.get("a1").activityId()).isEqualTo("a1");
+        assertThat(parser.parseBatch(envelope("[{\"activityId\":\"a1\"},{\"activityId\":"))).containsOnlyKeys("a1");
+    }
+
+    private static String envelope(String text) throws Exception {
+        return MAPPER.writeValueAsString(Map.of("candidates", List.of(
+                Map.of("content", Map.of("parts", List.of(Map.of("text", text)))))));
+    }
+}
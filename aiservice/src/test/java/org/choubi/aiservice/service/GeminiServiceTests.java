@@ -0,0 +1,107 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiServiceTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Queue<HttpStatus> replies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final GeminiCircuitBreaker circuitBreaker = new GeminiCircuitBreaker(meterRegistry, 4, 4, 50, 60);
+    private final GeminiService geminiService = new GeminiService(WebClient.builder().exchangeFunction(request -> {
+        requests.incrementAndGet();
+        HttpStatus status = replies.isEmpty() ? HttpStatus.OK : replies.poll();
+        return Mono.just(ClientResponse.create(status).header("Retry-After", "0").body("{\"status\":" + status.value() + "}").build());
+    }), circuitBreaker, new GeminiRateLimiter(meterRegistry, 0, 0, 4, 1, 32, 8), meterRegistry);
+
+    {
+        ReflectionTestUtils.setField(geminiService, "GEMINI_API_URL", "http://gemini.test/v1/models/flash:generateContent");
+        ReflectionTestUtils.setField(geminiService, "GEMINI_API_KEY", "key");
+        ReflectionTestUtils.setField(geminiService, "GEMINI_API_FALLBACK_URL", "");
+        ReflectionTestUtils.setField(geminiService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(geminiService, "baseBackoffMs", 10L);
+        ReflectionTestUtils.setField(geminiService, "maxBackoffMs", 1000L);
+        ReflectionTestUtils.setField(geminiService, "timeoutMs", 5000L);
+    }
+
+    @Test
+    void retriesOverloadedRepliesOnATimer() {
+        replies.add(HttpStatus.SERVICE_UNAVAILABLE);
+        replies.add(HttpStatus.TOO_MANY_REQUESTS);
+
+        StepVerifier.create(geminiService.getGeminiResponse("prompt"))
+                .expectNext("{\"status\":200}")
+                .verifyComplete();
+
+        assertThat(requests).hasValue(3);
+        assertThat(meterRegistry.counter("gemini.retries", "status", "503").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("gemini.retries", "status", "429").count()).isEqualTo(1);
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        for (int i = 0; i < 3; i++) {
+            replies.add(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        StepVerifier.create(geminiService.getGeminiResponse("prompt"))
+                .expectError(WebClientResponseException.ServiceUnavailable.class)
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(requests).hasValue(3);
+    }
+
+    @Test
+    void doesNotRetryOtherErrors() {
+        replies.add(HttpStatus.BAD_REQUEST);
+
+        StepVerifier.create(geminiService.getGeminiResponse("prompt"))
+                .expectError(WebClientResponseException.BadRequest.class)
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void openCircuitSkipsGemini() {
+        ReflectionTestUtils.setField(geminiService, "maxAttempts", 1);
+        for (int i = 0; i < 4; i++) {
+            replies.add(HttpStatus.INTERNAL_SERVER_ERROR);
+            StepVerifier.create(geminiService.getGeminiResponse("prompt")).expectError().verify(Duration.ofSeconds(2));
+        }
+
+        StepVerifier.create(geminiService.getGeminiResponse("prompt"))
+                .expectError(GeminiUnavailableException.class)
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(requests).hasValue(4);
+        assertThat(circuitBreaker.getState()).isEqualTo(GeminiCircuitBreaker.State.OPEN);
+        assertThat(meterRegistry.get("gemini.circuit.state").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.counter("gemini.circuit.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedRequestsDoNotOpenTheCircuit() {
+        for (int i = 0; i < 4; i++) {
+            replies.add(HttpStatus.BAD_REQUEST);
+            StepVerifier.create(geminiService.getGeminiResponse("prompt")).expectError().verify(Duration.ofSeconds(2));
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(GeminiCircuitBreaker.State.CLOSED);
+    }
+}
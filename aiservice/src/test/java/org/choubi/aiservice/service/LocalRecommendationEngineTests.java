@@ -0,0 +1,121 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityMetrics;
+import org.choubi.aiservice.model.ActivityType;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.model.UserBaseline;
+import org.choubi.aiservice.repository.CachedRecommendationRepository;
+import org.choubi.aiservice.repository.UserBaselineRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LocalRecommendationEngineTests {
+
+    private final LocalRecommendationEngine engine = new LocalRecommendationEngine();
+
+    {
+        ReflectionTestUtils.setField(engine, "minSamples", 5);
+        ReflectionTestUtils.setField(engine, "deviationThreshold", 2.0);
+    }
+
+    @Test
+    void baselineFollowsRecentActivities() {
+        UserBaseline baseline = usualRuns(10);
+
+        assertThat(baseline.getCount()).isEqualTo(10);
+        assertThat(baseline.getPace().getMean()).isBetween(5.4, 5.6);
+        assertThat(baseline.getCaloriesPerMinute().getMean()).isBetween(9.9, 10.1);
+        assertThat(baseline.durationPercentile(0.5)).isEqualTo(45);
+        assertThat(baseline.durationPercentile(0.95)).isEqualTo(50);
+    }
+
+    @Test
+    void onlyActivitiesUnlikeTheUsualOnesDeviate() {
+        assertThat(engine.deviates(run(5.5, 40, 400), usualRuns(3))).as("too little history").isTrue();
+
+        UserBaseline baseline = usualRuns(10);
+        assertThat(engine.deviates(run(5.5, 42, 420), baseline)).isFalse();
+        assertThat(engine.deviates(run(4.2, 42, 420), baseline)).as("much faster").isTrue();
+        assertThat(engine.deviates(run(5.5, 120, 1200), baseline)).as("much longer").isTrue();
+    }
+
+    @Test
+    void comparesTheActivityWithTheBaseline() {
+        Activity slowAndShort = run(6.5, 20, 160);
+        slowAndShort.getAdditionalMetrics().setCadence(150);
+
+        Recommendation recommendation = engine.recommend(slowAndShort, usualRuns(10));
+
+        assertThat(recommendation.getActivityId()).isEqualTo("a1");
+        assertThat(recommendation.getActivityType()).isEqualTo("RUNNING");
+        assertThat(recommendation.getRecommendation())
+                .startsWith("Overall Analysis :Running of 20 minutes, burning 160 kcal. It was shorter than your usual session")
+                .contains("\nPace Analysis :Average pace 6:30 per km, slower than your usual 5:");
+        assertThat(recommendation.getImprovements()).extracting(item -> item.split(" : ")[0])
+                .containsExactly("Pace", "Duration", "Cadence");
+        assertThat(recommendation.getSafety()).contains("Warm up for 5 to 10 minutes before running faster.");
+        assertThat(engine.recommend(slowAndShort, usualRuns(10))).usingRecursiveComparison()
+                .ignoringFields("createdAt").isEqualTo(recommendation);
+    }
+
+    @Test
+    void primaryTierLeavesGeminiTheUnusualActivities() {
+        GeminiService geminiService = mock(GeminiService.class);
+        UserBaselineRepository baselineRepository = mock(UserBaselineRepository.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RecommendationCache cache = new RecommendationCache(mock(CachedRecommendationRepository.class), meterRegistry, 100, 60);
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        ActivityAIService service = new ActivityAIService(geminiService, cache,
+                new UserBaselineService(baselineRepository, meterRegistry, 100), engine, meterRegistry);
+        ReflectionTestUtils.setField(service, "localEnabled", true);
+        ReflectionTestUtils.setField(service, "localPrimary", true);
+        when(baselineRepository.findById(UserBaseline.idOf("u1", ActivityType.RUNNING)))
+                .thenReturn(Optional.of(usualRuns(10)));
+
+        Recommendation usual = service.generateActivityRecommendation(run(5.5, 42, 420)).block(Duration.ofSeconds(2));
+
+        assertThat(usual.getRecommendation()).contains("in line with your usual");
+        verifyNoInteractions(geminiService);
+        assertThat(meterRegistry.counter("ai.recommendation.local", "reason", "primary").count()).isEqualTo(1);
+
+        // Gemini is down for the unusual one: the local engine answers instead of the fixed text
+        when(geminiService.getGeminiResponse(anyString())).thenReturn(Mono.error(new IllegalStateException("bad request")));
+        Recommendation unusual = service.generateActivityRecommendation(run(4.2, 42, 420)).block(Duration.ofSeconds(2));
+
+        assertThat(unusual.getRecommendation()).contains("clearly faster than your usual");
+        assertThat(meterRegistry.counter("ai.recommendation.local", "reason", "fallback").count()).isEqualTo(1);
+    }
+
+    private static UserBaseline usualRuns(int count) {
+        UserBaseline baseline = new UserBaseline("u1", ActivityType.RUNNING);
+        for (int i = 0; i < count; i++) {
+            baseline.record(run(5.4 + (i % 3) * 0.1, 40 + (i % 3) * 5, 400 + (i % 3) * 50));
+        }
+        return baseline;
+    }
+
+    private static Activity run(double pace, int duration, int calories) {
+        Activity activity = new Activity();
+        activity.setId("a1");
+        activity.setUserId("u1");
+        activity.setType(ActivityType.RUNNING);
+        activity.setDuration(duration);
+        activity.setCaloriesBurned(calories);
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.setPace(pace);
+        activity.setAdditionalMetrics(metrics);
+        return activity;
+    }
+}
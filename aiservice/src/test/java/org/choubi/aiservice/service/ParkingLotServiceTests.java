@@ -0,0 +1,78 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ParkingLotServiceTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ParkingLotService service = new ParkingLotService(rabbitTemplate, mock(AmqpAdmin.class), meterRegistry,
+            "activity.queue", "activity.backfill.queue", 1000, 100);
+
+    @Test
+    void returnsAtOnceAndReplaysInTheBackgroundUntilTheParkingLotIsEmpty() throws Exception {
+        AtomicInteger parked = new AtomicInteger(3);
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation -> parked.getAndDecrement() > 0);
+
+        ParkingLotService.ReplayStatus status = service.startReplay(10, 100);
+
+        assertThat(status.getRequested()).isEqualTo(10);
+        awaitDone(status);
+        assertThat(status.getReplayed()).isEqualTo(3);
+        assertThat(meterRegistry.counter("ai.retry.replayed").count()).isEqualTo(3);
+        assertThat(service.lastReplay()).containsSame(status);
+    }
+
+    @Test
+    void stopsAtMax() throws Exception {
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenReturn(true);
+
+        ParkingLotService.ReplayStatus status = service.startReplay(2, 100);
+
+        awaitDone(status);
+        assertThat(status.getReplayed()).isEqualTo(2);
+    }
+
+    @Test
+    void refusesASecondReplayWhileOneIsRunning() throws Exception {
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenReturn(true);
+        ParkingLotService.ReplayStatus first = service.startReplay(5, 1);
+
+        assertThatThrownBy(() -> service.startReplay(5, 1)).isInstanceOf(IllegalStateException.class);
+
+        awaitDone(first);
+        assertThat(service.startReplay(1, 100)).isNotSameAs(first);
+    }
+
+    @Test
+    void rejectsRatesAndSizesOutOfBounds() {
+        assertThatThrownBy(() -> service.startReplay(10, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.startReplay(10, -1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.startReplay(10, Double.NaN)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.startReplay(10, 101)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.startReplay(0, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.startReplay(1001, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(service.lastReplay()).isEmpty();
+    }
+
+    private static void awaitDone(ParkingLotService.ReplayStatus status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (status.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(status.isRunning()).as("replay still running").isFalse();
+    }
+}
@@ -0,0 +1,96 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.ActivityMetrics;
+import org.choubi.aiservice.model.ActivityType;
+import org.choubi.aiservice.model.CachedRecommendation;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.repository.CachedRecommendationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecommendationCacheTests {
+
+    private final CachedRecommendationRepository repository = mock(CachedRecommendationRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationCache cache = new RecommendationCache(repository, meterRegistry, 100, 60);
+
+    {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "durationBucketMinutes", 5);
+        ReflectionTestUtils.setField(cache, "caloriesBucket", 25);
+        ReflectionTestUtils.setField(cache, "costPerCall", 0.5);
+    }
+
+    @Test
+    void nearlyIdenticalActivitiesShareAKey() {
+        String key = cache.features(run(31, 305, 5.1, 148)).key();
+
+        assertThat(cache.features(run(29, 296, 4.9, 151)).key()).isEqualTo(key);
+        assertThat(cache.features(run(36, 305, 5.1, 148)).key()).isNotEqualTo(key);
+        assertThat(cache.features(run(31, 305, 6.0, 148)).key()).isNotEqualTo(key);
+        Activity ride = run(31, 305, 5.1, 148);
+        ride.setType(ActivityType.CYCLING);
+        assertThat(cache.features(ride).key()).isNotEqualTo(key);
+    }
+
+    @Test
+    void answersFromMongoThenFromMemory() {
+        CachedRecommendation cached = CachedRecommendation.builder().id("k").recommendation("Keep going").build();
+        when(repository.findById("k")).thenReturn(Optional.of(cached));
+
+        StepVerifier.create(cache.lookup("k")).expectNext(cached).verifyComplete();
+        when(repository.findById("k")).thenReturn(Optional.empty());
+        StepVerifier.create(cache.lookup("k")).expectNext(cached).verifyComplete();
+
+        assertThat(meterRegistry.counter("ai.recommendation.cache.requests", "result", "mongo").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("ai.recommendation.cache.requests", "result", "memory").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("ai.recommendation.cache.saved.cost").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void missesWhenNothingIsStoredOrMongoFails() {
+        when(repository.findById("absent")).thenReturn(Optional.empty());
+        when(repository.findById("broken")).thenThrow(new IllegalStateException("down"));
+
+        StepVerifier.create(cache.lookup("absent")).verifyComplete();
+        StepVerifier.create(cache.lookup("broken")).verifyComplete();
+
+        assertThat(meterRegistry.counter("ai.recommendation.cache.requests", "result", "miss").count()).isEqualTo(2);
+    }
+
+    @Test
+    void storedAnswersAreServedFromMemory() {
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+        cache.store("k", Recommendation.builder().recommendation("Rest tomorrow").safety(List.of("Hydrate")).build());
+
+        StepVerifier.create(cache.lookup("k"))
+                .assertNext(cached -> {
+                    assertThat(cached.getRecommendation()).isEqualTo("Rest tomorrow");
+                    assertThat(cached.getSafety()).containsExactly("Hydrate");
+                })
+                .verifyComplete();
+    }
+
+    private static Activity run(int duration, int calories, double distance, int heartRate) {
+        Activity activity = new Activity();
+        activity.setType(ActivityType.RUNNING);
+        activity.setDuration(duration);
+        activity.setCaloriesBurned(calories);
+        ActivityMetrics metrics = new ActivityMetrics();
+        metrics.setDistance(distance);
+        metrics.setAvgHeartRate(heartRate);
+        activity.setAdditionalMetrics(metrics);
+        return activity;
+    }
+}
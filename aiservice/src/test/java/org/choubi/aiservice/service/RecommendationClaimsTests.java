@@ -0,0 +1,55 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.aiservice.model.RecommendationClaim;
+import org.choubi.aiservice.repository.RecommendationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class RecommendationClaimsTests {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final RecommendationRepository recommendationRepository = mock(RecommendationRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationClaims claims = new RecommendationClaims(mongoTemplate, recommendationRepository, meterRegistry, 300);
+
+    @Test
+    void storedRecommendationCostsOneLookup() {
+        when(recommendationRepository.existsByActivityId("a1")).thenReturn(true);
+
+        assertThat(claims.claim("a1")).isEqualTo(RecommendationClaims.Outcome.DONE);
+        verifyNoInteractions(mongoTemplate);
+        assertThat(meterRegistry.counter("ai.recommendation.claims", "result", "done").count()).isEqualTo(1);
+    }
+
+    @Test
+    void claimsAnActivityNobodyHolds() {
+        assertThat(claims.claim("a1")).isEqualTo(RecommendationClaims.Outcome.CLAIMED);
+    }
+
+    @Test
+    void liveClaimMakesTheUpsertCollideOnTheId() {
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(RecommendationClaim.class)))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+        assertThat(claims.claim("a1")).isEqualTo(RecommendationClaims.Outcome.BUSY);
+    }
+
+    @Test
+    void goesAheadWhenMongoIsUnreachable() {
+        when(recommendationRepository.existsByActivityId("a1")).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertThat(claims.claim("a1")).isEqualTo(RecommendationClaims.Outcome.CLAIMED);
+    }
+}
@@ -0,0 +1,95 @@
+package org.choubi.aiservice.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.choubi.aiservice.config.MongoConfig;
+import org.choubi.aiservice.model.Recommendation;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A collection that already holds duplicate recommendations, as left behind by redelivered events
+ * before activity_idx was unique.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RecommendationDedupeRunnerTests {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7");
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void setUp() {
+        client = MongoClients.create(mongo.getReplicaSetUrl("duplicates"));
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(Recommendation.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, "duplicates"), converter);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @BeforeEach
+    void insertDuplicates() {
+        mongoTemplate.dropCollection(Recommendation.class);
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.insertAll(List.of(
+                recommendation("a1", "second", now),
+                recommendation("a1", "first", now.minusMinutes(5)),
+                recommendation("a1", "third", now.plusMinutes(5)),
+                recommendation("a2", "only", now)));
+    }
+
+    @Test
+    void indexCreationAloneDeletesNothing() {
+        MongoConfig.createIndexes(mongoTemplate);
+
+        assertThat(mongoTemplate.count(new Query(), Recommendation.class)).isEqualTo(4);
+        assertThat(mongoTemplate.indexOps(Recommendation.class).getIndexInfo())
+                .noneMatch(index -> index.getName().equals(Recommendation.ACTIVITY_INDEX));
+    }
+
+    @Test
+    void keepsTheFirstRecommendationOfEachActivityAndBuildsTheUniqueIndex() {
+        MongoConfig.createIndexes(mongoTemplate);
+
+        new RecommendationDedupeRunner(mongoTemplate).run(null);
+
+        List<Recommendation> a1 = mongoTemplate.find(Query.query(Criteria.where("activityId").is("a1")), Recommendation.class);
+        assertThat(a1).extracting(Recommendation::getRecommendation).containsExactly("first");
+        assertThat(mongoTemplate.count(new Query(), Recommendation.class)).isEqualTo(2);
+        assertThat(mongoTemplate.indexOps(Recommendation.class).getIndexInfo())
+                .anyMatch(index -> index.getName().equals(Recommendation.ACTIVITY_INDEX) && index.isUnique());
+    }
+
+    private static Recommendation recommendation(String activityId, String text, LocalDateTime createdAt) {
+        return Recommendation.builder().activityId(activityId).recommendation(text).createdAt(createdAt).build();
+    }
+}
@@ -0,0 +1,79 @@
+package org.choubi.aiservice.service;
+
+import org.choubi.aiservice.model.Recommendation;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import reactor.test.StepVerifier;
+
+import java.net.ConnectException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class RecommendationNotifierTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final RecommendationNotifier notifier = new RecommendationNotifier(rabbitTemplate, "recommendation.events");
+
+    @Test
+    void subscriberOnlySeesItsOwnRecommendations() {
+        StepVerifier.create(notifier.subscribe("u1"))
+                .then(() -> {
+                    notifier.handleRecommendationSaved(recommendation("r1", "u2"));
+                    notifier.handleRecommendationSaved(recommendation("r2", "u1"));
+                })
+                .assertNext(recommendation -> assertThat(recommendation.getId()).isEqualTo("r2"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void everyStreamOfTheUserGetsIt() {
+        StepVerifier.create(notifier.subscribe("u1").mergeWith(notifier.subscribe("u1")))
+                .then(() -> notifier.handleRecommendationSaved(recommendation("r1", "u1")))
+                .expectNextCount(2)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void forgetsUsersOnceTheirLastStreamCloses() {
+        StepVerifier.create(notifier.subscribe("u1"))
+                .then(() -> assertThat(notifier.connectedUsers()).isEqualTo(1))
+                .thenCancel()
+                .verify();
+
+        assertThat(notifier.connectedUsers()).isZero();
+        assertThatCode(() -> notifier.handleRecommendationSaved(recommendation("r1", "u1"))).doesNotThrowAnyException();
+    }
+
+    @Test
+    void announcesSavedRecommendationsOnTheExchange() {
+        Recommendation recommendation = recommendation("r1", "u1");
+
+        notifier.onAfterSave(new AfterSaveEvent<>(recommendation, null, "recommendations"));
+
+        verify(rabbitTemplate).convertAndSend("recommendation.events", "", recommendation);
+    }
+
+    @Test
+    void brokerOutageDoesNotFailTheSave() {
+        doThrow(new AmqpConnectException(new ConnectException("refused")))
+                .when(rabbitTemplate).convertAndSend(anyString(), eq(""), any(Object.class));
+
+        assertThatCode(() -> notifier.onAfterSave(new AfterSaveEvent<>(recommendation("r1", "u1"), null, "recommendations")))
+                .doesNotThrowAnyException();
+    }
+
+    private static Recommendation recommendation(String id, String userId) {
+        return Recommendation.builder().id(id).userId(userId).activityId("a-" + id).build();
+    }
+}
@@ -0,0 +1,143 @@
+package org.choubi.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.choubi.aiservice.microRequestInterface.ActivityServiceInterface;
+import org.choubi.aiservice.model.Activity;
+import org.choubi.aiservice.model.Recommendation;
+import org.choubi.aiservice.repository.RecommendationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class RecommendationServiceTests {
+
+    private final RecommendationRepository recommendationRepository = mock(RecommendationRepository.class);
+    private final ActivityServiceInterface activityServiceInterface = mock(ActivityServiceInterface.class);
+    private final ActivityAIService activityAIService = mock(ActivityAIService.class);
+    private final RecommendationClaims claims = mock(RecommendationClaims.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void eagerModeStillReportsAMissingRecommendation() {
+        RecommendationService service = service("eager");
+        when(recommendationRepository.findByActivityId("a1")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.getActivityRecommendations("a1"))
+                .hasMessage("Recommendation not found for activityId: a1");
+        verifyNoInteractions(activityServiceInterface, activityAIService);
+    }
+
+    @Test
+    void concurrentMissesShareOneGeneration() throws Exception {
+        RecommendationService service = service("on-demand");
+        Recommendation recommendation = Recommendation.builder().activityId("a1").build();
+        Sinks.One<Recommendation> gemini = Sinks.one();
+        when(recommendationRepository.findByActivityId("a1")).thenReturn(Optional.empty());
+        when(activityServiceInterface.getActivity("a1")).thenReturn(Mono.just(activity("a1")));
+        when(activityAIService.generateActivityRecommendation(any())).thenReturn(gemini.asMono());
+        when(recommendationRepository.save(recommendation)).thenReturn(recommendation);
+
+        CompletableFuture<Recommendation> first = CompletableFuture.supplyAsync(() -> service.getActivityRecommendations("a1"));
+        CompletableFuture<Recommendation> second = CompletableFuture.supplyAsync(() -> service.getActivityRecommendations("a1"));
+        Thread.sleep(200);
+        gemini.tryEmitValue(recommendation);
+
+        assertThat(first.get(2, TimeUnit.SECONDS)).isSameAs(recommendation);
+        assertThat(second.get(2, TimeUnit.SECONDS)).isSameAs(recommendation);
+        verify(activityAIService, times(1)).generateActivityRecommendation(any());
+        verify(recommendationRepository, times(1)).save(recommendation);
+        assertThat(meterRegistry.counter("ai.generation.on-demand", "result", "coalesced").count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsTheRecommendationStoredMeanwhile() {
+        RecommendationService service = service("on-demand");
+        Recommendation generated = Recommendation.builder().activityId("a1").build();
+        Recommendation stored = Recommendation.builder().id("r1").activityId("a1").build();
+        when(recommendationRepository.findByActivityId("a1"))
+                .thenReturn(Optional.empty(), Optional.of(stored));
+        when(activityServiceInterface.getActivity("a1")).thenReturn(Mono.just(activity("a1")));
+        when(activityAIService.generateActivityRecommendation(any())).thenReturn(Mono.just(generated));
+        when(recommendationRepository.save(generated)).thenThrow(new DuplicateKeyException("activity_idx"));
+
+        assertThat(service.getActivityRecommendations("a1")).isSameAs(stored);
+    }
+
+    @Test
+    void unknownActivityIsNotFound() {
+        RecommendationService service = service("on-demand");
+        when(recommendationRepository.findByActivityId("a1")).thenReturn(Optional.empty());
+        when(activityServiceInterface.getActivity("a1")).thenReturn(Mono.empty());
+
+        assertThatThrownBy(() -> service.getActivityRecommendations("a1"))
+                .hasMessage("Recommendation not found for activityId: a1");
+        verify(claims).release("a1");
+    }
+
+    @Test
+    void waitsForTheReplicaHoldingTheClaimInsteadOfAskingGemini() {
+        RecommendationService service = service("on-demand");
+        Recommendation stored = Recommendation.builder().id("r1").activityId("a1").build();
+        when(claims.claim("a1")).thenReturn(RecommendationClaims.Outcome.BUSY);
+        when(recommendationRepository.findByActivityId("a1"))
+                .thenReturn(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(stored));
+
+        assertThat(service.getActivityRecommendations("a1")).isSameAs(stored);
+        verifyNoInteractions(activityServiceInterface, activityAIService);
+        assertThat(meterRegistry.counter("ai.generation.on-demand", "result", "waited").count()).isEqualTo(1);
+    }
+
+    @Test
+    void givesUpWaitingAfterTheTimeout() {
+        RecommendationService service = service("on-demand");
+        ReflectionTestUtils.setField(service, "timeoutMs", 200L);
+        when(claims.claim("a1")).thenReturn(RecommendationClaims.Outcome.BUSY);
+        when(recommendationRepository.findByActivityId("a1")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> service.getActivityRecommendations("a1"))
+                .hasMessage("Recommendation for activityId a1 is still being generated");
+        verifyNoInteractions(activityServiceInterface, activityAIService);
+    }
+
+    @Test
+    void readsWhatWasStoredSinceTheFirstLookup() {
+        RecommendationService service = service("on-demand");
+        Recommendation stored = Recommendation.builder().id("r1").activityId("a1").build();
+        when(claims.claim("a1")).thenReturn(RecommendationClaims.Outcome.DONE);
+        when(recommendationRepository.findByActivityId("a1")).thenReturn(Optional.empty(), Optional.of(stored));
+
+        assertThat(service.getActivityRecommendations("a1")).isSameAs(stored);
+        verifyNoInteractions(activityServiceInterface, activityAIService);
+    }
+
+    private RecommendationService service(String mode) {
+        RecommendationService service = new RecommendationService(recommendationRepository, activityServiceInterface,
+                activityAIService, new RecommendationGenerationPolicy(mode, Set.of()), claims, meterRegistry);
+        ReflectionTestUtils.setField(service, "timeoutMs", 2000L);
+        ReflectionTestUtils.setField(service, "pollMs", 20L);
+        when(claims.claim(any())).thenReturn(RecommendationClaims.Outcome.CLAIMED);
+        return service;
+    }
+
+    private static Activity activity(String id) {
+        Activity activity = new Activity();
+        activity.setId(id);
+        return activity;
+    }
+}
@@ -0,0 +1,25 @@
+package org.choubi.userservice.config;
+
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+@Configuration
+public class RabbitMqConfig {
+    @Value("${rabbitmq.exchanges.users:user.events}")
+    private String userEventsExchangeName;
+
+
+    @Bean
+    public FanoutExchange userEventsExchange() {
+        return new FanoutExchange(userEventsExchangeName);
+    }
+    @Bean
+    public MessageConverter messageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+}
@@ -0,0 +1,12 @@
+package org.choubi.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserChangedEvent {
+    private String keycloakId;
+}
@@ -1,17 +1,27 @@
 package org.choubi.userservice.service;
 
+import lombok.extern.slf4j.Slf4j;
+import org.choubi.userservice.dto.UserChangedEvent;
 import org.choubi.userservice.dto.UserCreationRequest;
 import org.choubi.userservice.dto.UserResponse;
 import org.choubi.userservice.model.User;
 import org.choubi.userservice.model.UserRole;
 import org.choubi.userservice.repository.UserRepository;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+@Slf4j
 @Service
 public class UserService {
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Value("${rabbitmq.exchanges.users:user.events}")
+    private String userEventsExchangeName;
 
     public UserResponse getUserById(String id) {
         User user = userRepository.findById(id).orElse(null);
@@ -32,6 +42,7 @@ public class UserService {
             if (userCreationRequest.getKeycloakId() != null && (existing.getKeycloakId() == null || existing.getKeycloakId().isBlank())) {
                 existing.setKeycloakId(userCreationRequest.getKeycloakId());
                 existing = userRepository.save(existing);
+                publishUserChanged(existing);
             }
             return new UserResponse(existing);
         }
@@ -44,10 +55,21 @@ public class UserService {
         user.setKeycloakId(userCreationRequest.getKeycloakId());
         user.setRole(UserRole.USER);
         User savedUser = userRepository.save(user);
+        publishUserChanged(savedUser);
         return new UserResponse(savedUser);
 
     }
 
+    // Lets other services drop what they cached about this user, e.g. a negative validation result
+    private void publishUserChanged(User user) {
+        if (user.getKeycloakId() == null) return;
+        try {
+            rabbitTemplate.convertAndSend(userEventsExchangeName, "", new UserChangedEvent(user.getKeycloakId()));
+        } catch (Exception e) {
+            log.error("Failed to publish user changed event: {}", e.getMessage());
+        }
+    }
+
 
 
 